@@ -0,0 +1,258 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.tzesh.springtemplate.config.ratelimit.RateLimitAspect;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protects the service from overload with an {@link AdaptiveConcurrencyLimiter}.
+ * Runs right after the {@link com.tzesh.springtemplate.config.correlation.CorrelationIdFilter}, so shed requests
+ * still carry a correlation ID, and rejects requests over the limit with 503 before they reach security,
+ * rate limiting or the database. Only requests that ran their handler are latency samples of the limit.
+ * Requests parked by a delayed rate limit give up their slot while they wait, see {@link #park(long)}.
+ * Can be disabled via configuration.
+ * Publishes the {@code concurrency.limit}, {@code concurrency.in.flight} and {@code concurrency.queue.depth}
+ * gauges and the {@code concurrency.rejected} counter.
+ *
+ * @author tzesh
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AdaptiveConcurrencyFilter implements Filter {
+    /**
+     * Request attribute marking a request answered without running its handler, e.g. rejected by a rate limit or
+     * replayed from the idempotency cache, whose latency says nothing about the load of the service
+     */
+    public static final String SHORT_CIRCUITED_ATTRIBUTE = AdaptiveConcurrencyFilter.class.getName() + ".SHORT_CIRCUITED";
+
+    /**
+     * Request attribute holding the {@link Slot} of the request
+     */
+    private static final String SLOT_ATTRIBUTE = AdaptiveConcurrencyFilter.class.getName() + ".SLOT";
+
+    private final boolean enabled;
+    private final List<String> excludedPaths;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter rejected;
+    private final ObjectMapper objectMapper;
+
+    public AdaptiveConcurrencyFilter(
+            ConcurrencyLimitProperties properties,
+            AdaptiveConcurrencyLimiter limiter,
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper
+    ) {
+        this.enabled = properties.isEnabled();
+        this.excludedPaths = List.copyOf(properties.getExcludedPaths());
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+
+        Gauge.builder("concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Adaptive in-flight request limit")
+                .register(meterRegistry);
+        Gauge.builder("concurrency.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests currently being processed")
+                .register(meterRegistry);
+        Gauge.builder("concurrency.queue.depth", limiter, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .description("Requests waiting for the in-flight limit")
+                .register(meterRegistry);
+        Gauge.builder("concurrency.latency", limiter, AdaptiveConcurrencyLimiter::getLongRttMillis)
+                .description("Long-term average request latency the limit is adapted against")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("concurrency.rejected")
+                .description("Requests rejected because the service is overloaded")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!enabled || !(request instanceof HttpServletRequest req) || !(response instanceof HttpServletResponse res)
+                || isExcluded(req, excludedPaths)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        int inFlight = limiter.acquire();
+        if (inFlight < 0) {
+            rejected.increment();
+            OverloadResponse.write(res, objectMapper, 1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Slot slot = new Slot(inFlight);
+        req.setAttribute(SLOT_ATTRIBUTE, slot);
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new ReleasingListener(req, start, slot));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                slot.release(sampleNanos(req, start));
+            }
+        }
+    }
+
+    /**
+     * Park the current request without holding its slot, e.g. while a rate limit delays it, so that parked requests
+     * do not use up the in-flight limit of requests doing actual work. The slot is acquired again afterwards,
+     * waiting in the queue like a new request. Requests not limited by this filter are just parked.
+     * @param millis time to park
+     * @return false if no slot could be acquired again because the service is overloaded, the request must be rejected
+     * @throws InterruptedException if the thread is interrupted while parked, the slot is acquired again nevertheless
+     */
+    public static boolean park(long millis) throws InterruptedException {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && attributes.getAttribute(SLOT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Slot slot) {
+            return slot.park(millis);
+        }
+        Thread.sleep(millis);
+        return true;
+    }
+
+    /**
+     * Mark the current request as answered without running its handler, its latency is not sampled
+     */
+    public static void markShortCircuited() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(SHORT_CIRCUITED_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * Latency sample of the request, 0 unless a handler was mapped and actually ran. Requests rejected by filters
+     * (load shedding, rate limits, security) or short-circuited around the handler are answered in almost no time,
+     * and would drag the long-term latency down during a flood until normal requests look slow.
+     */
+    private static long sampleNanos(HttpServletRequest request, long start) {
+        if (request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) == null
+                || request.getAttribute(SHORT_CIRCUITED_ATTRIBUTE) != null) {
+            return 0;
+        }
+        return elapsedNanos(request, start);
+    }
+
+    /**
+     * Latency of the request, without the time it was deliberately delayed by rate limits
+     */
+    private static long elapsedNanos(HttpServletRequest request, long start) {
+        long elapsed = System.nanoTime() - start;
+        if (request.getAttribute(RateLimitAspect.DELAYED_MILLIS_ATTRIBUTE) instanceof Long delayedMillis) {
+            elapsed -= TimeUnit.MILLISECONDS.toNanos(delayedMillis);
+        }
+        return elapsed;
+    }
+
+    /**
+     * Whether the request path, relative to the context path, starts with one of the excluded prefixes
+     */
+    static boolean isExcluded(HttpServletRequest request, List<String> excludedPaths) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String excluded : excludedPaths) {
+            if (path.startsWith(excluded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases the slot of an asynchronous request once it completes
+     */
+    private final class ReleasingListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final long start;
+        private final Slot slot;
+
+        private ReleasingListener(HttpServletRequest request, long start, Slot slot) {
+            this.request = request;
+            this.start = start;
+            this.slot = slot;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            slot.release(sampleNanos(request, start));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * Slot of a request, given up while the request is parked
+     */
+    private final class Slot {
+        private int inFlight;
+        private boolean held = true;
+
+        private Slot(int inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        private boolean park(long millis) throws InterruptedException {
+            if (!held) {
+                Thread.sleep(millis);
+                return false;
+            }
+            limiter.release(0, inFlight);
+            held = false;
+            try {
+                Thread.sleep(millis);
+            } finally {
+                int acquired = limiter.acquire();
+                if (acquired > 0) {
+                    inFlight = acquired;
+                    held = true;
+                }
+            }
+            return held;
+        }
+
+        private void release(long rttNanos) {
+            if (held) {
+                held = false;
+                limiter.release(rttNanos, inFlight);
+            }
+        }
+    }
+}
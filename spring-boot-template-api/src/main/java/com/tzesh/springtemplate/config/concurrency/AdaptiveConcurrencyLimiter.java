@@ -0,0 +1,176 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-flight request limit adapted to the observed latency with a gradient algorithm.
+ * A long-term average of the request latency is compared to each new sample; while latency stays within
+ * {@code rtt-tolerance} of the average the limit grows by about {@code sqrt(limit)}, and when requests slow
+ * down (e.g. because Postgres does) the limit shrinks proportionally to the slowdown, down to half of it per
+ * sample. Samples taken while less than half of the limit is used do not grow the limit, so it cannot run
+ * away while the service is idle.
+ * Requests over the limit wait in a bounded queue for up to {@code max-queue-wait} before they are rejected.
+ * Slots are taken and released without locking, and only queued requests wait for a lock: a sample finding another
+ * sample updating the limit is dropped instead of waiting, which under contention only thins out the samples.
+ * Shared by the {@link AdaptiveConcurrencyFilter} enforcing it and components reacting to the current load.
+ *
+ * @author tzesh
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+    private final ConcurrencyLimitProperties properties;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    // held by queued requests while they check for a slot and by releases signalling them
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition slotAvailable = queueLock.newCondition();
+    // held while a sample updates the limit, samples finding it held are dropped
+    private final ReentrantLock limitLock = new ReentrantLock();
+
+    private volatile double limit;
+    private volatile double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+        this.limit = properties.getInitialLimit();
+    }
+
+    /**
+     * Acquire a slot, waiting in the queue if the limit is reached
+     * @return in-flight count including this request, or -1 if the request must be rejected
+     */
+    public int acquire() {
+        int acquired = tryAcquireSlot();
+        if (acquired > 0) {
+            return acquired;
+        }
+        long remainingNanos = properties.getMaxQueueWait().toNanos();
+        if (remainingNanos <= 0) {
+            return -1;
+        }
+        if (waiting.incrementAndGet() > properties.getQueueSize()) {
+            waiting.decrementAndGet();
+            return -1;
+        }
+        queueLock.lock();
+        try {
+            while ((acquired = tryAcquireSlot()) < 0) {
+                if (remainingNanos <= 0) {
+                    return -1;
+                }
+                remainingNanos = slotAvailable.awaitNanos(remainingNanos);
+            }
+            return acquired;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } finally {
+            waiting.decrementAndGet();
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Release a slot and update the limit with the latency of the request
+     * @param rttNanos latency of the request, 0 if it is not a sample of the service latency
+     * @param inFlightAtStart in-flight count returned by {@link #acquire()}
+     */
+    public void release(long rttNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        boolean grown = rttNanos > 0 && update(rttNanos, inFlightAtStart);
+        if (waiting.get() > 0) {
+            queueLock.lock();
+            try {
+                if (grown) {
+                    slotAvailable.signalAll();
+                } else {
+                    slotAvailable.signal();
+                }
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Take a slot without waiting
+     * @return in-flight count including this request, or -1 if the limit is reached
+     */
+    private int tryAcquireSlot() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * @return true if the limit was raised, false as well if the sample was dropped
+     */
+    private boolean update(long rttNanos, int inFlightAtStart) {
+        if (!limitLock.tryLock()) {
+            return false;
+        }
+        try {
+            double longRtt = longRttNanos == 0 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / properties.getLongWindow();
+            // let the long-term average recover quickly after a period of high latency
+            if (longRtt / rttNanos > 2) {
+                longRtt *= 0.95;
+            }
+            longRttNanos = longRtt;
+
+            double current = limit;
+            double gradient = Math.max(0.5, Math.min(1.0, properties.getRttTolerance() * longRtt / rttNanos));
+            if (gradient >= 1.0 && inFlightAtStart < current / 2) {
+                return false;
+            }
+            double estimate = current * gradient + Math.sqrt(current);
+            double smoothed = current * (1 - properties.getSmoothing()) + estimate * properties.getSmoothing();
+            limit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), smoothed));
+            return gradient >= 1.0;
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    /**
+     * Current in-flight limit
+     * @return limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Requests currently being processed
+     * @return in-flight count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Requests currently waiting for a slot
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * Average latency the limit is adapted against
+     * @return long-term latency in milliseconds
+     */
+    public double getLongRttMillis() {
+        return longRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration properties for the adaptive concurrency limit
+ * @author tzesh
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+    private boolean enabled = true;
+
+    /**
+     * In-flight limit at startup, adapted to the observed latency afterwards
+     */
+    private int initialLimit = 50;
+    private int minLimit = 10;
+    private int maxLimit = 200;
+
+    /**
+     * Requests waiting for a slot once the limit is reached, rejected beyond this bound
+     */
+    private int queueSize = 50;
+    private Duration maxQueueWait = Duration.ofMillis(100);
+
+    /**
+     * Latency increase over the long-term average tolerated before the limit is reduced
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * Weight of each new limit estimate, lower values adapt slower but are less noisy
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * Number of samples the long-term latency average is taken over
+     */
+    private int longWindow = 600;
+
+    /**
+     * Path prefixes, relative to the context path, that are never limited, e.g. health probes
+     */
+    private List<String> excludedPaths = new ArrayList<>(List.of("/actuator"));
+
+    private SheddingConfig shedding = new SheddingConfig();
+
+    /**
+     * Priority based load shedding, sheds one more priority class per sample interval while any signal is over
+     * its threshold and admits one more once all are below again
+     */
+    @Data
+    public static class SheddingConfig {
+        private boolean enabled = true;
+        private Duration sampleInterval = Duration.ofSeconds(1);
+
+        /**
+         * CPU usage (0 to 1) of the system or container
+         */
+        private double cpuThreshold = 0.9;
+
+        /**
+         * Average time spent waiting for a database connection during the last sample interval
+         */
+        private Duration poolWaitThreshold = Duration.ofMillis(50);
+
+        /**
+         * Used fraction of the adaptive in-flight limit
+         */
+        private double inFlightThreshold = 0.8;
+
+        private RequestPriority defaultPriority = RequestPriority.NORMAL;
+        private Map<RateLimitCategoryType, RequestPriority> categoryPriorities = new EnumMap<>(Map.of(
+                RateLimitCategoryType.AUTHENTICATION, RequestPriority.CRITICAL,
+                RateLimitCategoryType.STRICT, RequestPriority.NORMAL,
+                RateLimitCategoryType.STANDARD, RequestPriority.NORMAL,
+                RateLimitCategoryType.RELAXED, RequestPriority.LOW
+        ));
+
+        /**
+         * Priority by role claim of the access token, the higher of role and category priority applies
+         */
+        private Map<String, RequestPriority> rolePriorities = new HashMap<>(Map.of(
+                "ADMIN", RequestPriority.CRITICAL,
+                "MANAGER", RequestPriority.HIGH
+        ));
+    }
+}
@@ -0,0 +1,148 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides how many priority classes are shed, from the CPU usage, the time spent waiting for database connections
+ * and the used fraction of the adaptive in-flight limit.
+ * Signals are sampled at most once per {@code sample-interval}, by the request that finds the last sample
+ * outdated, so no background thread is needed. While any signal is over its threshold the shed level rises by one
+ * per sample; once all are below it falls by one per elapsed interval, so a stale level does not outlive a quiet period.
+ * The level is published as the {@code load.shedding.level} gauge.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public final class LoadMonitor {
+    private static final int MAX_LEVEL = RequestPriority.CRITICAL.ordinal();
+
+    private final ConcurrencyLimitProperties.SheddingConfig config;
+    private final DoubleSupplier cpuLoad;
+    private final LongSupplier poolWaitNanos;
+    private final DoubleSupplier inFlightRatio;
+    private final LongSupplier nanoClock;
+    private final AtomicLong lastSampleAt;
+    private volatile int level;
+
+    @Autowired
+    public LoadMonitor(ConcurrencyLimitProperties properties, AdaptiveConcurrencyLimiter limiter, MeterRegistry meterRegistry) {
+        this(properties.getShedding(), cpuLoad(), new PoolWaitSampler(meterRegistry),
+                () -> (double) limiter.getInFlight() / Math.max(1, limiter.getLimit()), System::nanoTime);
+        Gauge.builder("load.shedding.level", this, LoadMonitor::getLevel)
+                .description("Number of lowest priority classes currently shed")
+                .register(meterRegistry);
+    }
+
+    LoadMonitor(ConcurrencyLimitProperties.SheddingConfig config, DoubleSupplier cpuLoad, LongSupplier poolWaitNanos,
+                DoubleSupplier inFlightRatio, LongSupplier nanoClock) {
+        this.config = config;
+        this.cpuLoad = cpuLoad;
+        this.poolWaitNanos = poolWaitNanos;
+        this.inFlightRatio = inFlightRatio;
+        this.nanoClock = nanoClock;
+        this.lastSampleAt = new AtomicLong(nanoClock.getAsLong() - config.getSampleInterval().toNanos());
+    }
+
+    /**
+     * Current shed level, sampling the signals first if the last sample is outdated
+     * @return number of lowest priority classes to shed, 0 if none
+     */
+    public int getShedLevel() {
+        long now = nanoClock.getAsLong();
+        long last = lastSampleAt.get();
+        long interval = config.getSampleInterval().toNanos();
+        if (now - last >= interval && lastSampleAt.compareAndSet(last, now)) {
+            sample((now - last) / interval);
+        }
+        return level;
+    }
+
+    /**
+     * Whether requests of the given priority are currently shed
+     * @param priority priority of the request
+     * @return true if the request should be rejected
+     */
+    public boolean shouldShed(RequestPriority priority) {
+        return priority.ordinal() < getShedLevel();
+    }
+
+    /**
+     * Shed level of the last sample, without sampling
+     * @return number of lowest priority classes shed
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    private void sample(long elapsedIntervals) {
+        double cpu = cpuLoad.getAsDouble();
+        long poolWait = poolWaitNanos.getAsLong();
+        double inFlight = inFlightRatio.getAsDouble();
+        boolean overloaded = cpu >= config.getCpuThreshold()
+                || poolWait >= config.getPoolWaitThreshold().toNanos()
+                || inFlight >= config.getInFlightThreshold();
+
+        int previous = level;
+        int next = overloaded
+                ? Math.min(MAX_LEVEL, previous + 1)
+                : (int) Math.max(0, previous - elapsedIntervals);
+        if (next == previous) {
+            return;
+        }
+        level = next;
+        if (next > previous) {
+            log.warn("Overloaded (cpu {}, pool wait {} ms, in-flight {}), shedding requests up to {} priority",
+                    String.format("%.2f", cpu), TimeUnit.NANOSECONDS.toMillis(poolWait), String.format("%.2f", inFlight),
+                    RequestPriority.values()[next - 1]);
+        } else if (next == 0) {
+            log.info("Load back to normal, no longer shedding requests");
+        }
+    }
+
+    private static DoubleSupplier cpuLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os::getCpuLoad;
+        }
+        return () -> -1;
+    }
+
+    /**
+     * Average HikariCP connection acquire time since the previous sample
+     */
+    private static final class PoolWaitSampler implements LongSupplier {
+        private final MeterRegistry meterRegistry;
+        private long lastCount;
+        private double lastTotalNanos;
+
+        private PoolWaitSampler(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public synchronized long getAsLong() {
+            Timer timer = meterRegistry.find("hikaricp.connections.acquire").timer();
+            if (timer == null) {
+                return 0;
+            }
+            long count = timer.count();
+            double totalNanos = timer.totalTime(TimeUnit.NANOSECONDS);
+            long acquired = count - lastCount;
+            double waited = totalNanos - lastTotalNanos;
+            lastCount = count;
+            lastTotalNanos = totalNanos;
+            return acquired > 0 ? (long) (waited / acquired) : 0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sheds the lowest priority requests first while the service is overloaded.
+ * Runs after the {@link AdaptiveConcurrencyFilter} and before Spring Security, so shed requests never load the
+ * user or touch the database. The priority is only resolved while the {@link LoadMonitor} reports a shed level,
+ * requests of a shed priority are rejected with 503. With the default priorities, bulk listings are dropped first
+ * while login and admin traffic keeps working. Can be disabled via configuration.
+ * Rejections are counted in the {@code load.shedding.rejected} counter by priority.
+ *
+ * @author tzesh
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class LoadSheddingFilter implements Filter {
+    private final boolean enabled;
+    private final List<String> excludedPaths;
+    private final long retryAfterSeconds;
+    private final LoadMonitor loadMonitor;
+    private final RequestPriorityResolver priorityResolver;
+    private final Map<RequestPriority, Counter> rejected = new EnumMap<>(RequestPriority.class);
+    private final ObjectMapper objectMapper;
+
+    public LoadSheddingFilter(
+            ConcurrencyLimitProperties properties,
+            LoadMonitor loadMonitor,
+            RequestPriorityResolver priorityResolver,
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper
+    ) {
+        this.enabled = properties.getShedding().isEnabled();
+        this.excludedPaths = List.copyOf(properties.getExcludedPaths());
+        this.retryAfterSeconds = properties.getShedding().getSampleInterval().toSeconds();
+        this.loadMonitor = loadMonitor;
+        this.priorityResolver = priorityResolver;
+        this.objectMapper = objectMapper;
+        for (RequestPriority priority : RequestPriority.values()) {
+            rejected.put(priority, Counter.builder("load.shedding.rejected")
+                    .description("Requests shed because the service is overloaded")
+                    .tag("priority", priority.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!enabled || !(request instanceof HttpServletRequest req) || !(response instanceof HttpServletResponse res)
+                || loadMonitor.getShedLevel() == 0 || AdaptiveConcurrencyFilter.isExcluded(req, excludedPaths)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RequestPriority priority = priorityResolver.resolve(req);
+        if (loadMonitor.shouldShed(priority)) {
+            rejected.get(priority).increment();
+            OverloadResponse.write(res, objectMapper, retryAfterSeconds);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,27 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tzesh.springtemplate.base.response.BaseResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+
+/**
+ * 503 response of requests rejected because the service is overloaded
+ * @author tzesh
+ */
+final class OverloadResponse {
+    private OverloadResponse() {
+    }
+
+    static void write(HttpServletResponse response, ObjectMapper objectMapper, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfterSeconds)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        BaseResponse<String> errorResponse = BaseResponse.serviceUnavailable("Service is overloaded. Please try again later.")
+                .message("Service Unavailable");
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+}
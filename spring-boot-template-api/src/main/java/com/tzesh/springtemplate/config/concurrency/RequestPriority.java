@@ -0,0 +1,12 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+/**
+ * Priority classes of requests under overload, shed from the lowest up. {@link #CRITICAL} is never shed.
+ * @author tzesh
+ */
+public enum RequestPriority {
+    LOW,
+    NORMAL,
+    HIGH,
+    CRITICAL
+}
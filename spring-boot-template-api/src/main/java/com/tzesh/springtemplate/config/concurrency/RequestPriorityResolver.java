@@ -0,0 +1,65 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.tzesh.springtemplate.config.ratelimit.RateLimitDescriptor;
+import com.tzesh.springtemplate.config.ratelimit.RateLimitHandlerResolver;
+import com.tzesh.springtemplate.service.auth.JwtService;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the {@link RequestPriority} of a request from the rate limit category of its handler method and the
+ * role claim of its access token, whichever is higher.
+ * Runs before Spring Security, so the token is only verified and parsed, without loading the user or
+ * checking revocation; a revoked token keeps its priority until the request is rejected by security.
+ *
+ * @author tzesh
+ */
+@Component
+public class RequestPriorityResolver {
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final ConcurrencyLimitProperties.SheddingConfig config;
+    private final RateLimitHandlerResolver handlerResolver;
+    private final JwtService jwtService;
+
+    public RequestPriorityResolver(
+            ConcurrencyLimitProperties properties,
+            RateLimitHandlerResolver handlerResolver,
+            JwtService jwtService
+    ) {
+        this.config = properties.getShedding();
+        this.handlerResolver = handlerResolver;
+        this.jwtService = jwtService;
+    }
+
+    /**
+     * Resolve the priority of a request
+     * @param request current request
+     * @return priority
+     */
+    public RequestPriority resolve(HttpServletRequest request) {
+        RequestPriority priority = config.getDefaultPriority();
+        RateLimitDescriptor descriptor = handlerResolver.resolve(request);
+        if (descriptor != null && descriptor.category() != null) {
+            priority = config.getCategoryPriorities().getOrDefault(descriptor.category(), priority);
+        }
+        RequestPriority rolePriority = rolePriority(request);
+        return rolePriority != null && rolePriority.compareTo(priority) > 0 ? rolePriority : priority;
+    }
+
+    private RequestPriority rolePriority(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        try {
+            String role = jwtService.extractRole(header.substring(BEARER_PREFIX.length()));
+            return role != null ? config.getRolePriorities().get(role) : null;
+        } catch (JwtException | IllegalArgumentException e) {
+            // invalid or expired tokens get no role priority, security rejects them later
+            return null;
+        }
+    }
+}
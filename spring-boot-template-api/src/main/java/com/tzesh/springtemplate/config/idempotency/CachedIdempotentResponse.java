@@ -0,0 +1,123 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of an idempotent call as cached in Redis: status, headers set by the controller and the serialized body.
+ * Stored as a binary record, the body as its raw bytes, LZ4 compressed above a size threshold:
+ * <pre>
+ * byte    format, {@link #PLAIN} or {@link #LZ4}
+ * short   status code
+ * short   header values, each as a name and a value in modified UTF-8
+ * int     body length
+ * byte[]  body, compressed with {@link #LZ4}
+ * </pre>
+ * The format byte is never {@code 'l'} or {@code '{'}, so a record cannot be taken for a lock or a response cached
+ * as JSON by earlier versions.
+ *
+ * @param statusCode status code of the response
+ * @param headers headers of the response entity, without {@code Content-Length}
+ * @param body serialized body
+ * @author tzesh
+ */
+public record CachedIdempotentResponse(int statusCode, HttpHeaders headers, byte[] body) {
+    static final byte PLAIN = 1;
+    static final byte LZ4 = 2;
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    /**
+     * @param compressionThreshold body length above which the body is compressed, negative to never compress
+     * @return the binary record
+     */
+    public byte[] toBytes(int compressionThreshold) {
+        byte[] stored = body;
+        byte format = PLAIN;
+        if (compressionThreshold >= 0 && body.length > compressionThreshold) {
+            LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+            byte[] compressed = new byte[compressor.maxCompressedLength(body.length)];
+            int length = compressor.compress(body, 0, body.length, compressed, 0);
+            if (length < body.length) {
+                stored = Arrays.copyOf(compressed, length);
+                format = LZ4;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(stored.length + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(format);
+            out.writeShort(statusCode);
+            List<Map.Entry<String, String>> values = headers.headerSet().stream()
+                    .filter(header -> !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey()))
+                    .flatMap(header -> header.getValue().stream().map(value -> Map.entry(header.getKey(), value)))
+                    .toList();
+            out.writeShort(values.size());
+            for (Map.Entry<String, String> value : values) {
+                out.writeUTF(value.getKey());
+                out.writeUTF(value.getValue());
+            }
+            out.writeInt(body.length);
+            out.write(stored);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param record binary record written by {@link #toBytes(int)}
+     * @return the cached response
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static CachedIdempotentResponse fromBytes(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            byte format = in.readByte();
+            if (format != PLAIN && format != LZ4) {
+                throw new IllegalArgumentException("Unknown cached response format " + format);
+            }
+            int statusCode = in.readUnsignedShort();
+            HttpHeaders headers = new HttpHeaders();
+            int values = in.readUnsignedShort();
+            for (int i = 0; i < values; i++) {
+                headers.add(in.readUTF(), in.readUTF());
+            }
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IllegalArgumentException("Negative cached response body length");
+            }
+            byte[] stored = in.readAllBytes();
+            byte[] body = format == LZ4 ? decompress(stored, length) : stored;
+            if (body.length != length) {
+                throw new IllegalArgumentException("Cached response body is truncated");
+            }
+            return new CachedIdempotentResponse(statusCode, headers, body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed cached response", e);
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int length) {
+        LZ4SafeDecompressor decompressor = LZ4_FACTORY.safeDecompressor();
+        byte[] body = new byte[length];
+        try {
+            int decompressed = decompressor.decompress(compressed, 0, compressed.length, body, 0);
+            return decompressed == length ? body : Arrays.copyOf(body, decompressed);
+        } catch (LZ4Exception e) {
+            throw new IllegalArgumentException("Malformed compressed cached response", e);
+        }
+    }
+}
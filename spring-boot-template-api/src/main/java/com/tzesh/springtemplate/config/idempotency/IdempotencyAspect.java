@@ -1,32 +1,53 @@
 package com.tzesh.springtemplate.config.idempotency;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tzesh.springtemplate.base.annotation.Idempotent;
 import com.tzesh.springtemplate.base.error.RateLimitErrorMessage;
 import com.tzesh.springtemplate.base.exception.IdempotencyException;
+import com.tzesh.springtemplate.base.exception.ServiceUnavailableException;
+import com.tzesh.springtemplate.config.concurrency.AdaptiveConcurrencyFilter;
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
 import jakarta.servlet.http.HttpServletRequest;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * AOP aspect for handling {@link Idempotent} annotation.
- * Uses Redis for distributed locking and response caching.
- * Fails closed if Redis is unavailable (throws exception rather than allowing duplicate processing).
+ * Uses the {@link IdempotencyStore} for distributed locking and response caching: a first-time request costs one
+ * round trip to look up the key and lock it and one to cache the response and release the lock, a replay one.
+ * Responses are cached as binary {@link CachedIdempotentResponse} records, the body serialized once, and replayed by
+ * returning the stored body bytes, which are written to the response without being parsed or serialized again.
+ * Responses completed on this node are also kept in the {@link IdempotencyNearCache} for a short while, so a retry
+ * reaching the same node is replayed without any Redis call.
+ * With {@link Idempotent#maxWaitMillis()}, a request arriving while the same key is processed parks its (virtual)
+ * thread until the first call completes, woken up by the {@link IdempotencyCompletions}, and returns the same
+ * response; if the first call fails without a response, one of the waiting requests takes over.
+ * The lock is renewed by the {@link IdempotencyLeases} while the method runs, so a slow call keeps it, and only
+ * expires on its own once the node processing the call is gone. A call whose lock was lost anyway, e.g. because
+ * Redis was unreachable for longer than the lock TTL, neither caches its response nor releases the lock, which may
+ * belong to another call by now.
+ * Fails closed if Redis is unavailable (rejects the request with 503 rather than allowing duplicate processing).
+ * Once the request has been processed, failures to cache the response or release the lock are logged instead,
+ * the lock expires on its own.
  *
  * @author tzesh
  */
@@ -34,15 +55,20 @@
 @Component
 @Slf4j
 public class IdempotencyAspect {
-    private static final String KEY_PREFIX = "idempotency:";
-    private static final String LOCK_PREFIX = "idempotency_lock:";
-    private static final long LOCK_TTL_SECONDS = 30;
-
-    private final StringRedisTemplate redisTemplate;
+    private final IdempotencyStore store;
+    private final IdempotencyCompletions completions;
+    private final IdempotencyLeases leases;
+    private final IdempotencyNearCache nearCache;
+    private final IdempotencyProperties properties;
     private final ObjectMapper objectMapper;
 
-    public IdempotencyAspect(StringRedisTemplate redisTemplate, ObjectMapper objectMapper) {
-        this.redisTemplate = redisTemplate;
+    public IdempotencyAspect(IdempotencyStore store, IdempotencyCompletions completions, IdempotencyLeases leases,
+                             IdempotencyNearCache nearCache, IdempotencyProperties properties, ObjectMapper objectMapper) {
+        this.store = store;
+        this.completions = completions;
+        this.leases = leases;
+        this.nearCache = nearCache;
+        this.properties = properties;
         this.objectMapper = objectMapper;
     }
 
@@ -50,47 +76,126 @@ public IdempotencyAspect(StringRedisTemplate redisTemplate, ObjectMapper objectM
     public Object handleIdempotent(ProceedingJoinPoint joinPoint, Idempotent idempotent) throws Throwable {
         String idempotencyKey = getIdempotencyKey(idempotent.headerName());
         if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            AdaptiveConcurrencyFilter.markShortCircuited();
             throw new IdempotencyException(RateLimitErrorMessage.IDEMPOTENCY_KEY_MISSING);
         }
 
-        String cacheKey = KEY_PREFIX + idempotencyKey;
-        String lockKey = LOCK_PREFIX + idempotencyKey;
+        // Retries of a call completed on this node are replayed without contacting Redis
+        byte[] local = nearCache.get(idempotencyKey);
+        if (local != null) {
+            return replay(local);
+        }
+
         Duration ttl = Duration.of(idempotent.ttl(), idempotent.timeUnit().toChronoUnit());
 
-        // Check if we already have a cached response
-        String cachedResponse = redisTemplate.opsForValue().get(cacheKey);
-        if (cachedResponse != null) {
-            return deserializeResponse(cachedResponse);
+        // Return the cached response or lock the key in one call
+        IdempotencyStore.Acquisition acquisition = acquire(idempotencyKey, idempotent.maxWaitMillis());
+        if (acquisition.completed()) {
+            return replay(acquisition.response());
         }
-
-        // Try to acquire distributed lock
-        Boolean lockAcquired = redisTemplate.opsForValue().setIfAbsent(lockKey, "locked", Duration.ofSeconds(LOCK_TTL_SECONDS));
-        if (lockAcquired == null || !lockAcquired) {
+        if (!acquisition.acquired()) {
+            AdaptiveConcurrencyFilter.markShortCircuited();
             throw new IdempotencyException(RateLimitErrorMessage.IDEMPOTENCY_KEY_IN_PROGRESS);
         }
 
+        String lock = acquisition.lock();
+        // Keep the lock while the method runs, however long it takes
+        IdempotencyLeases.Lease lease = leases.start(idempotencyKey, lock);
+        boolean completed = false;
         try {
-            // Double-check after acquiring lock
-            cachedResponse = redisTemplate.opsForValue().get(cacheKey);
-            if (cachedResponse != null) {
-                return deserializeResponse(cachedResponse);
-            }
-
             // Execute the actual method
             Object result = joinPoint.proceed();
 
-            // Cache the response
+            // Cache the response, releasing the lock with it
             if (result instanceof ResponseEntity<?> responseEntity) {
-                CachedIdempotentResponse cached = new CachedIdempotentResponse(
+                byte[] value = new CachedIdempotentResponse(
                         responseEntity.getStatusCode().value(),
-                        objectMapper.writeValueAsString(responseEntity.getBody())
-                );
-                redisTemplate.opsForValue().set(cacheKey, objectMapper.writeValueAsString(cached), ttl);
+                        responseEntity.getHeaders(),
+                        objectMapper.writeValueAsBytes(responseEntity.getBody())
+                ).toBytes(compressionThreshold());
+                completed = true;
+                lease.close();
+                if (lease.isLost()) {
+                    log.warn("Idempotency lock for key {} was lost while its call was running, response not cached", idempotencyKey);
+                } else {
+                    cache(idempotencyKey, lock, value, ttl);
+                }
             }
 
             return result;
         } finally {
-            redisTemplate.delete(lockKey);
+            lease.close();
+            if (!completed && !lease.isLost()) {
+                release(idempotencyKey, lock);
+            }
+        }
+    }
+
+    /**
+     * Cache the response of a completed call, releasing its lock
+     */
+    private void cache(String idempotencyKey, String lock, byte[] value, Duration ttl) {
+        try {
+            if (store.complete(idempotencyKey, lock, value, ttl)) {
+                nearCache.put(idempotencyKey, value, ttl);
+            } else {
+                log.warn("Idempotency lock for key {} expired before the response was cached", idempotencyKey);
+            }
+        } catch (RedisUnavailableException e) {
+            log.warn("Could not cache idempotent response for key {}, its lock expires in {} seconds: {}",
+                    idempotencyKey, IdempotencyStore.LOCK_TTL.toSeconds(), e.getMessage());
+        }
+    }
+
+    /**
+     * Acquire a key, waiting up to the maximum wait while another call holds its lock
+     */
+    private IdempotencyStore.Acquisition acquire(String idempotencyKey, long maxWaitMillis) throws InterruptedException {
+        if (maxWaitMillis <= 0) {
+            return guarded(() -> store.acquire(idempotencyKey));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (true) {
+            // registered before the lookup, so a completion in between is not missed
+            CompletableFuture<Void> done = completions.register(idempotencyKey);
+            try {
+                IdempotencyStore.Acquisition acquisition = guarded(() -> store.acquire(idempotencyKey));
+                long remaining = deadline - System.nanoTime();
+                if (acquisition.acquired() || acquisition.completed() || remaining <= 0) {
+                    return acquisition;
+                }
+                try {
+                    done.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // the key is looked up once more, the completion may have been published but not received
+                }
+            } finally {
+                completions.unregister(idempotencyKey, done);
+            }
+        }
+    }
+
+    private void release(String idempotencyKey, String lock) {
+        try {
+            store.release(idempotencyKey, lock);
+        } catch (RedisUnavailableException e) {
+            log.warn("Could not release idempotency lock for key {}, it expires in {} seconds: {}",
+                    idempotencyKey, IdempotencyStore.LOCK_TTL.toSeconds(), e.getMessage());
+        }
+    }
+
+    /**
+     * Run a Redis call the request cannot be processed without
+     * @throws ServiceUnavailableException if Redis is unavailable
+     */
+    private <T> T guarded(Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (RedisUnavailableException e) {
+            log.error("Redis unavailable for idempotency check, rejecting request: {}", e.getMessage());
+            AdaptiveConcurrencyFilter.markShortCircuited();
+            throw new ServiceUnavailableException(RateLimitErrorMessage.IDEMPOTENCY_UNAVAILABLE);
         }
     }
 
@@ -103,23 +208,37 @@ private String getIdempotencyKey(String headerName) {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private ResponseEntity<Object> deserializeResponse(String json) {
+    private int compressionThreshold() {
+        return properties.isCompression() ? (int) Math.min(Integer.MAX_VALUE, properties.getCompressionThreshold().toBytes()) : -1;
+    }
+
+    /**
+     * Replay a cached response, its body is written as stored rather than serialized again
+     */
+    private ResponseEntity<byte[]> replay(byte[] value) {
+        AdaptiveConcurrencyFilter.markShortCircuited();
         try {
-            CachedIdempotentResponse cached = objectMapper.readValue(json, CachedIdempotentResponse.class);
-            Object body = objectMapper.readValue(cached.getBody(), Object.class);
-            return new ResponseEntity<>(body, HttpStatus.valueOf(cached.getStatusCode()));
+            CachedIdempotentResponse cached = value.length > 0 && value[0] == '{'
+                    ? fromLegacyJson(value)
+                    : CachedIdempotentResponse.fromBytes(value);
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(cached.headers());
+            if (headers.getContentType() == null) {
+                headers.setContentType(MediaType.APPLICATION_JSON);
+            }
+            return new ResponseEntity<>(cached.body(), headers, HttpStatus.valueOf(cached.statusCode()));
         } catch (Exception e) {
-            log.error("Failed to deserialize cached idempotent response: {}", e.getMessage());
+            log.error("Failed to read cached idempotent response: {}", e.getMessage());
             throw new IdempotencyException(RateLimitErrorMessage.IDEMPOTENCY_KEY_IN_PROGRESS);
         }
     }
 
-    @Data
-    @AllArgsConstructor
-    @NoArgsConstructor
-    public static class CachedIdempotentResponse implements Serializable {
-        private int statusCode;
-        private String body;
+    /**
+     * Read a response cached as {@code {"statusCode":200,"body":"<json>"}} before the binary records
+     */
+    private CachedIdempotentResponse fromLegacyJson(byte[] value) throws IOException {
+        JsonNode cached = objectMapper.readTree(value);
+        return new CachedIdempotentResponse(cached.path("statusCode").asInt(), new HttpHeaders(),
+                cached.path("body").asText().getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,141 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local waiters for idempotency keys being processed by another call, on this or any other node.
+ * The {@link IdempotencyStore} scripts publish the key on {@link IdempotencyStore#COMPLETION_CHANNEL} when its lock
+ * is replaced by a response or released, and every waiter of the key is woken up to look it up again.
+ * Pub/sub messages may be lost, so waiters also look up the key once more when their wait ends.
+ * If Redis is down at startup, the subscription is retried by waiters at most every few seconds; once subscribed,
+ * the listener container recovers lost connections on its own.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class IdempotencyCompletions implements MessageListener, SmartLifecycle {
+    private static final long SUBSCRIBE_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ConcurrentMap<String, List<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    private final AtomicLong nextSubscribeAt = new AtomicLong(System.nanoTime());
+    private volatile boolean running;
+    private volatile boolean subscribed;
+
+    public IdempotencyCompletions(RedisConnectionFactory connectionFactory) {
+        container.setConnectionFactory(connectionFactory);
+    }
+
+    /**
+     * Register this listener on the completion channel, it is subscribed once started
+     */
+    @PostConstruct
+    public void init() {
+        container.addMessageListener(this, new ChannelTopic(IdempotencyStore.COMPLETION_CHANNEL));
+        container.afterPropertiesSet();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        subscribe();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        container.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        container.destroy();
+    }
+
+    /**
+     * Wait for the next completion or release of a key
+     * @param idempotencyKey idempotency key sent by the client
+     * @return future completed by the next completion or release, must be passed to {@link #unregister}
+     */
+    public CompletableFuture<Void> register(String idempotencyKey) {
+        subscribe();
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.compute(idempotencyKey, (key, list) -> {
+            List<CompletableFuture<Void>> updated = list != null ? list : new ArrayList<>();
+            updated.add(waiter);
+            return updated;
+        });
+        return waiter;
+    }
+
+    /**
+     * Stop waiting for a key
+     * @param idempotencyKey idempotency key sent by the client
+     * @param waiter future returned by {@link #register(String)}
+     */
+    public void unregister(String idempotencyKey, CompletableFuture<Void> waiter) {
+        waiters.computeIfPresent(idempotencyKey, (key, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (key.startsWith(IdempotencyStore.KEY_PREFIX)) {
+            completed(key.substring(IdempotencyStore.KEY_PREFIX.length()));
+        }
+    }
+
+    /**
+     * Subscribe to the completions unless subscribed already or tried within the last few seconds
+     */
+    private void subscribe() {
+        long now = System.nanoTime();
+        long due = nextSubscribeAt.get();
+        if (!running || subscribed || now - due < 0 || !nextSubscribeAt.compareAndSet(due, now + SUBSCRIBE_RETRY_NANOS)) {
+            return;
+        }
+        try {
+            // a failed start leaves the container started but not listening
+            container.stop();
+            container.start();
+            subscribed = true;
+        } catch (RuntimeException e) {
+            log.warn("Could not subscribe to idempotency completions, waiting requests look up their key when their wait ends: {}",
+                    e.getMessage());
+        }
+    }
+
+    void completed(String idempotencyKey) {
+        List<CompletableFuture<Void>> completed = waiters.remove(idempotencyKey);
+        if (completed != null) {
+            completed.forEach(waiter -> waiter.complete(null));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watchdog renewing the idempotency locks of calls that are still running.
+ * A lock expires after {@link IdempotencyStore#LOCK_TTL}, so a call that crashed blocks retries only that long;
+ * while the call is alive, its lease extends the lock every third of the TTL, so a slow call keeps it and no
+ * duplicate runs meanwhile. Renewals only extend the lock while the call still holds it; a lease whose lock was
+ * lost stops renewing. A renewal failing because Redis is unavailable is retried at the next interval, the lock
+ * stays valid until then.
+ * Renewals are scheduled on one platform thread and run on virtual threads, so a slow Redis call does not delay
+ * the renewals of other leases. The next renewal of a lease is only scheduled once the previous one has returned,
+ * so renewals of one lease never overlap.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class IdempotencyLeases {
+    private final IdempotencyStore store;
+    private final long renewIntervalMillis;
+    private final ScheduledExecutorService watchdog;
+    private final Executor renewals;
+
+    @Autowired
+    public IdempotencyLeases(IdempotencyStore store) {
+        this(store, IdempotencyStore.LOCK_TTL.dividedBy(3),
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "idempotency-lease-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                runnable -> Thread.ofVirtual().name("idempotency-lease-renewal").start(runnable));
+    }
+
+    IdempotencyLeases(IdempotencyStore store, Duration renewInterval, ScheduledExecutorService watchdog, Executor renewals) {
+        this.store = store;
+        this.renewIntervalMillis = renewInterval.toMillis();
+        this.watchdog = watchdog;
+        this.renewals = renewals;
+    }
+
+    /**
+     * Start renewing the lock of a call until the lease is closed
+     * @param idempotencyKey idempotency key sent by the client
+     * @param lock lock returned by {@link IdempotencyStore#acquire(String)}
+     * @return the lease, to be closed before the call completes or releases the lock
+     */
+    public Lease start(String idempotencyKey, String lock) {
+        Lease lease = new Lease(idempotencyKey, lock);
+        scheduleRenewal(lease);
+        return lease;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Schedule the next renewal of a lease, one interval after the previous one has completed
+     */
+    private void scheduleRenewal(Lease lease) {
+        try {
+            lease.renewal = watchdog.schedule(() -> renewals.execute(() -> renew(lease)),
+                    renewIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the lock expires on its own
+            return;
+        }
+        if (lease.closed) {
+            lease.renewal.cancel(false);
+        }
+    }
+
+    private void renew(Lease lease) {
+        if (lease.closed) {
+            return;
+        }
+        boolean held = true;
+        try {
+            held = store.renew(lease.idempotencyKey, lease.lock);
+        } catch (RedisUnavailableException e) {
+            log.warn("Could not renew idempotency lock for key {}, retrying in {} ms: {}",
+                    lease.idempotencyKey, renewIntervalMillis, e.getMessage());
+        }
+        if (!held) {
+            if (!lease.closed) {
+                log.warn("Idempotency lock for key {} was lost while its call was running", lease.idempotencyKey);
+                lease.lost = true;
+            }
+            lease.close();
+            return;
+        }
+        if (!lease.closed) {
+            scheduleRenewal(lease);
+        }
+    }
+
+    /**
+     * Renewal of the lock of one call
+     */
+    public static final class Lease implements AutoCloseable {
+        private final String idempotencyKey;
+        private final String lock;
+        private volatile ScheduledFuture<?> renewal;
+        private volatile boolean closed;
+        private volatile boolean lost;
+
+        private Lease(String idempotencyKey, String lock) {
+            this.idempotencyKey = idempotencyKey;
+            this.lock = lock;
+        }
+
+        /**
+         * @return true if a renewal found the lock expired or taken by another call
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        /**
+         * Stop renewing the lock, it then expires unless completed or released
+         */
+        @Override
+        public void close() {
+            closed = true;
+            ScheduledFuture<?> current = renewal;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
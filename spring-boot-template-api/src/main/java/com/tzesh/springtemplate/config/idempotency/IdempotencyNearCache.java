@@ -0,0 +1,120 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Node-local cache of the responses completed on this node, so a retry reaching the same node is replayed without
+ * contacting Redis. A completed response never changes, so entries are only dropped when they expire, after
+ * {@code ttl} or earlier with the Redis record, or to stay within {@code max-size}.
+ * The size counts the stored records and keys. Entries are written once, on completion, and read by the few retries
+ * following it, so the oldest entry is always the least useful one and is evicted first.
+ *
+ * @author tzesh
+ */
+@Component
+public class IdempotencyNearCache {
+    // map entry, queue node and array headers
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final IdempotencyProperties.NearCacheConfig config;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // insertion order, holds replaced and expired entries until they are polled
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+
+    @Autowired
+    public IdempotencyNearCache(IdempotencyProperties properties) {
+        this(properties.getNearCache(), System::nanoTime);
+    }
+
+    IdempotencyNearCache(IdempotencyProperties.NearCacheConfig config, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param idempotencyKey idempotency key sent by the client
+     * @return the cached response record, null if it is not cached on this node
+     */
+    public byte[] get(String idempotencyKey) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(idempotencyKey);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(nanoClock.getAsLong())) {
+            remove(entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Cache a completed response record
+     * @param idempotencyKey idempotency key sent by the client
+     * @param value response record as stored in Redis
+     * @param ttl how long the response is cached in Redis
+     */
+    public void put(String idempotencyKey, byte[] value, Duration ttl) {
+        long maxSize = config.getMaxSize().toBytes();
+        long weight = value.length + 2L * idempotencyKey.length() + ENTRY_OVERHEAD;
+        if (!config.isEnabled() || weight > maxSize) {
+            return;
+        }
+
+        long now = nanoClock.getAsLong();
+        Entry entry = new Entry(idempotencyKey, value, weight, now + Math.min(ttl.toNanos(), config.getTtl().toNanos()));
+        order.add(entry);
+        Entry previous = entries.put(idempotencyKey, entry);
+        size.addAndGet(previous == null ? weight : weight - previous.weight());
+        evict(maxSize, now);
+    }
+
+    /**
+     * @return the size of the cached entries in bytes
+     */
+    long size() {
+        return size.get();
+    }
+
+    /**
+     * Drop expired entries from the head of the queue, then the oldest ones until the cache fits into its size
+     */
+    private void evict(long maxSize, long now) {
+        Entry oldest;
+        while ((oldest = order.peek()) != null && (oldest.isExpired(now) || size.get() > maxSize)) {
+            if (order.remove(oldest)) {
+                remove(oldest);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key(), entry)) {
+            size.addAndGet(-entry.weight());
+        }
+    }
+
+    /**
+     * Cached response record
+     * @param weight estimated size of the entry in bytes
+     * @param expiresAtNanos expiry of the entry
+     */
+    private record Entry(String key, byte[] value, long weight, long expiresAtNanos) {
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
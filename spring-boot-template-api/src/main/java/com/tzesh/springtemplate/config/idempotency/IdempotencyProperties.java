@@ -0,0 +1,34 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for idempotency
+ * @author tzesh
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+    /**
+     * Cached response bodies larger than this are stored LZ4 compressed, if that makes them smaller
+     */
+    private boolean compression = true;
+    private DataSize compressionThreshold = DataSize.ofKilobytes(1);
+    private NearCacheConfig nearCache = new NearCacheConfig();
+
+    /**
+     * Node-local cache of recently completed responses, see {@link IdempotencyNearCache}
+     */
+    @Data
+    public static class NearCacheConfig {
+        private boolean enabled = true;
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,162 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import com.tzesh.springtemplate.config.redis.RedisGuard;
+import com.tzesh.springtemplate.config.redis.RedisGuardClient;
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Redis storage of idempotency keys.
+ * A key holds either the lock of the call processing it, {@code lock:<token>}, or the cached response once the call
+ * has completed, as a binary {@link CachedIdempotentResponse} record. Acquiring and completing a key are single
+ * server-side scripts, so a first-time request costs two round trips and a replay one; completing and releasing only
+ * succeed while the caller still holds the lock, and publish the key on {@link #COMPLETION_CHANNEL} for the
+ * {@link IdempotencyCompletions}. Locks expire after
+ * {@link #LOCK_TTL} unless renewed by the {@link IdempotencyLeases} of a call that is still running.
+ * Calls go through the {@link RedisGuard} and fail with a {@link RedisUnavailableException}.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+    static final String KEY_PREFIX = "idempotency:";
+    static final String LOCK_PREFIX = "lock:";
+    static final Duration LOCK_TTL = Duration.ofSeconds(30);
+    static final String COMPLETION_CHANNEL = "idempotency:completed";
+
+    static final RedisScript<byte[]> ACQUIRE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/idempotency/acquire.lua"), byte[].class);
+    static final RedisScript<Long> COMPLETE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/idempotency/complete.lua"), Long.class);
+    static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/idempotency/release.lua"), Long.class);
+    static final RedisScript<Long> RENEW_SCRIPT = RedisScript.of(new ClassPathResource("scripts/idempotency/renew.lua"), Long.class);
+
+    private static final String OPERATION = "idempotency";
+    private static final byte[] LOCK_BYTES = bytes(LOCK_PREFIX);
+    private static final RedisSerializer<byte[]> BYTES = RedisSerializer.byteArray();
+    private static final RedisSerializer<Long> LONG = new GenericToStringSerializer<>(Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisGuard redisGuard;
+
+    @Autowired
+    public IdempotencyStore(RedisGuardClient redisGuardClient, RedisGuard redisGuard) {
+        this(redisGuardClient.template(OPERATION), redisGuard);
+    }
+
+    IdempotencyStore(StringRedisTemplate redisTemplate, RedisGuard redisGuard) {
+        this.redisTemplate = redisTemplate;
+        this.redisGuard = redisGuard;
+    }
+
+    /**
+     * Load the idempotency scripts into the Redis script cache so the first request is served by EVALSHA
+     */
+    @PostConstruct
+    public void preloadScripts() {
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                for (RedisScript<?> script : List.of(ACQUIRE_SCRIPT, COMPLETE_SCRIPT, RELEASE_SCRIPT, RENEW_SCRIPT)) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Could not preload idempotency scripts, they will be loaded on first use: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Return the cached response of a key, or lock the key for the caller if it is unknown
+     * @param idempotencyKey idempotency key sent by the client
+     * @return the cached response, the lock of the caller, or neither if another call holds the lock
+     */
+    public Acquisition acquire(String idempotencyKey) {
+        String lock = LOCK_PREFIX + UUID.randomUUID();
+        byte[] value = redisGuard.execute(OPERATION, () -> redisTemplate.execute(ACQUIRE_SCRIPT, BYTES, BYTES,
+                List.of(KEY_PREFIX + idempotencyKey), bytes(lock), bytes(String.valueOf(LOCK_TTL.toMillis()))));
+        if (value == null) {
+            return new Acquisition(null, null);
+        }
+        if (startsWith(value, LOCK_BYTES)) {
+            return new Acquisition(Arrays.equals(value, bytes(lock)) ? lock : null, null);
+        }
+        return new Acquisition(null, value);
+    }
+
+    /**
+     * Cache the response of a call and release its lock
+     * @param idempotencyKey idempotency key sent by the client
+     * @param lock lock returned by {@link #acquire(String)}
+     * @param response response to cache, a {@link CachedIdempotentResponse} record
+     * @param ttl how long the response is cached
+     * @return false if the lock was lost before, the response is not cached then
+     */
+    public boolean complete(String idempotencyKey, String lock, byte[] response, Duration ttl) {
+        Long stored = redisGuard.execute(OPERATION, () -> redisTemplate.execute(COMPLETE_SCRIPT, BYTES, LONG,
+                List.of(KEY_PREFIX + idempotencyKey),
+                bytes(lock), response, bytes(String.valueOf(ttl.toMillis())), bytes(COMPLETION_CHANNEL)));
+        return stored != null && stored == 1L;
+    }
+
+    /**
+     * Release the lock of a call without caching a response
+     * @param idempotencyKey idempotency key sent by the client
+     * @param lock lock returned by {@link #acquire(String)}
+     * @return false if the lock was lost before
+     */
+    public boolean release(String idempotencyKey, String lock) {
+        Long released = redisGuard.execute(OPERATION, () -> redisTemplate.execute(RELEASE_SCRIPT, List.of(KEY_PREFIX + idempotencyKey),
+                lock, COMPLETION_CHANNEL));
+        return released != null && released == 1L;
+    }
+
+    /**
+     * Extend the lock of a call that is still running by {@link #LOCK_TTL}
+     * @param idempotencyKey idempotency key sent by the client
+     * @param lock lock returned by {@link #acquire(String)}
+     * @return false if the lock was lost before
+     */
+    public boolean renew(String idempotencyKey, String lock) {
+        Long renewed = redisGuard.execute(OPERATION, () -> redisTemplate.execute(RENEW_SCRIPT, List.of(KEY_PREFIX + idempotencyKey),
+                lock, String.valueOf(LOCK_TTL.toMillis())));
+        return renewed != null && renewed == 1L;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        return value.length >= prefix.length && Arrays.equals(value, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Outcome of {@link #acquire(String)}
+     * @param lock lock of the caller, null unless the caller has to process the request
+     * @param response cached response, null unless an earlier call has completed
+     */
+    public record Acquisition(String lock, byte[] response) {
+        public boolean acquired() {
+            return lock != null;
+        }
+
+        public boolean completed() {
+            return response != null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Node-local cache of keys that have exceeded their limit.
+ * A rejected key is remembered as blocked until the retry-after reported by the delegate, and every request
+ * for it is rejected locally until then, so a client hammering an exhausted limit costs one Redis call per
+ * window instead of one per request. A denial only covers requests costing at least as much as the denied one,
+ * cheaper requests may still fit into the limit and are passed to the delegate.
+ * At most {@code max-entries} denials are kept, once full the oldest denial is dropped for every new one.
+ *
+ * @author tzesh
+ */
+public class DenialCachingRateLimiter implements RateLimiter {
+    private final RateLimiter delegate;
+    private final RateLimitProperties.DenialCacheConfig config;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Denial> blocked = new ConcurrentHashMap<>();
+    // insertion order, holds expired and replaced denials until they are polled
+    private final Queue<Denial> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+
+    public DenialCachingRateLimiter(RateLimiter delegate, RateLimitProperties.DenialCacheConfig config) {
+        this(delegate, config, System::nanoTime);
+    }
+
+    DenialCachingRateLimiter(RateLimiter delegate, RateLimitProperties.DenialCacheConfig config, LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.config = config;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        if (!config.isEnabled()) {
+            return delegate.tryAcquire(key, policy, cost);
+        }
+
+        long now = nanoClock.getAsLong();
+        RateLimitResult denied = blockedResult(key, policy, cost, now);
+        if (denied != null) {
+            return denied;
+        }
+
+        RateLimitResult result = delegate.tryAcquire(key, policy, cost);
+        remember(key, result, cost, now);
+        return result;
+    }
+
+    @Override
+    public List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        if (!config.isEnabled()) {
+            return delegate.tryAcquireAll(checks);
+        }
+
+        long now = nanoClock.getAsLong();
+        RateLimitResult[] results = new RateLimitResult[checks.size()];
+        List<RateLimitCheck> forwarded = new ArrayList<>(checks.size());
+        List<Integer> forwardedIndexes = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            RateLimitCheck check = checks.get(i);
+            results[i] = blockedResult(check.key(), check.policy(), check.cost(), now);
+            if (results[i] == null) {
+                forwarded.add(check);
+                forwardedIndexes.add(i);
+            }
+        }
+        if (!forwarded.isEmpty()) {
+            List<RateLimitResult> delegated = delegate.tryAcquireAll(forwarded);
+            for (int i = 0; i < delegated.size(); i++) {
+                remember(forwarded.get(i).key(), delegated.get(i), forwarded.get(i).cost(), now);
+                results[forwardedIndexes.get(i)] = delegated.get(i);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Reservations always go to the delegate, a delayed call is never a cached denial
+     */
+    @Override
+    public RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        return delegate.reserve(key, policy, cost, maxWait);
+    }
+
+    private RateLimitResult blockedResult(String key, RateLimitPolicy policy, long cost, long now) {
+        Denial denial = blocked.get(key);
+        if (denial == null) {
+            return null;
+        }
+        if (now - denial.until() >= 0) {
+            blocked.remove(key, denial);
+            return null;
+        }
+        if (cost < denial.cost()) {
+            return null;
+        }
+        long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(denial.until() - now));
+        return new RateLimitResult(false, policy.limit(), 0, retryAfterMillis, retryAfterMillis);
+    }
+
+    private void remember(String key, RateLimitResult result, long cost, long now) {
+        if (!result.allowed() && result.retryAfterMillis() > 0) {
+            block(key, new Denial(key, now + TimeUnit.MILLISECONDS.toNanos(result.retryAfterMillis()), cost), now);
+        }
+    }
+
+    private void block(String key, Denial denial, long now) {
+        // keep the cheapest denial, it covers the most requests
+        Denial kept = blocked.merge(key, denial, (current, next) ->
+                now - current.until() < 0 && current.cost() <= next.cost() ? current : next);
+        if (kept != denial) {
+            return;
+        }
+        order.add(denial);
+        ordered.incrementAndGet();
+        Denial oldest;
+        while (ordered.get() > config.getMaxEntries() && (oldest = order.poll()) != null) {
+            ordered.decrementAndGet();
+            blocked.remove(oldest.key(), oldest);
+        }
+    }
+
+    /**
+     * Denial of a key, valid until the retry-after of the delegate
+     * @param until end of the denial in nanoseconds
+     * @param cost cost of the denied request, cheaper requests are not covered
+     */
+    private record Denial(String key, long until, long cost) {
+    }
+}
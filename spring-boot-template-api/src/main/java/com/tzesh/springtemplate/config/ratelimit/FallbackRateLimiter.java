@@ -0,0 +1,162 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Switches to node-local rate limiting while Redis is unavailable.
+ * After {@code failure-threshold} consecutive failures of the distributed limiter, every key is evaluated by a
+ * {@link LocalRateLimiter} with its limit divided by {@code estimated-nodes}, so clients stay limited to roughly
+ * the configured rate across the cluster and requests no longer wait for Redis to time out.
+ * Redis is probed in the background every {@code probe-interval} and the distributed limiter is used again
+ * as soon as a probe succeeds. Failures below the threshold are propagated, so callers still fail open for them.
+ *
+ * @author tzesh
+ */
+@Slf4j
+public final class FallbackRateLimiter implements RateLimiter, AutoCloseable {
+    private final RateLimiter delegate;
+    private final RateLimiter local;
+    private final BooleanSupplier probe;
+    private final RateLimitProperties.FallbackConfig config;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+    private volatile boolean degraded;
+
+    public FallbackRateLimiter(RateLimiter delegate, BooleanSupplier probe, RateLimitProperties.FallbackConfig config) {
+        this(delegate, new LocalRateLimiter(config.getMaxKeys()), probe, config);
+    }
+
+    FallbackRateLimiter(RateLimiter delegate, RateLimiter local, BooleanSupplier probe, RateLimitProperties.FallbackConfig config) {
+        this.delegate = delegate;
+        this.local = local;
+        this.probe = probe;
+        this.config = config;
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ratelimit-redis-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getProbeInterval().toMillis();
+        prober.scheduleWithFixedDelay(this::probeIfDegraded, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        if (degraded) {
+            return local.tryAcquire(key, localPolicy(policy), cost);
+        }
+        try {
+            RateLimitResult result = delegate.tryAcquire(key, policy, cost);
+            consecutiveFailures.set(0);
+            return result;
+        } catch (RuntimeException e) {
+            if (!recordFailure(e)) {
+                throw e;
+            }
+            return local.tryAcquire(key, localPolicy(policy), cost);
+        }
+    }
+
+    @Override
+    public List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        if (degraded) {
+            return localTryAcquireAll(checks);
+        }
+        try {
+            List<RateLimitResult> results = delegate.tryAcquireAll(checks);
+            consecutiveFailures.set(0);
+            return results;
+        } catch (RuntimeException e) {
+            if (!recordFailure(e)) {
+                throw e;
+            }
+            return localTryAcquireAll(checks);
+        }
+    }
+
+    /**
+     * While degraded, reservations are evaluated by the local limiter, which rejects instead of delaying
+     */
+    @Override
+    public RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        if (degraded) {
+            return local.reserve(key, localPolicy(policy), cost, maxWait);
+        }
+        try {
+            RateLimitReservation reservation = delegate.reserve(key, policy, cost, maxWait);
+            consecutiveFailures.set(0);
+            return reservation;
+        } catch (RuntimeException e) {
+            if (!recordFailure(e)) {
+                throw e;
+            }
+            return local.reserve(key, localPolicy(policy), cost, maxWait);
+        }
+    }
+
+    /**
+     * Whether keys are currently evaluated locally
+     * @return true while Redis is considered unavailable
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    @Override
+    public void close() {
+        prober.shutdownNow();
+    }
+
+    /**
+     * Count a failure of the distributed limiter
+     * @return whether the limiter has switched to local rate limiting
+     */
+    private boolean recordFailure(RuntimeException e) {
+        if (!config.isEnabled() || consecutiveFailures.incrementAndGet() < config.getFailureThreshold()) {
+            return false;
+        }
+        if (!degraded) {
+            degraded = true;
+            log.warn("Redis unavailable for rate limiting after {} consecutive failures, switching to local rate limiting: {}",
+                    config.getFailureThreshold(), e.getMessage());
+        }
+        return true;
+    }
+
+    void probeIfDegraded() {
+        if (!degraded) {
+            return;
+        }
+        boolean available;
+        try {
+            available = probe.getAsBoolean();
+        } catch (RuntimeException e) {
+            available = false;
+        }
+        if (available) {
+            consecutiveFailures.set(0);
+            degraded = false;
+            log.info("Redis available again, switching back to distributed rate limiting");
+        }
+    }
+
+    private List<RateLimitResult> localTryAcquireAll(List<RateLimitCheck> checks) {
+        return checks.stream()
+                .map(check -> local.tryAcquire(check.key(), localPolicy(check.policy()), check.cost()))
+                .toList();
+    }
+
+    private RateLimitPolicy localPolicy(RateLimitPolicy policy) {
+        int nodes = Math.max(1, config.getEstimatedNodes());
+        int limit = Math.max(1, (policy.limit() + nodes - 1) / nodes);
+        return new RateLimitPolicy(limit, policy.window(), policy.algorithm());
+    }
+}
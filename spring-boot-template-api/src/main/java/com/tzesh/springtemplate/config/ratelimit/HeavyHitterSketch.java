@@ -0,0 +1,163 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Streaming top-k of the most frequent keys in constant memory, regardless of how many distinct keys are seen.
+ * Frequencies are estimated by a Count-Min sketch of {@code depth} rows of {@code width} counters, which may
+ * overestimate but never underestimates a key. The candidates are kept Space-Saving style: a key enters the
+ * top-k once its estimate exceeds the smallest tracked count, which it then evicts. Counting a key that is
+ * neither tracked nor heavy enough to enter takes no lock.
+ * The rows index a key by the two halves of a 64-bit hash of its characters, seeded per sketch, so keys sharing a
+ * {@link String#hashCode()} are still told apart and colliding keys cannot be chosen in advance.
+ * Counts are halved once per {@code decayInterval}, by the call that finds the interval elapsed, so the top-k
+ * follows the recent traffic rather than the traffic since startup.
+ *
+ * @author tzesh
+ */
+public class HeavyHitterSketch {
+    private final int depth;
+    private final int mask;
+    private final int capacity;
+    private final long seed;
+    private final AtomicLongArray counters;
+    private final Map<String, Long> top = new ConcurrentHashMap<>();
+    private final long decayIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong nextDecayAt;
+    // smallest tracked count once the top-k is full, keys below it cannot enter
+    private volatile long admission;
+
+    /**
+     * @param capacity number of keys tracked
+     * @param width counters per row, rounded up to a power of two
+     * @param depth number of rows
+     * @param decayIntervalNanos interval at which counts are halved
+     * @param nanoClock clock of the decay
+     */
+    public HeavyHitterSketch(int capacity, int width, int depth, long decayIntervalNanos, LongSupplier nanoClock) {
+        this(capacity, width, depth, decayIntervalNanos, nanoClock, ThreadLocalRandom.current().nextLong());
+    }
+
+    HeavyHitterSketch(int capacity, int width, int depth, long decayIntervalNanos, LongSupplier nanoClock, long seed) {
+        int rowWidth = Math.max(2, Integer.highestOneBit(Math.max(1, width - 1)) << 1);
+        this.depth = Math.max(1, depth);
+        this.mask = rowWidth - 1;
+        this.capacity = Math.max(1, capacity);
+        this.seed = seed;
+        this.counters = new AtomicLongArray(this.depth * rowWidth);
+        this.decayIntervalNanos = decayIntervalNanos;
+        this.nanoClock = nanoClock;
+        this.nextDecayAt = new AtomicLong(nanoClock.getAsLong() + decayIntervalNanos);
+    }
+
+    /**
+     * Count occurrences of a key
+     * @param key key
+     * @param weight occurrences
+     * @return estimated count of the key, decayed
+     */
+    public long record(String key, long weight) {
+        decayIfDue();
+        long estimate = add(key, weight);
+        if (top.computeIfPresent(key, (k, count) -> Math.max(count, estimate)) == null && estimate > admission) {
+            admit(key, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return tracked keys with their estimated counts, most frequent first
+     */
+    public List<HeavyHitter> top() {
+        return top.entrySet().stream()
+                .map(entry -> new HeavyHitter(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingLong(HeavyHitter::count).reversed())
+                .toList();
+    }
+
+    /**
+     * Add the weight to the counter of the key in every row
+     * @return estimated count of the key, the smallest of its counters
+     */
+    private long add(String key, long weight) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.addAndGet(index, weight));
+        }
+        return estimate;
+    }
+
+    private synchronized void admit(String key, long estimate) {
+        if (top.containsKey(key)) {
+            top.computeIfPresent(key, (k, count) -> Math.max(count, estimate));
+            return;
+        }
+        if (top.size() >= capacity) {
+            Map.Entry<String, Long> smallest = null;
+            for (Map.Entry<String, Long> entry : top.entrySet()) {
+                if (smallest == null || entry.getValue() < smallest.getValue()) {
+                    smallest = entry;
+                }
+            }
+            if (smallest == null || estimate <= smallest.getValue()) {
+                return;
+            }
+            top.remove(smallest.getKey());
+        }
+        top.put(key, estimate);
+        admission = top.size() >= capacity
+                ? top.values().stream().mapToLong(Long::longValue).min().orElse(0)
+                : 0;
+    }
+
+    private void decayIfDue() {
+        long now = nanoClock.getAsLong();
+        long due = nextDecayAt.get();
+        if (now - due < 0 || !nextDecayAt.compareAndSet(due, now + decayIntervalNanos)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >> 1);
+        }
+        synchronized (this) {
+            top.replaceAll((key, count) -> count >> 1);
+            top.values().removeIf(count -> count == 0);
+            admission = top.size() >= capacity ? admission >> 1 : 0;
+        }
+    }
+
+    /**
+     * Seeded 64-bit hash of the characters of a key, mixed with the MurmurHash3 finalizer
+     */
+    private long hash(String key) {
+        long h = seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Key tracked in the top-k
+     * @param key key
+     * @param count estimated count, decayed
+     */
+    public record HeavyHitter(String key, long count) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Heaviest client IPs and users of the rate limited traffic, fed by the {@link RateLimitingFilter} with the address
+ * of every request and by the {@link RateLimitAspect} with the user of limits keyed by user, weighted by cost.
+ * Each dimension is a {@link HeavyHitterSketch}, so memory stays constant however many clients there are.
+ * The keys are listed by the {@link HeavyHittersEndpoint}; the metrics only carry the estimated count per rank as
+ * {@code ratelimit.heavy.hitters{dimension,rank}}, so client addresses and user names never become metric tags.
+ * The rank gauges of a dimension share one sorted snapshot of its top-k, taken at most once per second, so a scrape
+ * sorts each sketch once rather than once per rank.
+ *
+ * @author tzesh
+ */
+@Component
+public class HeavyHitters {
+    private final boolean enabled;
+    private final HeavyHitterSketch clientIps;
+    private final HeavyHitterSketch users;
+
+    @Autowired
+    public HeavyHitters(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this(properties.getHeavyHitters(), System::nanoTime);
+        if (enabled) {
+            registerGauges(meterRegistry, "ip", new RankCounts(clientIps), properties.getHeavyHitters().getTopK());
+            registerGauges(meterRegistry, "user", new RankCounts(users), properties.getHeavyHitters().getTopK());
+        }
+    }
+
+    HeavyHitters(RateLimitProperties.HeavyHitterConfig config, LongSupplier nanoClock) {
+        this.enabled = config.isEnabled();
+        this.clientIps = sketch(config, nanoClock);
+        this.users = sketch(config, nanoClock);
+    }
+
+    /**
+     * Count a request of a client address
+     * @param ip client address
+     */
+    public void recordClientIp(String ip) {
+        if (enabled && ip != null) {
+            clientIps.record(ip, 1);
+        }
+    }
+
+    /**
+     * Count a call of an authenticated user
+     * @param username user name, anonymous calls are not counted
+     * @param cost cost charged for the call
+     */
+    public void recordUser(String username, long cost) {
+        if (enabled && username != null && !"anonymous".equals(username)) {
+            users.record(username, cost);
+        }
+    }
+
+    public List<HeavyHitterSketch.HeavyHitter> topClientIps() {
+        return clientIps.top();
+    }
+
+    public List<HeavyHitterSketch.HeavyHitter> topUsers() {
+        return users.top();
+    }
+
+    private static HeavyHitterSketch sketch(RateLimitProperties.HeavyHitterConfig config, LongSupplier nanoClock) {
+        return new HeavyHitterSketch(config.getTopK(), config.getWidth(), config.getDepth(),
+                config.getDecayInterval().toNanos(), nanoClock);
+    }
+
+    private static void registerGauges(MeterRegistry meterRegistry, String dimension, RankCounts counts, int topK) {
+        for (int rank = 1; rank <= topK; rank++) {
+            int index = rank - 1;
+            Gauge.builder("ratelimit.heavy.hitters", counts, value -> value.count(index))
+                    .description("Estimated recent count of the heavy hitter at the given rank")
+                    .tag("dimension", dimension)
+                    .tag("rank", String.valueOf(rank))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Estimated counts of the ranks of one dimension, sorted once for all rank gauges of a scrape
+     */
+    private static final class RankCounts {
+        private static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final HeavyHitterSketch sketch;
+        private volatile Snapshot snapshot;
+
+        private RankCounts(HeavyHitterSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        private long count(int index) {
+            long now = System.nanoTime();
+            Snapshot current = snapshot;
+            if (current == null || now - current.takenAtNanos() >= MAX_AGE_NANOS) {
+                // concurrent scrapes may both sort, the later snapshot wins
+                current = new Snapshot(sketch.top().stream().mapToLong(HeavyHitterSketch.HeavyHitter::count).toArray(), now);
+                snapshot = current;
+            }
+            return index < current.counts().length ? current.counts()[index] : 0;
+        }
+
+        /**
+         * @param counts counts by rank, highest first
+         * @param takenAtNanos time the snapshot was taken
+         */
+        private record Snapshot(long[] counts, long takenAtNanos) {
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the heaviest clients of this node, exposed at {@code /actuator/heavyhitters}
+ *
+ * @author tzesh
+ */
+@Component
+@Endpoint(id = "heavyhitters")
+public class HeavyHittersEndpoint {
+    private final HeavyHitters heavyHitters;
+
+    public HeavyHittersEndpoint(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
+    /**
+     * List the client IPs and users with the highest recent counts
+     * @return heavy hitters, most frequent first
+     */
+    @ReadOperation
+    public HeavyHitterReport heavyHitters() {
+        return new HeavyHitterReport(heavyHitters.topClientIps(), heavyHitters.topUsers());
+    }
+
+    /**
+     * Heaviest clients of this node
+     * @param clientIps client addresses by requests
+     * @param users users by cost of their user keyed calls
+     */
+    public record HeavyHitterReport(List<HeavyHitterSketch.HeavyHitter> clientIps, List<HeavyHitterSketch.HeavyHitter> users) {
+    }
+}
@@ -0,0 +1,169 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * Packs textual client addresses into two longs without allocating, used as keys of {@link IpCounterStore}.
+ * IPv6 addresses are split into their high and low 64 bits, IPv4 addresses are packed into an int and stored as
+ * the IPv4-mapped IPv6 address {@code ::ffff:a.b.c.d}, so both notations of the same client share a key.
+ * Zone ids are ignored. Anything that is not an address, e.g. {@code unknown}, is keyed by its hash code under
+ * {@link #INVALID_HIGH}, a multicast prefix that never appears as a client address.
+ *
+ * @author tzesh
+ */
+final class IpAddressKey {
+    static final long INVALID_HIGH = -1L;
+    static final long IPV4_MAPPED = 0xFFFF_0000_0000L;
+
+    private static final int INVALID = -1;
+
+    private IpAddressKey() {
+    }
+
+    /**
+     * @param address textual IPv4 or IPv6 address
+     * @return high 64 bits of the address
+     */
+    static long high(String address) {
+        return pack(address, true);
+    }
+
+    /**
+     * @param address textual IPv4 or IPv6 address
+     * @return low 64 bits of the address
+     */
+    static long low(String address) {
+        return pack(address, false);
+    }
+
+    /**
+     * Parse a dotted quad, lets callers key the common IPv4 case with a single pass
+     * @param address textual address
+     * @return the address as an unsigned int, or -1 if it is not an IPv4 address
+     */
+    static long ipv4(String address) {
+        return ipv4(address, 0, address.length());
+    }
+
+    private static long pack(String address, boolean high) {
+        long ipv4 = ipv4(address, 0, address.length());
+        if (ipv4 >= 0) {
+            return high ? 0 : IPV4_MAPPED | ipv4;
+        }
+        int end = address.indexOf('%');
+        if (end < 0) {
+            end = address.length();
+        }
+        // the first pass counts the groups, so the second one knows where the groups after "::" belong
+        long groups = address.indexOf(':') < 0 ? INVALID : ipv6(address, end, INVALID, high);
+        if (groups < 0) {
+            return high ? INVALID_HIGH : address.hashCode();
+        }
+        return ipv6(address, end, (int) groups, high);
+    }
+
+    /**
+     * @return the address as an unsigned int, or -1 if the range is not a dotted quad
+     */
+    private static long ipv4(String address, int from, int to) {
+        long value = 0;
+        int dots = 0;
+        int octet = INVALID;
+        for (int i = from; i < to; i++) {
+            char c = address.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || dots == 3) {
+                    return INVALID;
+                }
+                value = value << 8 | octet;
+                dots++;
+                octet = INVALID;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return INVALID;
+                }
+            } else {
+                return INVALID;
+            }
+        }
+        if (octet < 0 || dots != 3) {
+            return INVALID;
+        }
+        return value << 8 | octet;
+    }
+
+    /**
+     * @param groups number of 16 bit groups written in the address, or -1 to count them
+     * @return the requested half of the address, or the number of groups when counting, -1 if malformed
+     */
+    private static long ipv6(String address, int end, int groups, boolean high) {
+        long half = 0;
+        int index = 0;
+        boolean compressed = false;
+        int i = 0;
+        if (address.startsWith("::")) {
+            compressed = true;
+            i = 2;
+            index = groups < 0 ? 0 : 8 - groups;
+        }
+        while (i < end) {
+            int group = 0;
+            int j = i;
+            int digit;
+            while (j < end && j - i < 4 && (digit = hexDigit(address.charAt(j))) >= 0) {
+                group = group << 4 | digit;
+                j++;
+            }
+            if (j < end && address.charAt(j) == '.') {
+                // trailing dotted quad, e.g. ::ffff:10.0.0.1
+                long ipv4 = ipv4(address, i, end);
+                if (ipv4 < 0) {
+                    return INVALID;
+                }
+                half = place(half, index++, (int) (ipv4 >>> 16), high);
+                half = place(half, index++, (int) (ipv4 & 0xFFFF), high);
+                break;
+            }
+            if (j == i || index >= 8) {
+                return INVALID;
+            }
+            half = place(half, index++, group, high);
+            if (j == end) {
+                break;
+            }
+            if (address.charAt(j) != ':' || j + 1 == end) {
+                return INVALID;
+            }
+            if (address.charAt(j + 1) == ':') {
+                if (compressed) {
+                    return INVALID;
+                }
+                compressed = true;
+                i = j + 2;
+                if (groups >= 0) {
+                    index = 8 - (groups - index);
+                }
+            } else {
+                i = j + 1;
+            }
+        }
+        if (groups >= 0) {
+            return half;
+        }
+        return (compressed ? index < 8 : index == 8) ? index : INVALID;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        char lower = (char) (c | 0x20);
+        return lower >= 'a' && lower <= 'f' ? lower - 'a' + 10 : INVALID;
+    }
+
+    private static long place(long half, int index, int group, boolean high) {
+        if (index < 4 == high) {
+            half |= (long) group << (16 * (3 - (index & 3)));
+        }
+        return half;
+    }
+}
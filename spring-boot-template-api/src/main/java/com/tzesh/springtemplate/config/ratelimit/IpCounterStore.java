@@ -0,0 +1,181 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * Node-local fixed window counters of client addresses in open-addressing slots of primitive longs, so counting a
+ * request allocates nothing and involves no locks. Used by the {@link RateLimitingFilter} for the global limit
+ * with {@code ratelimit.global-store=LOCAL} or {@code MAPPED}; implementations only provide the memory of the slots.
+ * <p>
+ * Every slot holds the address as two longs (see {@link IpAddressKey}) and a state word with the window epoch in
+ * the high and the count in the low 32 bits. Windows are aligned to the epoch, a slot stamped with an older epoch
+ * counts as zero and may be taken over by another address, so the table never needs to be cleared. Counts and
+ * take-overs are compare-and-set on the state word; a slot is marked as claimed while its key is written, and
+ * readers re-check the state after reading the key, so a counter is never charged for an address it no longer holds.
+ * If no slot is found within {@code maxProbes}, the request is allowed like it is when Redis is unavailable.
+ *
+ * @author tzesh
+ */
+public abstract class IpCounterStore {
+    /**
+     * Returned by {@link #tryAcquire} for rejected requests
+     */
+    static final long REJECTED = -1;
+
+    /**
+     * Longs per slot: high, low, state and one long of padding, two slots per cache line
+     */
+    static final int STRIDE = 4;
+    static final long FREE = 0;
+    static final long CLAIMED = -1;
+    /**
+     * State of a slot counting nothing that is not free, stamped with the first epoch
+     */
+    static final long EXPIRED = 1L << 32;
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+    private final int mask;
+    private final int maxProbes;
+    private final long limit;
+    private final long windowMillis;
+
+    /**
+     * @param slotCount number of slots, a power of two, see {@link #slotCount(int)}
+     * @param maxProbes slots probed for an address before failing open
+     * @param policy limit and window of every address, the algorithm is always a fixed window
+     */
+    protected IpCounterStore(int slotCount, int maxProbes, RateLimitPolicy policy) {
+        this.mask = slotCount - 1;
+        this.maxProbes = Math.min(Math.max(1, maxProbes), slotCount);
+        this.limit = policy.limit();
+        this.windowMillis = policy.window().toMillis();
+    }
+
+    /**
+     * Count a request of a textual address, see {@link IpAddressKey}
+     * @param address client address
+     * @param nowMillis current time in epoch millis
+     * @return units left in the window, or {@link #REJECTED} if the limit has been reached
+     */
+    public long tryAcquire(String address, long nowMillis) {
+        long ipv4 = IpAddressKey.ipv4(address);
+        if (ipv4 >= 0) {
+            return tryAcquire(0, IpAddressKey.IPV4_MAPPED | ipv4, nowMillis);
+        }
+        return tryAcquire(IpAddressKey.high(address), IpAddressKey.low(address), nowMillis);
+    }
+
+    /**
+     * Count a request of an address
+     * @param high high 64 bits of the address
+     * @param low low 64 bits of the address
+     * @param nowMillis current time in epoch millis
+     * @return units left in the window, or {@link #REJECTED} if the limit has been reached
+     */
+    public long tryAcquire(long high, long low, long nowMillis) {
+        long epoch = ((nowMillis / windowMillis) & 0x7FFF_FFFFL) + 1;
+        while (true) {
+            int candidate = -1;
+            long candidateState = FREE;
+            boolean retry = false;
+            int index = hash(high, low) & mask;
+            for (int probe = 0; probe < maxProbes; probe++, index = (index + 1) & mask) {
+                int base = index * STRIDE;
+                long state = stateOf(base);
+                if (state == FREE) {
+                    if (candidate < 0) {
+                        candidate = base;
+                        candidateState = FREE;
+                    }
+                    break;
+                }
+                boolean matches = getAcquire(base) == high && getAcquire(base + 1) == low;
+                if (getAcquire(base + 2) != state) {
+                    // taken over while the key was read
+                    retry = true;
+                    break;
+                }
+                boolean current = state >>> 32 == epoch;
+                if (matches) {
+                    long count = current ? state & COUNT_MASK : 0;
+                    if (count >= limit) {
+                        return REJECTED;
+                    }
+                    if (compareAndSet(base + 2, state, epoch << 32 | (count + 1))) {
+                        return limit - count - 1;
+                    }
+                    retry = true;
+                    break;
+                }
+                if (!current && candidate < 0) {
+                    candidate = base;
+                    candidateState = state;
+                }
+            }
+            if (retry) {
+                continue;
+            }
+            if (candidate < 0) {
+                // every probed slot is counting another address in this window
+                return limit;
+            }
+            if (limit < 1) {
+                return REJECTED;
+            }
+            if (!compareAndSet(candidate + 2, candidateState, CLAIMED)) {
+                continue;
+            }
+            set(candidate, high);
+            set(candidate + 1, low);
+            setRelease(candidate + 2, epoch << 32 | 1);
+            return limit - 1;
+        }
+    }
+
+    /**
+     * @param nowMillis current time in epoch millis
+     * @return millis until the current window resets
+     */
+    public long resetMillis(long nowMillis) {
+        return windowMillis - Math.floorMod(nowMillis, windowMillis);
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * @param capacity requested number of slots
+     * @return the capacity rounded up to a power of two
+     */
+    static int slotCount(int capacity) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+    }
+
+    /**
+     * @param index index of a long, slot {@code n} spans {@code n * STRIDE} to {@code n * STRIDE + 3}
+     */
+    protected abstract long getAcquire(int index);
+
+    protected abstract void set(int index, long value);
+
+    protected abstract void setRelease(int index, long value);
+
+    protected abstract boolean compareAndSet(int index, long expected, long value);
+
+    private long stateOf(int base) {
+        long state;
+        while ((state = getAcquire(base + 2)) == CLAIMED) {
+            Thread.onSpinWait();
+        }
+        return state;
+    }
+
+    private static int hash(long high, long low) {
+        long h = high * 31 + low;
+        h ^= h >>> 33;
+        h *= 0xFF51_AFD7_ED55_8CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CE_B9FE_1A85_EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
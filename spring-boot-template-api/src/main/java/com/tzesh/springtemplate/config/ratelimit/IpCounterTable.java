@@ -0,0 +1,46 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * {@link IpCounterStore} on the heap, counters are lost when the node restarts.
+ * Used with {@code ratelimit.global-store=LOCAL}.
+ *
+ * @author tzesh
+ */
+public class IpCounterTable extends IpCounterStore {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] slots;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     * @param maxProbes slots probed for an address before failing open
+     * @param policy limit and window of every address, the algorithm is always a fixed window
+     */
+    public IpCounterTable(int capacity, int maxProbes, RateLimitPolicy policy) {
+        super(slotCount(capacity), maxProbes, policy);
+        this.slots = new long[slotCount(capacity) * STRIDE];
+    }
+
+    @Override
+    protected long getAcquire(int index) {
+        return (long) SLOTS.getAcquire(slots, index);
+    }
+
+    @Override
+    protected void set(int index, long value) {
+        slots[index] = value;
+    }
+
+    @Override
+    protected void setRelease(int index, long value) {
+        SLOTS.setRelease(slots, index, value);
+    }
+
+    @Override
+    protected boolean compareAndSet(int index, long expected, long value) {
+        return SLOTS.compareAndSet(slots, index, expected, value);
+    }
+}
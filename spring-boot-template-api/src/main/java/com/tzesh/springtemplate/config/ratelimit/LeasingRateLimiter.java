@@ -0,0 +1,187 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Node-local tier in front of the {@link RedisRateLimiter}.
+ * For {@link RateLimitAlgorithm#FIXED_WINDOW} keys with a limit of at least {@code min-limit}, blocks of
+ * {@code fraction * limit} permits are leased from the distributed counter and served from lock-free local counters
+ * until the block is used up or the window resets. A request costing several units takes as many permits, leasing
+ * a larger block if its cost exceeds the block size. All other keys are passed through unchanged.
+ * At most {@code max-keys} leases are kept, once full the oldest lease is dropped for every new one; its unused
+ * permits are lost like those of an expired lease.
+ *
+ * @author tzesh
+ */
+public class LeasingRateLimiter implements RateLimiter {
+    private final RedisRateLimiter delegate;
+    private final RateLimitProperties.LeaseConfig config;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    // creation order, holds expired and replaced leases until they are polled
+    private final Queue<Lease> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+
+    public LeasingRateLimiter(RedisRateLimiter delegate, RateLimitProperties.LeaseConfig config) {
+        this(delegate, config, System::nanoTime);
+    }
+
+    LeasingRateLimiter(RedisRateLimiter delegate, RateLimitProperties.LeaseConfig config, LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.config = config;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        if (!isLeased(policy)) {
+            return delegate.tryAcquire(key, policy, cost);
+        }
+
+        long now = nanoClock.getAsLong();
+        Lease lease = leases.get(key);
+        if (lease != null && lease.isActive(now) && lease.tryTake(cost)) {
+            return lease.toResult(policy, now);
+        }
+        return renew(key, policy, cost, now);
+    }
+
+    @Override
+    public List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        RateLimitResult[] results = new RateLimitResult[checks.size()];
+        List<RateLimitCheck> forwarded = new ArrayList<>(checks.size());
+        List<Integer> forwardedIndexes = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            RateLimitCheck check = checks.get(i);
+            if (isLeased(check.policy())) {
+                results[i] = tryAcquire(check.key(), check.policy(), check.cost());
+            } else {
+                forwarded.add(check);
+                forwardedIndexes.add(i);
+            }
+        }
+        if (!forwarded.isEmpty()) {
+            List<RateLimitResult> delegated = delegate.tryAcquireAll(forwarded);
+            for (int i = 0; i < delegated.size(); i++) {
+                results[forwardedIndexes.get(i)] = delegated.get(i);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Reservations are paced by Redis and never leased
+     */
+    @Override
+    public RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        return delegate.reserve(key, policy, cost, maxWait);
+    }
+
+    private RateLimitResult renew(String key, RateLimitPolicy policy, long cost, long now) {
+        RateLimitLease granted = delegate.lease(key, policy, Math.max(cost, blockSize(policy)));
+        if (granted.granted() <= 0) {
+            leases.remove(key);
+            return new RateLimitResult(false, policy.limit(), 0, granted.resetMillis(), granted.resetMillis());
+        }
+
+        Lease created = new Lease(key, granted.granted(), granted.remaining(),
+                now + TimeUnit.MILLISECONDS.toNanos(granted.resetMillis()));
+        Lease lease = leases.compute(key, (k, current) -> {
+            if (current != null && current.isActive(now)) {
+                current.add(granted.granted(), granted.remaining());
+                return current;
+            }
+            return created;
+        });
+        if (lease == created) {
+            track(created);
+        }
+        if (!lease.tryTake(cost)) {
+            // the window cannot cover the whole cost, the leased permits are kept for cheaper requests
+            return new RateLimitResult(false, policy.limit(), lease.remaining(), granted.resetMillis(), granted.resetMillis());
+        }
+        return lease.toResult(policy, now);
+    }
+
+    private boolean isLeased(RateLimitPolicy policy) {
+        return config.isEnabled()
+                && policy.algorithm() == RateLimitAlgorithm.FIXED_WINDOW
+                && policy.limit() >= config.getMinLimit();
+    }
+
+    private long blockSize(RateLimitPolicy policy) {
+        return Math.max(1, (long) Math.ceil(policy.limit() * config.getFraction()));
+    }
+
+    /**
+     * Queue a new lease, then drop the oldest ones until at most {@code max-keys} are queued
+     */
+    private void track(Lease lease) {
+        order.add(lease);
+        ordered.incrementAndGet();
+        Lease oldest;
+        while (ordered.get() > config.getMaxKeys() && (oldest = order.poll()) != null) {
+            ordered.decrementAndGet();
+            leases.remove(oldest.key, oldest);
+        }
+    }
+
+    /**
+     * Permits leased for a single key, valid until the distributed window resets
+     */
+    private static final class Lease {
+        private final String key;
+        private final AtomicLong available;
+        private final AtomicLong distributedRemaining;
+        private final long expiresAtNanos;
+
+        private Lease(String key, long available, long distributedRemaining, long expiresAtNanos) {
+            this.key = key;
+            this.available = new AtomicLong(available);
+            this.distributedRemaining = new AtomicLong(distributedRemaining);
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isActive(long now) {
+            return now - expiresAtNanos < 0;
+        }
+
+        private boolean tryTake(long permits) {
+            long current;
+            do {
+                current = available.get();
+                if (current < permits) {
+                    return false;
+                }
+            } while (!available.compareAndSet(current, current - permits));
+            return true;
+        }
+
+        private void add(long permits, long remaining) {
+            available.addAndGet(permits);
+            distributedRemaining.set(remaining);
+        }
+
+        private long remaining() {
+            return distributedRemaining.get() + available.get();
+        }
+
+        private RateLimitResult toResult(RateLimitPolicy policy, long now) {
+            long resetMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - now));
+            return new RateLimitResult(true, policy.limit(), remaining(), resetMillis, 0);
+        }
+    }
+}
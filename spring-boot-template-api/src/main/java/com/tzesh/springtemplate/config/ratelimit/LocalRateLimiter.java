@@ -0,0 +1,91 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Node-local fixed window rate limiter used while Redis is unavailable.
+ * Counters live in a {@link ConcurrentHashMap}, so keys are spread over its lock-free bins and only requests
+ * for the same key contend. Every algorithm is approximated by a fixed window, which is accurate enough to
+ * keep protecting the service until the distributed counters are back.
+ * At most {@code maxKeys} windows are tracked, once full the oldest window is dropped for every new one, so the
+ * request path never scans the map.
+ *
+ * @author tzesh
+ */
+public class LocalRateLimiter implements RateLimiter {
+    private final int maxKeys;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    // creation order, holds expired and replaced windows until they are polled
+    private final Queue<Window> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+
+    public LocalRateLimiter(int maxKeys) {
+        this(maxKeys, System::nanoTime);
+    }
+
+    LocalRateLimiter(int maxKeys, LongSupplier nanoClock) {
+        this.maxKeys = maxKeys;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        long now = nanoClock.getAsLong();
+        Window window = windows.get(key);
+        if (window == null || !window.isActive(now)) {
+            Window created = new Window(key, now + policy.window().toNanos());
+            window = windows.compute(key, (k, current) -> current != null && current.isActive(now) ? current : created);
+            if (window == created) {
+                track(created);
+            }
+        }
+
+        long count = window.count.addAndGet(cost);
+        long resetMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(window.resetAtNanos - now));
+        if (count > policy.limit()) {
+            // refund the rejected cost like the distributed fixed window does
+            window.count.addAndGet(-cost);
+            return new RateLimitResult(false, policy.limit(), Math.max(0, policy.limit() - count + cost), resetMillis, resetMillis);
+        }
+        return new RateLimitResult(true, policy.limit(), policy.limit() - count, resetMillis, 0);
+    }
+
+    /**
+     * Queue a new window, then drop the oldest ones until at most {@code maxKeys} are queued
+     */
+    private void track(Window window) {
+        order.add(window);
+        ordered.incrementAndGet();
+        Window oldest;
+        while (ordered.get() > maxKeys && (oldest = order.poll()) != null) {
+            ordered.decrementAndGet();
+            windows.remove(oldest.key, oldest);
+        }
+    }
+
+    /**
+     * Counter of a single key, valid until the window resets
+     */
+    private static final class Window {
+        private final String key;
+        private final AtomicLong count = new AtomicLong();
+        private final long resetAtNanos;
+
+        private Window(String key, long resetAtNanos) {
+            this.key = key;
+            this.resetAtNanos = resetAtNanos;
+        }
+
+        private boolean isActive(long now) {
+            return now - resetAtNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link IpCounterStore} in a memory-mapped file, so counters live off the heap and survive a restart of the node.
+ * Used with {@code ratelimit.global-store=MAPPED}: without it, a rolling restart would let every throttled client
+ * back in at once.
+ * <p>
+ * The file starts with a header of the layout, followed by the slots accessed through a {@link VarHandle} over
+ * the mapped {@link MemorySegment}. On boot, a file of the same layout is reused as is; windows are aligned to the
+ * epoch, so counters of the current window keep counting and older ones are reused like on the heap. Slots left
+ * claimed by a crash are freed. A file of another layout is cleared. The file is locked while mapped, so it
+ * cannot be shared by two processes until the store is closed. Pages are written back by the operating system,
+ * a crash of the process loses nothing, a crash of the machine may lose recent counts.
+ *
+ * @author tzesh
+ */
+@Slf4j
+public final class MappedIpCounterStore extends IpCounterStore implements Closeable {
+    private static final VarHandle LONG = ValueLayout.JAVA_LONG.varHandle();
+    private static final long MAGIC = 0x524C_4950_4354_5231L;
+    private static final int VERSION = 1;
+    // magic, version and slot count, window millis, padded to a cache line
+    private static final long HEADER_BYTES = 64;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final FileChannel channel;
+
+    /**
+     * Map the counter file, creating or clearing it if it does not match the layout
+     * @param file counter file
+     * @param capacity number of slots, rounded up to a power of two
+     * @param maxProbes slots probed for an address before failing open
+     * @param policy limit and window of every address, the algorithm is always a fixed window
+     * @throws IOException if the file cannot be mapped or is locked by another process
+     */
+    public MappedIpCounterStore(Path file, int capacity, int maxProbes, RateLimitPolicy policy) throws IOException {
+        super(slotCount(capacity), maxProbes, policy);
+        int slotCount = slotCount(capacity);
+        long windowMillis = policy.window().toMillis();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Rate limit counter file " + file + " is in use by another process");
+        }
+        long size = HEADER_BYTES + (long) slotCount * STRIDE * Long.BYTES;
+        boolean reuse = channel.size() == size;
+        this.arena = Arena.ofShared();
+        this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        if (reuse && header(0) == MAGIC && header(8) == ((long) VERSION << 32 | slotCount) && header(16) == windowMillis) {
+            int freed = recover(slotCount);
+            log.info("Recovered rate limit counters from {}, freed {} slots claimed before the restart", file, freed);
+        } else {
+            segment.fill((byte) 0);
+            segment.set(ValueLayout.JAVA_LONG, 16, windowMillis);
+            segment.set(ValueLayout.JAVA_LONG, 8, (long) VERSION << 32 | slotCount);
+            segment.set(ValueLayout.JAVA_LONG, 0, MAGIC);
+            segment.force();
+            log.info("Created rate limit counter file {} with {} slots", file, slotCount);
+        }
+    }
+
+    /**
+     * Release slots whose key was being written when the previous process stopped, readers would wait on them
+     * forever. They are stamped with the first epoch rather than freed, a free slot would end the probe sequence
+     * of addresses stored behind it.
+     */
+    private int recover(int slotCount) {
+        int freed = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int state = slot * STRIDE + 2;
+            if (getAcquire(state) == CLAIMED) {
+                setRelease(state, EXPIRED);
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Write the counters back to the file, unmap it and release the lock; the store must not be used afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        segment.force();
+        arena.close();
+        channel.close();
+    }
+
+    private long header(long offset) {
+        return segment.get(ValueLayout.JAVA_LONG, offset);
+    }
+
+    private static long offset(int index) {
+        return HEADER_BYTES + (long) index * Long.BYTES;
+    }
+
+    @Override
+    protected long getAcquire(int index) {
+        return (long) LONG.getAcquire(segment, offset(index));
+    }
+
+    @Override
+    protected void set(int index, long value) {
+        LONG.set(segment, offset(index), value);
+    }
+
+    @Override
+    protected void setRelease(int index, long value) {
+        LONG.setRelease(segment, offset(index), value);
+    }
+
+    @Override
+    protected boolean compareAndSet(int index, long expected, long value) {
+        return LONG.compareAndSet(segment, offset(index), expected, value);
+    }
+}
@@ -2,37 +2,42 @@
 
 import com.tzesh.springtemplate.base.annotation.RateLimit;
 import com.tzesh.springtemplate.base.annotation.RateLimitCategory;
-import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
 import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
 import com.tzesh.springtemplate.base.error.RateLimitErrorMessage;
 import com.tzesh.springtemplate.base.exception.RateLimitExceededException;
+import com.tzesh.springtemplate.base.exception.ServiceUnavailableException;
+import com.tzesh.springtemplate.config.concurrency.AdaptiveConcurrencyFilter;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.context.expression.MethodBasedEvaluationContext;
-import org.springframework.core.DefaultParameterNameDiscoverer;
-import org.springframework.core.ParameterNameDiscoverer;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.lang.reflect.Method;
-import java.time.Duration;
-import java.util.concurrent.TimeUnit;
 
 /**
  * AOP aspect for handling {@link RateLimit} and {@link RateLimitCategory} annotations.
- * Uses Redis for distributed rate limiting.
- * {@link RateLimit} takes precedence over {@link RateLimitCategory}.
+ * Uses the {@link RateLimiter} for distributed rate limiting with the configured algorithm.
+ * The effective limit of each method is precomputed by the {@link RateLimitRegistry},
+ * where {@link RateLimit} takes precedence over {@link RateLimitCategory}.
+ * Limits already evaluated by the {@link RateLimitingFilter} for the current request are not counted again.
+ * Every call is charged the cost of its limit, or the value of its cost expression, e.g. {@code #pageable.pageSize},
+ * so that limits track the work done rather than the number of calls.
+ * Rejections carry the state of the exceeded limit, so the response gets {@code RateLimit-*} and {@code Retry-After}
+ * headers; allowed calls update the headers if their limit is more restrictive than the ones already sent.
+ * Calls over a {@link com.tzesh.springtemplate.base.annotation.RateLimitMode#DELAY} limit are parked until their
+ * reserved slot instead of being rejected; the request threads should be virtual threads
+ * ({@code spring.threads.virtual.enabled}) so that parked calls do not hold platform threads. Parked calls do not hold
+ * their slot of the {@link AdaptiveConcurrencyFilter} either, so {@code maxQueued} parked calls cannot starve the
+ * requests doing actual work; a call that finds the service overloaded once its slot starts is rejected with 503.
+ * Users of limits keyed by user are counted in the {@link HeavyHitters}, weighted by cost.
  * Fails open if Redis is unavailable.
  *
  * @author tzesh
@@ -42,119 +47,173 @@
 @Slf4j
 @RequiredArgsConstructor
 public class RateLimitAspect {
-    private final StringRedisTemplate redisTemplate;
-    private final RateLimitProperties properties;
-
-    private static final ExpressionParser PARSER = new SpelExpressionParser();
-    private static final ParameterNameDiscoverer DISCOVERER = new DefaultParameterNameDiscoverer();
-
-    @Around("@annotation(rateLimit)")
-    public Object handleRateLimit(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
-        String methodKey = getMethodKey(joinPoint);
-        String clientKey = resolveKey(rateLimit.key(), rateLimit.keyExpression(), joinPoint);
-        String redisKey = "rate_limit:" + methodKey + ":" + clientKey;
-        Duration duration = Duration.of(rateLimit.duration(), rateLimit.timeUnit().toChronoUnit());
-
-        checkRateLimit(redisKey, rateLimit.limit(), duration);
+    /**
+     * Request attribute holding the milliseconds the request was parked by delayed limits, which are not latency
+     */
+    public static final String DELAYED_MILLIS_ATTRIBUTE = RateLimitAspect.class.getName() + ".DELAYED_MILLIS";
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitRegistry registry;
+    private final HeavyHitters heavyHitters;
+    private final RateLimitKeyExpressionEvaluator keyExpressionEvaluator = new RateLimitKeyExpressionEvaluator();
+
+    @Around("@annotation(com.tzesh.springtemplate.base.annotation.RateLimit) || @annotation(com.tzesh.springtemplate.base.annotation.RateLimitCategory) || @within(com.tzesh.springtemplate.base.annotation.RateLimitCategory)")
+    public Object handleRateLimit(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object target = joinPoint.getTarget();
+        Class<?> targetClass = target != null ? ClassUtils.getUserClass(target) : method.getDeclaringClass();
+
+        RateLimitDescriptor descriptor = registry.getDescriptor(method, targetClass);
+        if (descriptor != null) {
+            try {
+                checkLimit(descriptor, joinPoint, method, targetClass);
+            } catch (RateLimitExceededException e) {
+                AdaptiveConcurrencyFilter.markShortCircuited();
+                throw e;
+            }
+        }
         return joinPoint.proceed();
     }
 
-    @Around("@within(rateLimitCategory) && !@annotation(com.tzesh.springtemplate.base.annotation.RateLimit) && !@annotation(com.tzesh.springtemplate.base.annotation.RateLimitCategory)")
-    public Object handleClassLevelCategory(ProceedingJoinPoint joinPoint, RateLimitCategory rateLimitCategory) throws Throwable {
-        return applyCategory(joinPoint, rateLimitCategory);
-    }
-
-    @Around("@annotation(rateLimitCategory) && !@annotation(com.tzesh.springtemplate.base.annotation.RateLimit)")
-    public Object handleMethodLevelCategory(ProceedingJoinPoint joinPoint, RateLimitCategory rateLimitCategory) throws Throwable {
-        return applyCategory(joinPoint, rateLimitCategory);
+    /**
+     * Check the limit of the call, delaying it if the limit is delayed
+     * @throws RateLimitExceededException if the limit is exceeded
+     */
+    private void checkLimit(RateLimitDescriptor descriptor, ProceedingJoinPoint joinPoint, Method method, Class<?> targetClass) {
+        ServletRequestAttributes attrs = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        HttpServletRequest request = attrs != null ? attrs.getRequest() : null;
+        HttpServletResponse response = attrs != null ? attrs.getResponse() : null;
+        RateLimitResult preEvaluated = takePreEvaluated(request, descriptor);
+        if (preEvaluated != null) {
+            verify(preEvaluated, response);
+        } else {
+            String clientKey = registry.getKeyEncoding().client(
+                    String.valueOf(resolveKey(descriptor, request, joinPoint, method, targetClass)));
+            long cost = resolveCost(descriptor, joinPoint, method, targetClass);
+            if (descriptor.keyStrategy() == RateLimitKeyStrategy.USER || descriptor.keyStrategy() == RateLimitKeyStrategy.IP_AND_USER) {
+                heavyHitters.recordUser(RateLimitKeys.username(), cost);
+            }
+            if (descriptor.delay() != null) {
+                delay(descriptor.keyPrefix() + clientKey, descriptor.policy(), cost, descriptor.delay(), request);
+            } else {
+                checkRateLimit(descriptor.keyPrefix() + clientKey, descriptor.policy(), cost, response);
+            }
+        }
     }
 
-    private Object applyCategory(ProceedingJoinPoint joinPoint, RateLimitCategory rateLimitCategory) throws Throwable {
-        RateLimitCategoryType type = rateLimitCategory.value();
-        RateLimitProperties.CategoryConfig config = getCategoryConfig(type);
-        String methodKey = getMethodKey(joinPoint);
-        String clientKey = resolveKey(rateLimitCategory.key(), "", joinPoint);
-        String redisKey = "rate_limit:" + methodKey + ":" + clientKey;
-        Duration duration = Duration.ofMinutes(config.getDurationMinutes());
-
-        checkRateLimit(redisKey, config.getLimit(), duration);
-        return joinPoint.proceed();
+    private void checkRateLimit(String redisKey, RateLimitPolicy policy, long cost, HttpServletResponse response) {
+        RateLimitResult result;
+        try {
+            result = rateLimiter.tryAcquire(redisKey, policy, cost);
+        } catch (Exception e) {
+            log.warn("Redis unavailable for rate limiting, failing open: {}", e.getMessage());
+            return;
+        }
+        verify(result, response);
     }
 
-    private void checkRateLimit(String redisKey, int limit, Duration duration) {
+    /**
+     * Reserve the next slot of the key and park the call until it starts.
+     * Rejects the call if the slot starts after the maximum wait or the queue of this node is full.
+     * The call gives up its concurrency slot while parked and is rejected if it cannot get one back.
+     */
+    private void delay(String redisKey, RateLimitPolicy policy, long cost, RateLimitDelay delay, HttpServletRequest request) {
+        if (!delay.tryEnter()) {
+            long maxWaitMillis = delay.getMaxWait().toMillis();
+            throw new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED,
+                    policy.limit(), 0, maxWaitMillis, maxWaitMillis);
+        }
         try {
-            Long count = redisTemplate.opsForValue().increment(redisKey);
-            if (count != null && count == 1) {
-                redisTemplate.expire(redisKey, duration);
+            RateLimitReservation reservation;
+            try {
+                reservation = rateLimiter.reserve(redisKey, policy, cost, delay.getMaxWait());
+            } catch (Exception e) {
+                log.warn("Redis unavailable for rate limiting, failing open: {}", e.getMessage());
+                return;
             }
-            if (count != null && count > limit) {
-                throw new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED);
+            if (!reservation.reserved()) {
+                throw new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED,
+                        policy.limit(), 0, reservation.retryAfterMillis(), reservation.retryAfterMillis());
             }
-        } catch (RateLimitExceededException e) {
-            throw e;
-        } catch (Exception e) {
-            log.warn("Redis unavailable for rate limiting, failing open: {}", e.getMessage());
+            if (reservation.delayMillis() > 0) {
+                boolean resumed = AdaptiveConcurrencyFilter.park(reservation.delayMillis());
+                if (request != null) {
+                    Object delayed = request.getAttribute(DELAYED_MILLIS_ATTRIBUTE);
+                    long previous = delayed instanceof Long millis ? millis : 0;
+                    request.setAttribute(DELAYED_MILLIS_ATTRIBUTE, previous + reservation.delayMillis());
+                }
+                if (!resumed) {
+                    throw new ServiceUnavailableException(RateLimitErrorMessage.SERVICE_OVERLOADED);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED);
+        } finally {
+            delay.exit();
         }
     }
 
-    private String resolveKey(RateLimitKeyStrategy strategy, String keyExpression, ProceedingJoinPoint joinPoint) {
-        return switch (strategy) {
-            case IP -> getClientIp();
-            case USER -> getCurrentUsername();
-            case IP_AND_USER -> getClientIp() + ":" + getCurrentUsername();
-            case CUSTOM -> evaluateSpelExpression(keyExpression, joinPoint);
-        };
+    private void verify(RateLimitResult result, HttpServletResponse response) {
+        if (!result.allowed()) {
+            throw new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED,
+                    result.limit(), result.remaining(), result.resetMillis(), result.retryAfterMillis());
+        }
+        if (response != null) {
+            RateLimitingFilter.writeHeaders(response, result);
+        }
     }
 
-    private String getClientIp() {
-        ServletRequestAttributes attrs = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        if (attrs != null) {
-            HttpServletRequest request = attrs.getRequest();
-            String forwarded = request.getHeader("X-Forwarded-For");
-            if (forwarded != null && !forwarded.isEmpty()) {
-                return forwarded.split(",")[0].trim();
-            }
-            return request.getRemoteAddr();
+    /**
+     * Take the result of this limit if the {@link RateLimitingFilter} already evaluated it for the current request.
+     * The attribute is removed so that a repeated invocation within the same request is counted again.
+     */
+    private RateLimitResult takePreEvaluated(HttpServletRequest request, RateLimitDescriptor descriptor) {
+        if (request == null
+                || !(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE) instanceof RateLimitingFilter.PreEvaluatedRateLimit preEvaluated)
+                || preEvaluated.descriptor() != descriptor) {
+            return null;
         }
-        return "unknown";
+        request.removeAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE);
+        return preEvaluated.result();
     }
 
-    private String getCurrentUsername() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth != null && auth.isAuthenticated()) {
-            return auth.getName();
+    private String resolveKey(RateLimitDescriptor descriptor, HttpServletRequest request, ProceedingJoinPoint joinPoint,
+                              Method method, Class<?> targetClass) {
+        if (descriptor.keyStrategy() == RateLimitKeyStrategy.CUSTOM) {
+            return evaluateSpelExpression(descriptor.keyExpression(), request, joinPoint, method, targetClass);
         }
-        return "anonymous";
+        return RateLimitKeys.resolve(descriptor.keyStrategy(), request);
     }
 
-    private String evaluateSpelExpression(String expression, ProceedingJoinPoint joinPoint) {
-        if (expression == null || expression.isEmpty()) {
-            return getClientIp();
+    /**
+     * Cost of the call, at least 1; falls back to the fixed cost if the cost expression cannot be evaluated
+     */
+    private long resolveCost(RateLimitDescriptor descriptor, ProceedingJoinPoint joinPoint, Method method, Class<?> targetClass) {
+        if (descriptor.costExpression().isEmpty()) {
+            return descriptor.cost();
         }
         try {
-            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            Method method = signature.getMethod();
-            MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(
-                    joinPoint.getTarget(), method, joinPoint.getArgs(), DISCOVERER
-            );
-            return PARSER.parseExpression(expression).getValue(context, String.class);
+            Long cost = keyExpressionEvaluator.evaluate(descriptor.costExpression(), method, targetClass,
+                    joinPoint.getTarget(), joinPoint.getArgs(), Long.class);
+            return cost != null ? Math.max(1, cost) : descriptor.cost();
         } catch (Exception e) {
-            log.warn("Failed to evaluate SpEL expression '{}', falling back to IP: {}", expression, e.getMessage());
-            return getClientIp();
+            log.warn("Failed to evaluate cost expression '{}', falling back to {}: {}",
+                    descriptor.costExpression(), descriptor.cost(), e.getMessage());
+            return descriptor.cost();
         }
     }
 
-    private String getMethodKey(ProceedingJoinPoint joinPoint) {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        return signature.getDeclaringTypeName() + "." + signature.getName();
-    }
-
-    private RateLimitProperties.CategoryConfig getCategoryConfig(RateLimitCategoryType type) {
-        return switch (type) {
-            case STRICT -> properties.getStrict();
-            case STANDARD -> properties.getStandard();
-            case RELAXED -> properties.getRelaxed();
-            case AUTHENTICATION -> properties.getAuthentication();
-        };
+    private String evaluateSpelExpression(String expression, HttpServletRequest request, ProceedingJoinPoint joinPoint,
+                                          Method method, Class<?> targetClass) {
+        if (expression == null || expression.isEmpty()) {
+            return RateLimitKeys.clientIp(request);
+        }
+        try {
+            return keyExpressionEvaluator.evaluate(expression, method, targetClass, joinPoint.getTarget(), joinPoint.getArgs());
+        } catch (Exception e) {
+            log.warn("Failed to evaluate SpEL expression '{}', falling back to IP: {}", expression, e.getMessage());
+            return RateLimitKeys.clientIp(request);
+        }
     }
 }
@@ -0,0 +1,15 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * A single rate limit key to evaluate as part of a batch.
+ *
+ * @param key    rate limit key
+ * @param policy policy to evaluate the key with
+ * @param cost   units to charge, at least 1
+ * @author tzesh
+ */
+public record RateLimitCheck(String key, RateLimitPolicy policy, long cost) {
+    public RateLimitCheck(String key, RateLimitPolicy policy) {
+        this(key, policy, 1);
+    }
+}
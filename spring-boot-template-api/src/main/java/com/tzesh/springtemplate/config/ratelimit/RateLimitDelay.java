@@ -0,0 +1,62 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds of a {@link com.tzesh.springtemplate.base.annotation.RateLimitMode#DELAY} rate limit.
+ * The maximum wait bounds the queue across all nodes, the number of queued calls bounds it on this node,
+ * so a burst can never park an unbounded number of threads.
+ *
+ * @author tzesh
+ */
+public final class RateLimitDelay {
+    private final Duration maxWait;
+    private final int maxQueued;
+    private final Semaphore queue;
+
+    public RateLimitDelay(Duration maxWait, int maxQueued) {
+        if (maxWait.isNegative() || maxQueued < 1) {
+            throw new IllegalArgumentException("Rate limit delay needs a non-negative max wait and at least one queued call");
+        }
+        this.maxWait = maxWait;
+        this.maxQueued = maxQueued;
+        this.queue = new Semaphore(maxQueued);
+    }
+
+    /**
+     * Take a place in the queue of this node
+     * @return false if the queue is full
+     */
+    boolean tryEnter() {
+        return queue.tryAcquire();
+    }
+
+    /**
+     * Leave the queue of this node
+     */
+    void exit() {
+        queue.release();
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Calls currently holding a place in the queue of this node
+     * @return queued calls
+     */
+    public int getQueued() {
+        return maxQueued - queue.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitDelay[maxWait=" + maxWait + ", maxQueued=" + maxQueued + "]";
+    }
+}
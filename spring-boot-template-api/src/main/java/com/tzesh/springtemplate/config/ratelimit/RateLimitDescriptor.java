@@ -0,0 +1,33 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+
+/**
+ * Effective rate limit of a single method, resolved once from its annotations and the configured categories
+ * @param methodKey declaring type and name of the method
+ * @param source annotation the limit was resolved from, e.g. {@code RateLimit} or {@code RateLimitCategory(STRICT)}
+ * @param category category of the method or its class, also used as request priority; null if not categorized
+ * @param keyPrefix interned Redis key prefix, the client part of the key is appended to it
+ * @param policy limit, window and algorithm
+ * @param keyStrategy strategy resolving the client part of the key
+ * @param keyExpression SpEL expression for {@link RateLimitKeyStrategy#CUSTOM} keys, empty otherwise
+ * @param delay bounds of calls delayed in {@link com.tzesh.springtemplate.base.annotation.RateLimitMode#DELAY} mode,
+ *              null if calls over the limit are rejected
+ * @param cost units charged per call, used if there is no cost expression or it cannot be evaluated
+ * @param costExpression SpEL expression evaluating to the cost of a call, empty if the cost is fixed
+ * @author tzesh
+ */
+public record RateLimitDescriptor(
+        String methodKey,
+        String source,
+        RateLimitCategoryType category,
+        String keyPrefix,
+        RateLimitPolicy policy,
+        RateLimitKeyStrategy keyStrategy,
+        String keyExpression,
+        RateLimitDelay delay,
+        long cost,
+        String costExpression
+) {
+}
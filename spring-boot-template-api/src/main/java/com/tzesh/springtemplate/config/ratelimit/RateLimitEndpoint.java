@@ -0,0 +1,50 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the effective rate limits, exposed at {@code /actuator/ratelimits}
+ *
+ * @author tzesh
+ */
+@Component
+@Endpoint(id = "ratelimits")
+public class RateLimitEndpoint {
+    private final RateLimitRegistry registry;
+    private final RateLimitProperties properties;
+
+    public RateLimitEndpoint(RateLimitRegistry registry, RateLimitProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    /**
+     * List the global limit, the route quotas and the limit of every rate limited method
+     * @return rate limits
+     */
+    @ReadOperation
+    public RateLimits rateLimits() {
+        RateLimitPolicy global = new RateLimitPolicy(
+                properties.getLimit(),
+                Duration.ofMinutes(properties.getDurationMinutes()),
+                properties.getAlgorithm()
+        );
+        return new RateLimits(properties.isEnabled(), global, properties.getRoutes(), registry.getDescriptors());
+    }
+
+    /**
+     * Effective rate limits of the application
+     * @param globalEnabled whether the global IP based filter is enabled
+     * @param global limit of the global IP based filter
+     * @param routes route quotas evaluated by the filter
+     * @param methods limits of the rate limited methods
+     */
+    public record RateLimits(boolean globalEnabled, RateLimitPolicy global, List<RateLimitProperties.RouteConfig> routes,
+                             List<RateLimitDescriptor> methods) {
+    }
+}
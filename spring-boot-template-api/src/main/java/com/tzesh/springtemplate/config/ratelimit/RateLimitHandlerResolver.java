@@ -0,0 +1,72 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.util.Optional;
+
+/**
+ * Resolves the {@link RateLimitDescriptor} of the handler method a request is mapped to, before the
+ * request reaches the dispatcher servlet. The result is kept as a request attribute, so filters sharing it
+ * look up the handler only once per request.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class RateLimitHandlerResolver {
+    private static final String RESOLVED_ATTRIBUTE = RateLimitHandlerResolver.class.getName() + ".RESOLVED";
+
+    private final RateLimitRegistry registry;
+    private final HandlerMapping handlerMapping;
+
+    public RateLimitHandlerResolver(
+            RateLimitRegistry registry,
+            @Qualifier("requestMappingHandlerMapping") HandlerMapping handlerMapping
+    ) {
+        this.registry = registry;
+        this.handlerMapping = handlerMapping;
+    }
+
+    /**
+     * Resolve the rate limit of the handler method the request is mapped to
+     * @param request current request
+     * @return descriptor, or null if the handler is not rate limited or cannot be resolved
+     */
+    @SuppressWarnings("unchecked")
+    public RateLimitDescriptor resolve(HttpServletRequest request) {
+        Object resolved = request.getAttribute(RESOLVED_ATTRIBUTE);
+        if (resolved instanceof Optional<?> descriptor) {
+            return ((Optional<RateLimitDescriptor>) descriptor).orElse(null);
+        }
+        RateLimitDescriptor descriptor = lookup(request);
+        request.setAttribute(RESOLVED_ATTRIBUTE, Optional.ofNullable(descriptor));
+        return descriptor;
+    }
+
+    private RateLimitDescriptor lookup(HttpServletRequest request) {
+        boolean parsed = ServletRequestPathUtils.hasParsedRequestPath(request);
+        try {
+            if (!parsed) {
+                ServletRequestPathUtils.parseAndCache(request);
+            }
+            HandlerExecutionChain chain = handlerMapping.getHandler(request);
+            if (chain != null && chain.getHandler() instanceof HandlerMethod handlerMethod) {
+                return registry.getDescriptor(handlerMethod.getMethod(), handlerMethod.getBeanType());
+            }
+        } catch (Exception e) {
+            log.debug("Could not resolve handler for rate limiting: {}", e.getMessage());
+        } finally {
+            if (!parsed) {
+                ServletRequestPathUtils.clearParsedRequestPath(request);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Format of the Redis keys of rate limits, selected with {@code ratelimit.key-encoding}.
+ * A key is a prefix naming the limit and its {@link RateLimitKeyType}, built once per limit, followed by the client
+ * part, encoded per call.
+ *
+ * @author tzesh
+ */
+public enum RateLimitKeyEncoding {
+    /**
+     * {@code rate_limit:com.example.UserController.createUser:fixed_window:10.0.0.1}, readable but long
+     */
+    READABLE {
+        @Override
+        public String prefix(String name, RateLimitKeyType type) {
+            return ("rate_limit:" + name + ":" + type.readableTag() + ":").intern();
+        }
+
+        @Override
+        public String client(String client) {
+            return client;
+        }
+    },
+    /**
+     * {@code rl:ZYqvcLdp:f:CgAAAQ}: the limit is named by an 8 character id derived from its name, so it is the same
+     * on every node and across restarts, its key type by one letter, and the client is encoded in binary. IP addresses keep their 4 or 16 bytes,
+     * anything else, e.g. user names or custom keys, is replaced by 12 bytes of its SHA-256. Both are base64url,
+     * their lengths differ, so an address never collides with a hash. {@code /actuator/ratelimitkeys} maps the ids
+     * back to the limits.
+     */
+    COMPACT {
+        @Override
+        public String prefix(String name, RateLimitKeyType type) {
+            return ("rl:" + base64(sha256(name), 6) + ":" + type.compactTag() + ":").intern();
+        }
+
+        @Override
+        public String client(String client) {
+            long ipv4 = IpAddressKey.ipv4(client);
+            if (ipv4 >= 0) {
+                return base64(ByteBuffer.allocate(Integer.BYTES).putInt((int) ipv4).array(), Integer.BYTES);
+            }
+            long high = IpAddressKey.high(client);
+            if (high != IpAddressKey.INVALID_HIGH) {
+                return base64(ByteBuffer.allocate(2 * Long.BYTES).putLong(high).putLong(IpAddressKey.low(client)).array(),
+                        2 * Long.BYTES);
+            }
+            return base64(sha256(client), 12);
+        }
+    };
+
+    private static final MessageDigest SHA_256;
+
+    static {
+        try {
+            SHA_256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @param name name of the limit, e.g. {@code global} or the method name
+     * @param type type of the keys, from the algorithm or the delay of the limit
+     * @return interned key prefix of the limit
+     */
+    public abstract String prefix(String name, RateLimitKeyType type);
+
+    /**
+     * @param client client part of the key, e.g. an IP address or a user name
+     * @return encoded client part
+     */
+    public abstract String client(String client);
+
+    private static byte[] sha256(String value) {
+        try {
+            // cloning the prototype skips the provider lookup of getInstance
+            MessageDigest digest = (MessageDigest) SHA_256.clone();
+            return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+        }
+    }
+
+    private static String base64(byte[] bytes, int length) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, length));
+    }
+}
@@ -0,0 +1,121 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Evaluates {@link com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy#CUSTOM} key expressions
+ * and cost expressions of rate limited methods.
+ * Expressions are parsed once per method and compiled to bytecode by SpEL once they have been interpreted often
+ * enough to know their types ({@link SpelCompilerMode#MIXED}, falling back to interpretation if compilation fails).
+ * Parameter names are resolved once per method, so an invocation only allocates a small evaluation context.
+ * Variables follow {@link org.springframework.context.expression.MethodBasedEvaluationContext}:
+ * {@code #name}, {@code #p0} and {@code #a0} refer to method arguments and the root object is the target bean.
+ *
+ * @author tzesh
+ */
+public class RateLimitKeyExpressionEvaluator {
+    private static final ParameterNameDiscoverer DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, RateLimitKeyExpressionEvaluator.class.getClassLoader())
+    );
+    private final ConcurrentMap<CacheKey, KeyExpression> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Evaluate a key expression for a method invocation
+     * @param expression SpEL expression
+     * @param method invoked method
+     * @param targetClass class of the target bean
+     * @param target target bean
+     * @param args invocation arguments
+     * @return evaluated key
+     */
+    public String evaluate(String expression, Method method, Class<?> targetClass, Object target, Object[] args) {
+        return evaluate(expression, method, targetClass, target, args, String.class);
+    }
+
+    /**
+     * Evaluate an expression for a method invocation, converting the result to the given type
+     * @param expression SpEL expression
+     * @param method invoked method
+     * @param targetClass class of the target bean
+     * @param target target bean
+     * @param args invocation arguments
+     * @param type type of the result
+     * @return evaluated value
+     */
+    public <T> T evaluate(String expression, Method method, Class<?> targetClass, Object target, Object[] args, Class<T> type) {
+        KeyExpression keyExpression = cache.computeIfAbsent(
+                new CacheKey(new AnnotatedElementKey(method, targetClass), expression),
+                key -> new KeyExpression(parser.parseExpression(expression), parameterNames(method))
+        );
+        return keyExpression.expression().getValue(
+                new KeyEvaluationContext(target, keyExpression.parameterNames(), args), type
+        );
+    }
+
+    private static String[] parameterNames(Method method) {
+        String[] names = DISCOVERER.getParameterNames(method);
+        return names != null ? names : new String[0];
+    }
+
+    private record CacheKey(AnnotatedElementKey element, String expression) {
+    }
+
+    private record KeyExpression(Expression expression, String[] parameterNames) {
+    }
+
+    /**
+     * Evaluation context resolving method arguments from the cached parameter names
+     */
+    private static final class KeyEvaluationContext extends StandardEvaluationContext {
+        private final String[] parameterNames;
+        private final Object[] args;
+
+        private KeyEvaluationContext(Object rootObject, String[] parameterNames, Object[] args) {
+            super(rootObject);
+            this.parameterNames = parameterNames;
+            this.args = args;
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            Object variable = super.lookupVariable(name);
+            if (variable != null) {
+                return variable;
+            }
+            for (int i = 0; i < parameterNames.length && i < args.length; i++) {
+                if (parameterNames[i].equals(name)) {
+                    return args[i];
+                }
+            }
+            return argumentByIndex(name);
+        }
+
+        private Object argumentByIndex(String name) {
+            if (name.length() < 2 || (name.charAt(0) != 'p' && name.charAt(0) != 'a')) {
+                return null;
+            }
+            int index = 0;
+            for (int i = 1; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                index = index * 10 + (c - '0');
+            }
+            return index < args.length ? args[index] : null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+
+/**
+ * Layout of the state a rate limit keeps in Redis, one per script.
+ * The scripts store different Redis types under their keys, e.g. a counter string, a hash or a timestamp, so the type
+ * is part of every key prefix: a limit changing its algorithm, or a method switching between reject and delay,
+ * starts a new key instead of failing on the state of the previous one.
+ *
+ * @author tzesh
+ */
+public enum RateLimitKeyType {
+    FIXED_WINDOW("fixed_window", "f"),
+    SLIDING_WINDOW("sliding_window", "s"),
+    GCRA("gcra", "g"),
+    TOKEN_BUCKET("token_bucket", "t"),
+    /**
+     * Reservations of delayed calls, see {@link RateLimiter#reserve}
+     */
+    LEAKY_BUCKET("leaky_bucket", "l");
+
+    private final String readableTag;
+    private final String compactTag;
+
+    RateLimitKeyType(String readableTag, String compactTag) {
+        this.readableTag = readableTag;
+        this.compactTag = compactTag;
+    }
+
+    /**
+     * @param algorithm algorithm evaluating the limit
+     * @return type of the keys the algorithm writes
+     */
+    public static RateLimitKeyType of(RateLimitAlgorithm algorithm) {
+        return switch (algorithm) {
+            case FIXED_WINDOW -> FIXED_WINDOW;
+            case SLIDING_WINDOW -> SLIDING_WINDOW;
+            case GCRA -> GCRA;
+            case TOKEN_BUCKET -> TOKEN_BUCKET;
+        };
+    }
+
+    /**
+     * @return tag of the type in {@link RateLimitKeyEncoding#READABLE} keys
+     */
+    public String readableTag() {
+        return readableTag;
+    }
+
+    /**
+     * @return tag of the type in {@link RateLimitKeyEncoding#COMPACT} keys
+     */
+    public String compactTag() {
+        return compactTag;
+    }
+}
@@ -0,0 +1,51 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Resolves the client part of rate limit keys, shared by {@link RateLimitingFilter} and {@link RateLimitAspect}
+ *
+ * @author tzesh
+ */
+final class RateLimitKeys {
+
+    private RateLimitKeys() {
+    }
+
+    /**
+     * Resolve the client part of the key for a strategy that does not depend on method arguments
+     * @param strategy key strategy
+     * @param request current request, may be null outside of a request
+     * @return client key, or null for {@link RateLimitKeyStrategy#CUSTOM}
+     */
+    static String resolve(RateLimitKeyStrategy strategy, HttpServletRequest request) {
+        return switch (strategy) {
+            case IP -> clientIp(request);
+            case USER -> username();
+            case IP_AND_USER -> clientIp(request) + ":" + username();
+            case CUSTOM -> null;
+        };
+    }
+
+    /**
+     * Address of the client. {@code X-Forwarded-For} is only honoured when sent by a trusted proxy
+     * ({@code server.tomcat.remoteip.internal-proxies}); the server then reports the client behind it as the
+     * remote address, so a client cannot pick its own key by sending the header itself.
+     * @param request current request, may be null outside of a request
+     * @return client address
+     */
+    static String clientIp(HttpServletRequest request) {
+        return request != null ? request.getRemoteAddr() : "unknown";
+    }
+
+    static String username() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.isAuthenticated()) {
+            return auth.getName();
+        }
+        return "anonymous";
+    }
+}
@@ -0,0 +1,75 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Actuator endpoint mapping the Redis key prefixes of rate limits back to the limits, exposed at
+ * {@code /actuator/ratelimitkeys}. With {@link RateLimitKeyEncoding#COMPACT} keys, this is the only way to tell
+ * which limit a key belongs to; {@code /actuator/ratelimitkeys/{client}} encodes the client part of a key.
+ * It reveals method names and client addresses, so it is not exposed unless added to
+ * {@code management.endpoints.web.exposure.include}.
+ *
+ * @author tzesh
+ */
+@Component
+@Endpoint(id = "ratelimitkeys")
+public class RateLimitKeysEndpoint {
+    private final RateLimitRegistry registry;
+    private final RateLimitProperties properties;
+
+    public RateLimitKeysEndpoint(RateLimitRegistry registry, RateLimitProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    /**
+     * Map the key prefix of the global limit, the route quotas and every rate limited method to its limit
+     * @return key prefixes
+     */
+    @ReadOperation
+    public KeyPrefixes keyPrefixes() {
+        RateLimitKeyEncoding encoding = properties.getKeyEncoding();
+        Map<String, String> prefixes = new TreeMap<>();
+        prefixes.put(encoding.prefix("global", RateLimitKeyType.of(properties.getAlgorithm())), "global");
+        for (RateLimitProperties.RouteConfig route : properties.getRoutes()) {
+            String name = RateLimitRoute.name(route);
+            prefixes.put(encoding.prefix(name, RateLimitKeyType.of(route.getAlgorithm())), name);
+        }
+        for (RateLimitDescriptor descriptor : registry.getDescriptors()) {
+            prefixes.put(descriptor.keyPrefix(), descriptor.methodKey());
+        }
+        return new KeyPrefixes(encoding, prefixes);
+    }
+
+    /**
+     * Encode the client part of a key, e.g. to find the keys of an IP address or a user
+     * @param client IP address, user name or custom key
+     * @return encoded client part
+     */
+    @ReadOperation
+    public ClientKey clientKey(@Selector String client) {
+        return new ClientKey(client, properties.getKeyEncoding().client(client));
+    }
+
+    /**
+     * Key prefixes of the rate limits
+     * @param encoding encoding of the keys
+     * @param prefixes limit of each key prefix
+     */
+    public record KeyPrefixes(RateLimitKeyEncoding encoding, Map<String, String> prefixes) {
+    }
+
+    /**
+     * Client part of a key
+     * @param client client as resolved by the key strategy
+     * @param encoded client part as it appears in the keys
+     */
+    public record ClientKey(String client, String encoded) {
+    }
+}
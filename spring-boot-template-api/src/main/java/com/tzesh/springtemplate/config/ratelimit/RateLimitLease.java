@@ -0,0 +1,12 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * Block of quota leased from the distributed counter.
+ *
+ * @param granted     number of permits granted, 0 if the window is exhausted
+ * @param remaining   quota left in the distributed counter after the lease
+ * @param resetMillis milliseconds until the window resets and the lease expires
+ * @author tzesh
+ */
+public record RateLimitLease(long granted, long remaining, long resetMillis) {
+}
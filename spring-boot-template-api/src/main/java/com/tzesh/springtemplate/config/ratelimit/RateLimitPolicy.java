@@ -0,0 +1,16 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+
+import java.time.Duration;
+
+/**
+ * Limit, window and algorithm a rate limit key is evaluated with.
+ *
+ * @param limit     number of requests allowed per window
+ * @param window    window length
+ * @param algorithm algorithm evaluating the limit
+ * @author tzesh
+ */
+public record RateLimitPolicy(int limit, Duration window, RateLimitAlgorithm algorithm) {
+}
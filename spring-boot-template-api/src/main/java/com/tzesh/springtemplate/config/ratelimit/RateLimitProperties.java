@@ -1,9 +1,17 @@
 package com.tzesh.springtemplate.config.ratelimit;
 
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Configuration properties for rate limiting
  * @author tzesh
@@ -15,16 +23,63 @@ public class RateLimitProperties {
     private boolean enabled = true;
     private int limit = 100;
     private long durationMinutes = 1;
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    private GlobalStore globalStore = GlobalStore.REDIS;
+    private LocalStoreConfig localStore = new LocalStoreConfig();
+    private RateLimitKeyEncoding keyEncoding = RateLimitKeyEncoding.READABLE;
 
     private CategoryConfig strict = new CategoryConfig(10, 1);
     private CategoryConfig standard = new CategoryConfig(60, 1);
     private CategoryConfig relaxed = new CategoryConfig(200, 1);
     private CategoryConfig authentication = new CategoryConfig(5, 1);
 
+    private List<RouteConfig> routes = new ArrayList<>();
+
+    private LeaseConfig lease = new LeaseConfig();
+    private DenialCacheConfig denialCache = new DenialCacheConfig();
+    private ShardingConfig sharding = new ShardingConfig();
+    private FallbackConfig fallback = new FallbackConfig();
+    private HeavyHitterConfig heavyHitters = new HeavyHitterConfig();
+
+    /**
+     * Where the global limit of the {@link RateLimitingFilter} is counted
+     */
+    public enum GlobalStore {
+        /**
+         * Cluster-wide counters in Redis, one round trip per request
+         */
+        REDIS,
+        /**
+         * Node-local fixed window counters in an {@link IpCounterTable}, no round trip and no allocation,
+         * but every node enforces the full limit on its own
+         */
+        LOCAL,
+        /**
+         * Like {@link #LOCAL}, with the counters in a {@link MappedIpCounterStore} that survives restarts
+         */
+        MAPPED
+    }
+
+    /**
+     * Size of the {@link IpCounterStore} used with {@link GlobalStore#LOCAL} and {@link GlobalStore#MAPPED}.
+     * Requests of addresses that find no slot within {@code maxProbes} are allowed, so size it well above the
+     * number of clients per window.
+     */
+    @Data
+    public static class LocalStoreConfig {
+        private int capacity = 65536;
+        private int maxProbes = 32;
+        /**
+         * Counter file of {@link GlobalStore#MAPPED}, one per process
+         */
+        private String file = "data/ratelimit-counters.bin";
+    }
+
     @Data
     public static class CategoryConfig {
         private int limit;
         private long durationMinutes;
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
 
         public CategoryConfig() {
         }
@@ -34,4 +89,88 @@ public CategoryConfig(int limit, long durationMinutes) {
             this.durationMinutes = durationMinutes;
         }
     }
+
+    /**
+     * Per-client quota of a route, evaluated by the {@link RateLimitingFilter} before Spring Security,
+     * so abusive traffic is rejected before any authentication work. Keyed by client IP.
+     */
+    @Data
+    public static class RouteConfig {
+        /**
+         * Path pattern within the application, e.g. {@code /users/**}
+         */
+        private String pattern;
+        /**
+         * HTTP methods the quota applies to, all methods if empty
+         */
+        private Set<HttpMethod> methods = new LinkedHashSet<>();
+        private int limit;
+        private long durationMinutes = 1;
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    }
+
+    /**
+     * Node-local quota leasing, trades accuracy of the cluster-wide limit for fewer Redis round trips.
+     * Quota leased by a node but not used before the window resets is lost, so clients may be limited
+     * slightly below the configured limit; smaller fractions are more accurate but lease more often.
+     */
+    @Data
+    public static class LeaseConfig {
+        private boolean enabled = false;
+        private double fraction = 0.1;
+        private int minLimit = 100;
+        private int maxKeys = 10000;
+    }
+
+    /**
+     * Node-local cache of keys that exceeded their limit, rejected without contacting Redis until they reset
+     */
+    @Data
+    public static class DenialCacheConfig {
+        private boolean enabled = true;
+        private int maxEntries = 100000;
+    }
+
+    /**
+     * Splitting of hot keys into sub-keys, see {@link ShardingRateLimiter}.
+     * {@code hotKeyThreshold} is a count of requests on one node halved every second, i.e. between one and two
+     * seconds' worth of requests at a steady rate, {@code width} and {@code depth} size the sketch counting them.
+     */
+    @Data
+    public static class ShardingConfig {
+        private boolean enabled = false;
+        private int hotKeyThreshold = 1000;
+        private int maxShards = 16;
+        private int minShardLimit = 10;
+        private Duration cooldown = Duration.ofMinutes(1);
+        private int maxHotKeys = 1000;
+        private int width = 4096;
+        private int depth = 4;
+    }
+
+    /**
+     * Node-local rate limiting while Redis is unavailable.
+     * Each node enforces {@code limit / estimated-nodes}, so set {@code estimated-nodes} to the usual replica count.
+     */
+    @Data
+    public static class FallbackConfig {
+        private boolean enabled = true;
+        private int failureThreshold = 3;
+        private Duration probeInterval = Duration.ofSeconds(5);
+        private int estimatedNodes = 1;
+        private int maxKeys = 100000;
+    }
+
+    /**
+     * Top-k of the heaviest client IPs and users, see {@link HeavyHitters}.
+     * Memory is {@code depth * width} counters plus {@code topK} keys per dimension; wider rows overestimate less.
+     */
+    @Data
+    public static class HeavyHitterConfig {
+        private boolean enabled = true;
+        private int topK = 20;
+        private int width = 2048;
+        private int depth = 4;
+        private Duration decayInterval = Duration.ofMinutes(1);
+    }
 }
@@ -0,0 +1,164 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimit;
+import com.tzesh.springtemplate.base.annotation.RateLimitCategory;
+import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import com.tzesh.springtemplate.base.annotation.RateLimitMode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the effective rate limit of every {@link RateLimit} and {@link RateLimitCategory} method.
+ * Beans are scanned once all singletons are instantiated, so the {@link RateLimitAspect} only looks up
+ * a precomputed {@link RateLimitDescriptor} and appends the client part of the key.
+ * Methods not seen by the scan, e.g. on prototype beans, are resolved on first use and cached as well, including
+ * methods without a rate limit, so unlimited handlers are not introspected again on every request.
+ * {@link RateLimit} takes precedence over a method level {@link RateLimitCategory}, which takes precedence
+ * over a class level {@link RateLimitCategory}.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class RateLimitRegistry implements SmartInitializingSingleton {
+    private final ListableBeanFactory beanFactory;
+    private final RateLimitProperties properties;
+    private final ConcurrentMap<MethodClassKey, Optional<RateLimitDescriptor>> descriptors = new ConcurrentHashMap<>();
+
+    public RateLimitRegistry(ListableBeanFactory beanFactory, RateLimitProperties properties) {
+        this.beanFactory = beanFactory;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            Class<?> type = beanFactory.getType(beanName, false);
+            if (type != null) {
+                register(ClassUtils.getUserClass(type));
+            }
+        }
+        log.info("Registered {} rate limited methods", getDescriptors().size());
+    }
+
+    /**
+     * Get the effective rate limit of a method
+     * @param method invoked method
+     * @param targetClass class of the target bean
+     * @return descriptor, or null if the method is not rate limited
+     */
+    public RateLimitDescriptor getDescriptor(Method method, Class<?> targetClass) {
+        MethodClassKey key = new MethodClassKey(method, targetClass);
+        Optional<RateLimitDescriptor> descriptor = descriptors.get(key);
+        if (descriptor == null) {
+            descriptor = descriptors.computeIfAbsent(key, k -> Optional.ofNullable(resolve(method, targetClass)));
+        }
+        return descriptor.orElse(null);
+    }
+
+    /**
+     * Get all registered rate limits, sorted by method
+     * @return descriptors
+     */
+    public List<RateLimitDescriptor> getDescriptors() {
+        return descriptors.values().stream()
+                .flatMap(Optional::stream)
+                .distinct()
+                .sorted(Comparator.comparing(RateLimitDescriptor::methodKey))
+                .toList();
+    }
+
+    private void register(Class<?> type) {
+        if (!AnnotationUtils.isCandidateClass(type, RateLimit.class) && !AnnotationUtils.isCandidateClass(type, RateLimitCategory.class)) {
+            return;
+        }
+        Map<Method, RateLimitDescriptor> methods;
+        try {
+            methods = MethodIntrospector.selectMethods(type,
+                    (MethodIntrospector.MetadataLookup<RateLimitDescriptor>) method -> resolve(method, type));
+        } catch (Throwable e) {
+            log.debug("Could not resolve rate limited methods of {}: {}", type.getName(), e.getMessage());
+            return;
+        }
+        methods.forEach((method, descriptor) -> descriptors.putIfAbsent(new MethodClassKey(method, type), Optional.of(descriptor)));
+    }
+
+    private RateLimitDescriptor resolve(Method method, Class<?> targetClass) {
+        if (Modifier.isStatic(method.getModifiers()) || Modifier.isPrivate(method.getModifiers())) {
+            return null;
+        }
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        String methodKey = method.getDeclaringClass().getName() + "." + method.getName();
+
+        RateLimitCategory category = AnnotationUtils.findAnnotation(specificMethod, RateLimitCategory.class);
+        if (category == null) {
+            category = AnnotationUtils.findAnnotation(targetClass, RateLimitCategory.class);
+        }
+
+        RateLimit rateLimit = AnnotationUtils.findAnnotation(specificMethod, RateLimit.class);
+        if (rateLimit != null) {
+            Duration window = Duration.of(rateLimit.duration(), rateLimit.timeUnit().toChronoUnit());
+            RateLimitDelay delay = rateLimit.mode() == RateLimitMode.DELAY
+                    ? new RateLimitDelay(Duration.ofMillis(rateLimit.maxWaitMillis()), rateLimit.maxQueued())
+                    : null;
+            return descriptor(methodKey, "RateLimit", category != null ? category.value() : null,
+                    new RateLimitPolicy(rateLimit.limit(), window, rateLimit.algorithm()),
+                    rateLimit.key(), rateLimit.keyExpression(), delay, rateLimit.cost(), rateLimit.costExpression());
+        }
+
+        if (category == null) {
+            return null;
+        }
+        RateLimitProperties.CategoryConfig config = getCategoryConfig(category.value());
+        return descriptor(methodKey, "RateLimitCategory(" + category.value() + ")", category.value(),
+                new RateLimitPolicy(config.getLimit(), Duration.ofMinutes(config.getDurationMinutes()), config.getAlgorithm()),
+                category.key(), "", null, category.cost(), category.costExpression());
+    }
+
+    private RateLimitDescriptor descriptor(String methodKey, String source, RateLimitCategoryType category,
+                                                  RateLimitPolicy policy, RateLimitKeyStrategy keyStrategy,
+                                                  String keyExpression, RateLimitDelay delay, int cost, String costExpression) {
+        // delayed calls reserve leaky bucket slots instead of evaluating the algorithm
+        RateLimitKeyType keyType = delay != null ? RateLimitKeyType.LEAKY_BUCKET : RateLimitKeyType.of(policy.algorithm());
+        String keyPrefix = properties.getKeyEncoding().prefix(methodKey, keyType);
+        if (cost > policy.limit()) {
+            log.warn("Cost {} of {} exceeds its limit of {}, every call will be rejected", cost, methodKey, policy.limit());
+        }
+        return new RateLimitDescriptor(methodKey, source, category, keyPrefix, policy, keyStrategy, keyExpression, delay,
+                Math.max(1, cost), costExpression);
+    }
+
+    /**
+     * @return encoding of the Redis keys, the client part of a key is encoded with it before the prefix is prepended
+     */
+    public RateLimitKeyEncoding getKeyEncoding() {
+        return properties.getKeyEncoding();
+    }
+
+    private RateLimitProperties.CategoryConfig getCategoryConfig(RateLimitCategoryType type) {
+        return switch (type) {
+            case STRICT -> properties.getStrict();
+            case STANDARD -> properties.getStandard();
+            case RELAXED -> properties.getRelaxed();
+            case AUTHENTICATION -> properties.getAuthentication();
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * Outcome of reserving a slot of a paced rate limit.
+ *
+ * @param reserved         whether a slot within the maximum wait was reserved
+ * @param delayMillis      milliseconds to wait before the reserved slot starts, 0 if it starts immediately
+ * @param retryAfterMillis milliseconds the client should wait before retrying, 0 if reserved
+ * @author tzesh
+ */
+public record RateLimitReservation(boolean reserved, long delayMillis, long retryAfterMillis) {
+}
@@ -0,0 +1,14 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+/**
+ * Outcome of a single rate limit evaluation.
+ *
+ * @param allowed          whether the request fits into the limit
+ * @param limit            the limit the request was evaluated against
+ * @param remaining        quota left in the current window
+ * @param resetMillis      milliseconds until the quota is fully restored
+ * @param retryAfterMillis milliseconds the client should wait before retrying, 0 if allowed
+ * @author tzesh
+ */
+public record RateLimitResult(boolean allowed, long limit, long remaining, long resetMillis, long retryAfterMillis) {
+}
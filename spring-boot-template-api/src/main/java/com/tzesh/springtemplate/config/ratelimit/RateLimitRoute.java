@@ -0,0 +1,57 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Route quota compiled from a {@link RateLimitProperties.RouteConfig}.
+ * The path pattern is parsed once, so matching a request only walks the precompiled pattern elements.
+ *
+ * @param pattern compiled path pattern
+ * @param methods HTTP methods the quota applies to, all methods if empty
+ * @param keyPrefix interned Redis key prefix, the encoded client IP is appended to it
+ * @param policy limit, window and algorithm
+ * @author tzesh
+ */
+record RateLimitRoute(PathPattern pattern, Set<HttpMethod> methods, String keyPrefix, RateLimitPolicy policy) {
+
+    static RateLimitRoute of(RateLimitProperties.RouteConfig config, RateLimitKeyEncoding keyEncoding) {
+        if (config.getPattern() == null || config.getPattern().isBlank()) {
+            throw new IllegalArgumentException("Rate limit route without a pattern");
+        }
+        if (config.getLimit() <= 0) {
+            throw new IllegalArgumentException("Rate limit route " + config.getPattern() + " without a positive limit");
+        }
+        PathPattern pattern = PathPatternParser.defaultInstance.parse(config.getPattern());
+        Set<HttpMethod> methods = Set.copyOf(config.getMethods());
+        Set<String> methodNames = new TreeSet<>();
+        methods.forEach(method -> methodNames.add(method.name()));
+        RateLimitPolicy policy = new RateLimitPolicy(config.getLimit(), Duration.ofMinutes(config.getDurationMinutes()),
+                config.getAlgorithm());
+        String keyPrefix = keyEncoding.prefix(name(methodNames, pattern), RateLimitKeyType.of(policy.algorithm()));
+        return new RateLimitRoute(pattern, methods, keyPrefix, policy);
+    }
+
+    /**
+     * @return name of the quota in its key prefix, e.g. {@code route:GET /reports/**}
+     */
+    static String name(RateLimitProperties.RouteConfig config) {
+        Set<String> methodNames = new TreeSet<>();
+        config.getMethods().forEach(method -> methodNames.add(method.name()));
+        return name(methodNames, PathPatternParser.defaultInstance.parse(config.getPattern()));
+    }
+
+    private static String name(Set<String> methodNames, PathPattern pattern) {
+        return "route:" + String.join(",", methodNames) + (methodNames.isEmpty() ? "" : " ") + pattern.getPatternString();
+    }
+
+    boolean matches(String method, PathContainer path) {
+        return (methods.isEmpty() || methods.contains(HttpMethod.valueOf(method))) && pattern.matches(path);
+    }
+}
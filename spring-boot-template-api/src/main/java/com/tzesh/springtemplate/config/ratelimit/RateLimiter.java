@@ -0,0 +1,63 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Common interface of rate limiter implementations.
+ * Implementations evaluate every {@link com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm}
+ * with the same contract so that callers are independent of the algorithm in use.
+ *
+ * @author tzesh
+ */
+public interface RateLimiter {
+    /**
+     * Count a request against the given key and evaluate it
+     * @param key rate limit key
+     * @param policy policy to evaluate the key with
+     * @return the evaluation result
+     */
+    default RateLimitResult tryAcquire(String key, RateLimitPolicy policy) {
+        return tryAcquire(key, policy, 1);
+    }
+
+    /**
+     * Charge a request costing several units against the given key and evaluate it.
+     * The request is only allowed if the whole cost fits into the limit, a rejected request charges nothing.
+     * @param key rate limit key
+     * @param policy policy to evaluate the key with
+     * @param cost units to charge, at least 1
+     * @return the evaluation result
+     */
+    RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost);
+
+    /**
+     * Count a request against several keys and evaluate each of them.
+     * Every key is counted regardless of the verdict of the others.
+     * @param checks keys and policies to evaluate
+     * @return the evaluation results, in the order of the checks
+     */
+    default List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        List<RateLimitResult> results = new ArrayList<>(checks.size());
+        for (RateLimitCheck check : checks) {
+            results.add(tryAcquire(check.key(), check.policy(), check.cost()));
+        }
+        return results;
+    }
+
+    /**
+     * Reserve the next slot of a leaky bucket pacing calls evenly at {@code limit / window}, as long as the slot
+     * starts within the maximum wait. Implementations that cannot pace calls evaluate the key like
+     * {@link #tryAcquire(String, RateLimitPolicy, long)} without delay.
+     * @param key rate limit key, only used for reservations
+     * @param policy policy defining the rate, its algorithm is ignored
+     * @param cost units to reserve, a call costing several units occupies as many consecutive slots
+     * @param maxWait longest acceptable delay
+     * @return the reservation
+     */
+    default RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        RateLimitResult result = tryAcquire(key, policy, cost);
+        return new RateLimitReservation(result.allowed(), 0, result.retryAfterMillis());
+    }
+}
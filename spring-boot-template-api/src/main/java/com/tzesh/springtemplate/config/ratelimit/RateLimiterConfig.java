@@ -0,0 +1,30 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Assembles the {@link RateLimiter} used by {@link RateLimitingFilter} and {@link RateLimitAspect}
+ * from the {@link RedisRateLimiter}, the node-local tiers in front of it and the fallback used while Redis is down.
+ *
+ * @author tzesh
+ */
+@Configuration
+public class RateLimiterConfig {
+
+    /**
+     * Defines the rate limiter injected wherever a {@link RateLimiter} is required
+     * @param redisRateLimiter distributed rate limiter
+     * @param properties rate limit properties
+     * @return RateLimiter
+     */
+    @Bean
+    @Primary
+    public RateLimiter rateLimiter(RedisRateLimiter redisRateLimiter, RateLimitProperties properties) {
+        RateLimiter leasing = new LeasingRateLimiter(redisRateLimiter, properties.getLease());
+        RateLimiter sharding = new ShardingRateLimiter(leasing, properties.getSharding());
+        RateLimiter denialCaching = new DenialCachingRateLimiter(sharding, properties.getDenialCache());
+        return new FallbackRateLimiter(denialCaching, redisRateLimiter::isAvailable, properties.getFallback());
+    }
+}
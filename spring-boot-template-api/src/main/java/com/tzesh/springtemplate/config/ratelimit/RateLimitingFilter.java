@@ -1,7 +1,9 @@
 package com.tzesh.springtemplate.config.ratelimit;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
 import com.tzesh.springtemplate.base.response.BaseResponse;
+import com.tzesh.springtemplate.base.response.RateLimitHeaders;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -10,52 +12,191 @@
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
 import org.springframework.stereotype.Component;
+import org.springframework.web.util.ServletRequestPathUtils;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Global IP-based rate limiting filter.
  * Acts as a baseline safety net. Can be disabled via configuration.
- * Uses Redis for distributed rate limiting with key prefix "rate_limit:global:".
+ * Uses the {@link RateLimiter} for distributed rate limiting with key prefix "rate_limit:global:<algorithm>:", or its
+ * {@link RateLimitKeyEncoding#COMPACT} form.
+ * Runs before Spring Security, so requests over the global limit or a configured route quota are rejected before
+ * the token is parsed or the user is loaded. Route quotas and the limit of the handler method, if it is keyed by IP
+ * and neither its key nor its cost depends on method arguments, are evaluated in the same round trip; the method
+ * verdict is handed to the {@link RateLimitAspect} as a request attribute. A pre-evaluated method limit is charged
+ * even if security then rejects the request, as the aspect would have charged it had the request been authorized.
+ * All keys use the client address of {@link RateLimitKeys#clientIp}, which only trusts forwarded headers of
+ * configured proxies.
+ * The state of the most restrictive evaluated limit is sent in the {@code RateLimit-*} headers, rejections also get
+ * {@code Retry-After}; both come from the same limiter call, so they cost no extra round trip.
+ * With {@code ratelimit.global-store=LOCAL} or {@code MAPPED} the global limit is counted per node in an
+ * {@link IpCounterStore} instead, and Redis is only called for route quotas and method limits.
  *
  * @author tzesh
  */
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
 @Slf4j
 public class RateLimitingFilter implements Filter {
-    private final int limit;
-    private final Duration duration;
+    /**
+     * Request attribute holding the {@link PreEvaluatedRateLimit} of the handler method
+     */
+    static final String PRE_EVALUATED_ATTRIBUTE = RateLimitingFilter.class.getName() + ".PRE_EVALUATED";
+
+    private final RateLimitPolicy policy;
+    private final IpCounterStore localCounters;
+    private final RateLimitKeyEncoding keyEncoding;
+    private final String globalKeyPrefix;
+    private final List<RateLimitRoute> routes;
     private final boolean enabled;
-    final StringRedisTemplate redisTemplate;
+    private final RateLimiter rateLimiter;
+    private final RateLimitHandlerResolver handlerResolver;
+    private final HeavyHitters heavyHitters;
     private final ObjectMapper objectMapper;
 
     public RateLimitingFilter(
-            StringRedisTemplate redisTemplate,
+            RateLimiter rateLimiter,
+            RateLimitHandlerResolver handlerResolver,
+            HeavyHitters heavyHitters,
             RateLimitProperties properties,
             ObjectMapper objectMapper
     ) {
-        this.limit = properties.getLimit();
-        this.duration = Duration.ofMinutes(properties.getDurationMinutes());
+        this.policy = new RateLimitPolicy(
+                properties.getLimit(),
+                Duration.ofMinutes(properties.getDurationMinutes()),
+                properties.getAlgorithm()
+        );
+        this.localCounters = localCounters(properties, policy);
+        this.keyEncoding = properties.getKeyEncoding();
+        this.globalKeyPrefix = keyEncoding.prefix("global", RateLimitKeyType.of(policy.algorithm()));
+        this.routes = properties.getRoutes().stream().map(route -> RateLimitRoute.of(route, keyEncoding)).toList();
         this.enabled = properties.isEnabled();
-        this.redisTemplate = redisTemplate;
+        this.rateLimiter = rateLimiter;
+        this.handlerResolver = handlerResolver;
+        this.heavyHitters = heavyHitters;
         this.objectMapper = objectMapper;
     }
 
-    private boolean isAllowed(String key) {
+    private static IpCounterStore localCounters(RateLimitProperties properties, RateLimitPolicy policy) {
+        RateLimitProperties.LocalStoreConfig config = properties.getLocalStore();
+        return switch (properties.getGlobalStore()) {
+            case REDIS -> null;
+            case LOCAL -> new IpCounterTable(config.getCapacity(), config.getMaxProbes(), policy);
+            case MAPPED -> {
+                try {
+                    yield new MappedIpCounterStore(Path.of(config.getFile()), config.getCapacity(), config.getMaxProbes(), policy);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not map rate limit counter file " + config.getFile(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Evaluate the global key, the matching route quotas and, if given, the method key in a single call
+     * @return the most restrictive result, rejected if the global limit or a route quota rejects the request;
+     *         null if Redis is unavailable and the request fails open
+     */
+    private RateLimitResult evaluate(HttpServletRequest request, String ip, RateLimitDescriptor descriptor) {
+        RateLimitResult local = localCounters == null ? null : evaluateLocally(ip);
+        if (local != null && !local.allowed()) {
+            return local;
+        }
+        List<RateLimitCheck> checks = new ArrayList<>(2);
+        if (localCounters == null) {
+            checks.add(new RateLimitCheck(globalKeyPrefix + keyEncoding.client(ip), policy));
+        }
+        addMatchingRoutes(request, ip, checks);
+        int routeChecks = checks.size();
+        // user keys are unknown before authentication and delayed limits are reserved by the aspect,
+        // a rejection here would defeat the delay
+        boolean preEvaluate = descriptor != null && descriptor.keyStrategy() == RateLimitKeyStrategy.IP
+                && descriptor.delay() == null && descriptor.costExpression().isEmpty();
+        if (preEvaluate) {
+            checks.add(new RateLimitCheck(descriptor.keyPrefix() + keyEncoding.client(ip), descriptor.policy(), descriptor.cost()));
+        }
+        if (checks.isEmpty()) {
+            return local;
+        }
+
         try {
-            String redisKey = "rate_limit:global:" + key;
-            Long count = redisTemplate.opsForValue().increment(redisKey);
-            if (count != null && count == 1) {
-                redisTemplate.expire(redisKey, duration);
+            if (checks.size() == 1 && !preEvaluate) {
+                return mostRestrictive(local, rateLimiter.tryAcquire(checks.get(0).key(), checks.get(0).policy()));
+            }
+            List<RateLimitResult> results = rateLimiter.tryAcquireAll(checks);
+            if (preEvaluate) {
+                request.setAttribute(PRE_EVALUATED_ATTRIBUTE, new PreEvaluatedRateLimit(descriptor, results.get(routeChecks)));
             }
-            return count != null && count <= limit;
+            RateLimitResult rejected = null;
+            for (int i = 0; i < routeChecks; i++) {
+                RateLimitResult result = results.get(i);
+                if (!result.allowed() && (rejected == null || result.retryAfterMillis() > rejected.retryAfterMillis())) {
+                    rejected = result;
+                }
+            }
+            if (rejected != null) {
+                return rejected;
+            }
+            // the method verdict is enforced by the aspect, only its quota is reported here
+            RateLimitResult mostRestrictive = local;
+            for (RateLimitResult result : results) {
+                mostRestrictive = mostRestrictive(mostRestrictive, result);
+            }
+            return mostRestrictive;
         } catch (Exception e) {
             log.warn("Redis unavailable for global rate limiting, failing open: {}", e.getMessage());
-            return true;
+            if (preEvaluate) {
+                // the method limit has failed open as well, do not let the aspect wait for Redis again
+                RateLimitResult failedOpen = new RateLimitResult(true, descriptor.policy().limit(), descriptor.policy().limit(), 0, 0);
+                request.setAttribute(PRE_EVALUATED_ATTRIBUTE, new PreEvaluatedRateLimit(descriptor, failedOpen));
+            }
+            return local;
+        }
+    }
+
+    /**
+     * Count the global limit in the node-local table, without building a key or contacting Redis
+     */
+    private RateLimitResult evaluateLocally(String ip) {
+        long now = System.currentTimeMillis();
+        long remaining = localCounters.tryAcquire(ip, now);
+        long resetMillis = localCounters.resetMillis(now);
+        if (remaining == IpCounterStore.REJECTED) {
+            return new RateLimitResult(false, localCounters.limit(), 0, resetMillis, resetMillis);
+        }
+        return new RateLimitResult(true, localCounters.limit(), remaining, resetMillis, 0);
+    }
+
+    private static RateLimitResult mostRestrictive(RateLimitResult current, RateLimitResult result) {
+        return current == null || result.remaining() < current.remaining() ? result : current;
+    }
+
+    private void addMatchingRoutes(HttpServletRequest request, String ip, List<RateLimitCheck> checks) {
+        if (routes.isEmpty() || request.getRequestURI() == null) {
+            return;
+        }
+        PathContainer path = ServletRequestPathUtils.hasParsedRequestPath(request)
+                ? ServletRequestPathUtils.getParsedRequestPath(request).pathWithinApplication()
+                : RequestPath.parse(request.getRequestURI(), request.getContextPath()).pathWithinApplication();
+        String clientIp = null;
+        for (RateLimitRoute route : routes) {
+            if (route.matches(request.getMethod(), path)) {
+                if (clientIp == null) {
+                    clientIp = keyEncoding.client(ip);
+                }
+                checks.add(new RateLimitCheck(route.keyPrefix() + clientIp, route.policy()));
+            }
         }
     }
 
@@ -68,8 +209,13 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
         }
 
         if (request instanceof HttpServletRequest req && response instanceof HttpServletResponse res) {
-            String ip = req.getRemoteAddr();
-            if (isAllowed(ip)) {
+            String ip = RateLimitKeys.clientIp(req);
+            heavyHitters.recordClientIp(ip);
+            RateLimitResult result = evaluate(req, ip, handlerResolver.resolve(req));
+            if (result != null) {
+                writeHeaders(res, result);
+            }
+            if (result == null || result.allowed()) {
                 chain.doFilter(request, response);
             } else {
                 res.setStatus(429);
@@ -82,4 +228,41 @@ public void doFilter(ServletRequest request, ServletResponse response, FilterCha
             chain.doFilter(request, response);
         }
     }
+
+    @Override
+    public void destroy() {
+        if (localCounters instanceof MappedIpCounterStore mapped) {
+            try {
+                mapped.close();
+            } catch (IOException e) {
+                log.warn("Could not close rate limit counter file: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send the state of a limit in the rate limit headers, unless a more restrictive limit has already been sent.
+     * Retry-After is only sent for rejected requests.
+     * @param response current response
+     * @param result evaluation result
+     */
+    static void writeHeaders(HttpServletResponse response, RateLimitResult result) {
+        if (response.isCommitted()) {
+            return;
+        }
+        String sent = response.getHeader(RateLimitHeaders.REMAINING);
+        if (result.allowed() && sent != null && Long.parseLong(sent) <= result.remaining()) {
+            return;
+        }
+        RateLimitHeaders.of(result.limit(), result.remaining(), result.resetMillis(), result.allowed() ? 0 : result.retryAfterMillis())
+                .forEach((name, values) -> response.setHeader(name, values.get(0)));
+    }
+
+    /**
+     * Verdict of a method rate limit evaluated by the filter, consumed by the {@link RateLimitAspect}
+     * @param descriptor rate limit of the handler method
+     * @param result evaluation result
+     */
+    record PreEvaluatedRateLimit(RateLimitDescriptor descriptor, RateLimitResult result) {
+    }
 }
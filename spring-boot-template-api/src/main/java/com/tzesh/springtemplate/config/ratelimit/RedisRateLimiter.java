@@ -0,0 +1,223 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import com.tzesh.springtemplate.config.redis.RedisGuard;
+import com.tzesh.springtemplate.config.redis.RedisGuardClient;
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionCommands;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis backed rate limiter.
+ * Every {@link RateLimitAlgorithm} is implemented by a server-side script evaluating state, TTL and verdict,
+ * so every check costs exactly one round trip and no key can be left without an expiry;
+ * several keys of the same request are evaluated in one pipelined round trip.
+ * Scripts are loaded by SHA at startup; {@link StringRedisTemplate} falls back to EVAL if Redis lost them.
+ * Calls go through the {@link RedisGuard}, so a slow or unavailable Redis fails fast with a
+ * {@link RedisUnavailableException} and callers fail open.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class RedisRateLimiter implements RateLimiter {
+    static final Map<RateLimitAlgorithm, RedisScript<List<Long>>> SCRIPTS = loadScripts();
+    static final RedisScript<List<Long>> LEASE_SCRIPT = loadScript("scripts/ratelimit/fixed_window_lease.lua");
+    static final RedisScript<List<Long>> LEAKY_BUCKET_SCRIPT = loadScript("scripts/ratelimit/leaky_bucket.lua");
+
+    private static final String OPERATION = "ratelimit";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisGuard redisGuard;
+
+    @Autowired
+    public RedisRateLimiter(RedisGuardClient redisGuardClient, RedisGuard redisGuard) {
+        this(redisGuardClient.template(OPERATION), redisGuard);
+    }
+
+    RedisRateLimiter(StringRedisTemplate redisTemplate, RedisGuard redisGuard) {
+        this.redisTemplate = redisTemplate;
+        this.redisGuard = redisGuard;
+    }
+
+    /**
+     * Load the rate limit scripts into the Redis script cache so the first request is served by EVALSHA
+     */
+    @PostConstruct
+    public void preloadScripts() {
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                for (RedisScript<List<Long>> script : SCRIPTS.values()) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                connection.scriptingCommands().scriptLoad(LEASE_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                connection.scriptingCommands().scriptLoad(LEAKY_BUCKET_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+            log.info("Preloaded {} rate limit scripts", SCRIPTS.size() + 2);
+        } catch (Exception e) {
+            log.warn("Could not preload rate limit scripts, they will be loaded on first use: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        List<Long> reply = redisGuard.execute(OPERATION, () -> redisTemplate.execute(
+                SCRIPTS.get(policy.algorithm()),
+                List.of(key),
+                String.valueOf(policy.limit()),
+                String.valueOf(policy.window().toMillis()),
+                String.valueOf(cost)
+        ));
+        return toResult(policy, reply);
+    }
+
+    /**
+     * Evaluate several keys with one pipelined round trip.
+     * Falls back to one call per key if the pipeline fails, e.g. because Redis lost the scripts.
+     */
+    @Override
+    public List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        if (checks.size() < 2) {
+            return RateLimiter.super.tryAcquireAll(checks);
+        }
+
+        List<Object> replies;
+        try {
+            replies = redisGuard.execute(OPERATION, () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (RateLimitCheck check : checks) {
+                    RateLimitPolicy policy = check.policy();
+                    connection.scriptingCommands().evalSha(
+                            SCRIPTS.get(policy.algorithm()).getSha1(),
+                            ReturnType.MULTI,
+                            1,
+                            bytes(check.key()),
+                            bytes(String.valueOf(policy.limit())),
+                            bytes(String.valueOf(policy.window().toMillis())),
+                            bytes(String.valueOf(check.cost()))
+                    );
+                }
+                return null;
+            }));
+        } catch (RedisUnavailableException e) {
+            if (!(e.getCause() instanceof RedisPipelineException)) {
+                throw e;
+            }
+            log.debug("Pipelined rate limit evaluation failed, evaluating keys one by one: {}", e.getMessage());
+            return RateLimiter.super.tryAcquireAll(checks);
+        }
+
+        if (replies.size() != checks.size()) {
+            throw new IllegalStateException("Unexpected number of replies from rate limit pipeline: " + replies.size());
+        }
+        List<RateLimitResult> results = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            results.add(toResult(checks.get(i).policy(), (List<?>) replies.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Lease a block of permits from a {@link RateLimitAlgorithm#FIXED_WINDOW} counter in a single atomic call.
+     * The counter is shared with {@link #tryAcquire(String, RateLimitPolicy, long)}, so leased and unleased callers
+     * see the same window.
+     * @param key Redis key of the counter
+     * @param policy fixed window policy of the key
+     * @param permits number of permits requested
+     * @return the lease, with fewer permits than requested if the window is nearly exhausted
+     */
+    public RateLimitLease lease(String key, RateLimitPolicy policy, long permits) {
+        List<Long> reply = redisGuard.execute(OPERATION, () -> redisTemplate.execute(
+                LEASE_SCRIPT,
+                List.of(key),
+                String.valueOf(policy.limit()),
+                String.valueOf(policy.window().toMillis()),
+                String.valueOf(permits)
+        ));
+        if (reply == null || reply.size() < 3) {
+            throw new IllegalStateException("Unexpected reply from rate limit lease script: " + reply);
+        }
+        return new RateLimitLease(reply.get(0), reply.get(1), reply.get(2));
+    }
+
+    /**
+     * Reserve the next slot of a leaky bucket in a single atomic call.
+     * The slot is only taken if it starts within the maximum wait, so rejected calls do not push back later ones.
+     */
+    @Override
+    public RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        List<Long> reply = redisGuard.execute(OPERATION, () -> redisTemplate.execute(
+                LEAKY_BUCKET_SCRIPT,
+                List.of(key),
+                String.valueOf(policy.limit()),
+                String.valueOf(policy.window().toMillis()),
+                String.valueOf(maxWait.toMillis()),
+                String.valueOf(cost)
+        ));
+        if (reply == null || reply.size() < 4) {
+            throw new IllegalStateException("Unexpected reply from rate limit reservation script: " + reply);
+        }
+        return new RateLimitReservation(reply.get(0) == 1L, reply.get(1), reply.get(3));
+    }
+
+    /**
+     * Check whether Redis answers, used to detect when it is back after an outage
+     * @return true if Redis answered a PING
+     */
+    public boolean isAvailable() {
+        try {
+            return "PONG".equalsIgnoreCase(redisGuard.execute(OPERATION,
+                    () -> redisTemplate.execute((RedisCallback<String>) RedisConnectionCommands::ping)));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static RateLimitResult toResult(RateLimitPolicy policy, List<?> reply) {
+        if (reply == null || reply.size() < 4) {
+            throw new IllegalStateException("Unexpected reply from rate limit script: " + reply);
+        }
+        return new RateLimitResult(
+                ((Number) reply.get(0)).longValue() == 1L,
+                policy.limit(),
+                ((Number) reply.get(1)).longValue(),
+                ((Number) reply.get(2)).longValue(),
+                ((Number) reply.get(3)).longValue()
+        );
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<RateLimitAlgorithm, RedisScript<List<Long>>> loadScripts() {
+        Map<RateLimitAlgorithm, RedisScript<List<Long>>> scripts = new EnumMap<>(RateLimitAlgorithm.class);
+        scripts.put(RateLimitAlgorithm.FIXED_WINDOW, loadScript("scripts/ratelimit/fixed_window.lua"));
+        scripts.put(RateLimitAlgorithm.SLIDING_WINDOW, loadScript("scripts/ratelimit/sliding_window.lua"));
+        scripts.put(RateLimitAlgorithm.GCRA, loadScript("scripts/ratelimit/gcra.lua"));
+        scripts.put(RateLimitAlgorithm.TOKEN_BUCKET, loadScript("scripts/ratelimit/token_bucket.lua"));
+        return Collections.unmodifiableMap(scripts);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static RedisScript<List<Long>> loadScript(String location) {
+        return (RedisScript) RedisScript.of(new ClassPathResource(location), List.class);
+    }
+}
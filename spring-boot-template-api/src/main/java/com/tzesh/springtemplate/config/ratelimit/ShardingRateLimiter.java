@@ -0,0 +1,178 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits single very busy keys, e.g. a whole office behind one NAT address, into sub-keys spread over the slots of
+ * a Redis cluster. The requests of every key on this node are counted by a {@link HeavyHitterSketch} halving its
+ * counts every second; once the count of a key reaches {@code hot-key-threshold}, each request is charged to one of
+ * {@code N} sub-keys {@code <key>#<shard>} picked at random, each with {@code limit / N}. {@code N} is the power of
+ * two that keeps the count of every sub-key below the threshold, bounded by {@code max-shards} and by
+ * {@code min-shard-limit}. The count is decayed, not a rate: at a steady {@code r} requests per second it moves
+ * between {@code r} and {@code 2r}, so a key is split once its rate reaches between half the threshold and the
+ * threshold, and into up to twice the sub-keys its rate alone would need.
+ * <p>
+ * The sum is only approximate: random picks fill the sub-keys evenly at high rates, but a request may be rejected
+ * by its sub-key while others still have quota, and the reported remaining quota is that of the sub-key times
+ * {@code N}. A key stays split for {@code cooldown} after it was last seen hot, and its shard count only grows
+ * meanwhile, so nodes settle on the same sub-keys. Reservations are paced on the whole key and never split.
+ * <p>
+ * Counts are not carried over when the shard count changes: the new sub-keys start empty while {@code <key>}, or the
+ * previous sub-keys, still hold the count of the current window, and every node switches on its own. Within the
+ * window of a split, a merge or a growing shard count, a key can therefore be allowed up to twice its limit.
+ *
+ * @author tzesh
+ */
+@Slf4j
+public class ShardingRateLimiter implements RateLimiter {
+    static final char SHARD_SEPARATOR = '#';
+
+    private final RateLimiter delegate;
+    private final RateLimitProperties.ShardingConfig config;
+    private final LongSupplier nanoClock;
+    private final IntUnaryOperator shardSelector;
+    // only the frequency estimates are used, the top-k is kept minimal
+    private final HeavyHitterSketch counts;
+    private final ConcurrentMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    public ShardingRateLimiter(RateLimiter delegate, RateLimitProperties.ShardingConfig config) {
+        this(delegate, config, System::nanoTime, bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+
+    ShardingRateLimiter(RateLimiter delegate, RateLimitProperties.ShardingConfig config, LongSupplier nanoClock,
+                        IntUnaryOperator shardSelector) {
+        this.delegate = delegate;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.shardSelector = shardSelector;
+        this.counts = new HeavyHitterSketch(1, config.getWidth(), config.getDepth(), TimeUnit.SECONDS.toNanos(1), nanoClock);
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String key, RateLimitPolicy policy, long cost) {
+        if (!config.isEnabled()) {
+            return delegate.tryAcquire(key, policy, cost);
+        }
+
+        int shards = shards(key, policy);
+        if (shards < 2) {
+            return delegate.tryAcquire(key, policy, cost);
+        }
+        RateLimitCheck check = shard(new RateLimitCheck(key, policy, cost), shards);
+        return merge(delegate.tryAcquire(check.key(), check.policy(), check.cost()), policy, shards);
+    }
+
+    @Override
+    public List<RateLimitResult> tryAcquireAll(List<RateLimitCheck> checks) {
+        if (!config.isEnabled()) {
+            return delegate.tryAcquireAll(checks);
+        }
+
+        int[] shards = new int[checks.size()];
+        List<RateLimitCheck> sharded = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            RateLimitCheck check = checks.get(i);
+            shards[i] = shards(check.key(), check.policy());
+            sharded.add(shards[i] < 2 ? check : shard(check, shards[i]));
+        }
+        List<RateLimitResult> delegated = delegate.tryAcquireAll(sharded);
+        List<RateLimitResult> results = new ArrayList<>(delegated.size());
+        for (int i = 0; i < delegated.size(); i++) {
+            results.add(shards[i] < 2 ? delegated.get(i) : merge(delegated.get(i), checks.get(i).policy(), shards[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Reservations pace the whole key, splitting it would multiply the rate
+     */
+    @Override
+    public RateLimitReservation reserve(String key, RateLimitPolicy policy, long cost, Duration maxWait) {
+        return delegate.reserve(key, policy, cost, maxWait);
+    }
+
+    /**
+     * Count a request of the key and decide how many sub-keys it is split into
+     * @return number of sub-keys, below 2 if the key is not split
+     */
+    private int shards(String key, RateLimitPolicy policy) {
+        long count = counts.record(key, 1);
+        long now = nanoClock.getAsLong();
+        HotKey hot = hotKeys.get(key);
+        boolean active = hot != null && hot.isActive(now);
+        if (hot != null && !active) {
+            hotKeys.remove(key, hot);
+        }
+        if (count < config.getHotKeyThreshold()) {
+            return active ? hot.shards() : 1;
+        }
+
+        int wanted = shardCount(count, policy);
+        long cooldownNanos = config.getCooldown().toNanos();
+        // refreshed at most twice per cooldown, not by every request of the hot key
+        if (active && wanted <= hot.shards() && hot.expiresAtNanos() - now > cooldownNanos / 2) {
+            return hot.shards();
+        }
+        int shards = active ? Math.max(hot.shards(), wanted) : wanted;
+        if (shards < 2 || !hasRoom(key, now)) {
+            return active ? hot.shards() : 1;
+        }
+        hotKeys.put(key, new HotKey(shards, now + cooldownNanos));
+        if (!active || shards > hot.shards()) {
+            log.info("Rate limit key {} is hot with a decayed count of {} requests, split into {} sub-keys", key, count, shards);
+        }
+        return shards;
+    }
+
+    /**
+     * @return the power of two keeping every sub-key below the threshold, within the configured bounds
+     */
+    private int shardCount(long count, RateLimitPolicy policy) {
+        long needed = count / config.getHotKeyThreshold() + 1;
+        int byCount = needed >= config.getMaxShards() ? config.getMaxShards() : Integer.highestOneBit((int) needed - 1) << 1;
+        int byLimit = Integer.highestOneBit(Math.max(1, policy.limit() / Math.max(1, config.getMinShardLimit())));
+        return Math.min(Integer.highestOneBit(Math.max(1, config.getMaxShards())), Math.min(byCount, byLimit));
+    }
+
+    private boolean hasRoom(String key, long now) {
+        if (hotKeys.size() < config.getMaxHotKeys() || hotKeys.containsKey(key)) {
+            return true;
+        }
+        hotKeys.values().removeIf(hot -> !hot.isActive(now));
+        return hotKeys.size() < config.getMaxHotKeys();
+    }
+
+    private RateLimitCheck shard(RateLimitCheck check, int shards) {
+        RateLimitPolicy policy = check.policy();
+        return new RateLimitCheck(
+                check.key() + SHARD_SEPARATOR + shardSelector.applyAsInt(shards),
+                new RateLimitPolicy(policy.limit() / shards, policy.window(), policy.algorithm()),
+                check.cost());
+    }
+
+    private static RateLimitResult merge(RateLimitResult result, RateLimitPolicy policy, int shards) {
+        return new RateLimitResult(result.allowed(), policy.limit(),
+                Math.min(policy.limit(), result.remaining() * shards), result.resetMillis(), result.retryAfterMillis());
+    }
+
+    /**
+     * Key split into sub-keys until the cooldown expires
+     * @param shards number of sub-keys
+     * @param expiresAtNanos end of the cooldown
+     */
+    private record HotKey(int shards, long expiresAtNanos) {
+        private boolean isActive(long now) {
+            return now - expiresAtNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.tzesh.springtemplate.config.redis;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.PoolException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Shared guard around Redis calls of the rate limiting and idempotency components.
+ * Calls run on the calling thread and are bounded by the command timeout of their {@link RedisGuardClient}
+ * ({@code redis.guard.timeouts.<operation>}), so the guard adds no thread hop to the request path.
+ * A circuit breaker opens after {@code failure-threshold} consecutive failures and rejects calls immediately for
+ * {@code open-duration}, after which a single trial call decides whether it closes again (half-open).
+ * Only outages count as failures: connection failures, timeouts and an exhausted connection pool. Errors Redis
+ * answered with, e.g. a script error or WRONGTYPE on one key, are thrown to the caller but leave the circuit
+ * closed, so one bad key does not take Redis away from every client.
+ * Callers decide how to degrade: rate limits fail open, idempotency fails closed.
+ * Calls are recorded in the {@code redis.guard.calls} timer by operation and outcome, the circuit state in the
+ * {@code redis.guard.circuit.state} gauge (0 closed, 1 half-open, 2 open).
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class RedisGuard {
+    /**
+     * State of the circuit breaker
+     */
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final RedisGuardProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<Circuit> circuit = new AtomicReference<>(Circuit.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // timers of every operation, registered on its first call
+    private final ConcurrentMap<String, Timers> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RedisGuard(RedisGuardProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    RedisGuard(RedisGuardProperties properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        Gauge.builder("redis.guard.circuit.state", circuit, value -> value.get().state().ordinal())
+                .description("Circuit breaker state of Redis calls (0 closed, 1 half-open, 2 open)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a Redis call, unless the circuit is open
+     * @param operation operation name, tags the metrics
+     * @param call Redis call
+     * @return result of the call
+     * @param <T> result type
+     * @throws RedisUnavailableException if the call failed, timed out, was answered with an error or the circuit is open
+     */
+    public <T> T execute(String operation, Supplier<T> call) {
+        Timers operationTimers = timers.computeIfAbsent(operation, this::register);
+        if (!tryPermit()) {
+            operationTimers.rejected().record(0, TimeUnit.NANOSECONDS);
+            throw new RedisUnavailableException("Redis circuit is open, " + operation + " call rejected");
+        }
+
+        long start = nanoClock.getAsLong();
+        try {
+            T result = call.get();
+            onSuccess();
+            operationTimers.success().record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (QueryTimeoutException e) {
+            onFailure();
+            operationTimers.timeout().record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+            throw new RedisUnavailableException("Redis " + operation + " call timed out: " + e.getMessage(), e);
+        } catch (RedisConnectionFailureException | PoolException e) {
+            onFailure();
+            operationTimers.failure().record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+            throw new RedisUnavailableException("Redis " + operation + " call failed: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // Redis answered, so it is reachable; a trial call closes the circuit
+            onSuccess();
+            operationTimers.error().record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+            throw new RedisUnavailableException("Redis " + operation + " call returned an error: " + e.getMessage(), e);
+        } catch (Error e) {
+            // every permitted call settles the circuit, a trial call left unsettled would keep it half-open
+            onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Run a Redis call without a result, unless the circuit is open
+     * @param operation operation name, tags the metrics
+     * @param call Redis call
+     * @throws RedisUnavailableException if the call failed, timed out or the circuit is open
+     */
+    public void run(String operation, Runnable call) {
+        execute(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Current state of the circuit breaker
+     * @return state
+     */
+    public State getState() {
+        return circuit.get().state();
+    }
+
+    private boolean tryPermit() {
+        Circuit current = circuit.get();
+        if (current.state() == State.CLOSED) {
+            return true;
+        }
+        // while open, let a single trial call through once the open duration has elapsed
+        return current.state() == State.OPEN
+                && nanoClock.getAsLong() - current.openedAtNanos() >= properties.getOpenDuration().toNanos()
+                && circuit.compareAndSet(current, new Circuit(State.HALF_OPEN, current.openedAtNanos()));
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (circuit.getAndSet(Circuit.CLOSED).state() != State.CLOSED) {
+            log.info("Redis circuit closed");
+        }
+    }
+
+    private void onFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        Circuit current = circuit.get();
+        boolean open = current.state() == State.HALF_OPEN
+                || (current.state() == State.CLOSED && failures >= properties.getFailureThreshold());
+        if (open && circuit.compareAndSet(current, new Circuit(State.OPEN, nanoClock.getAsLong()))) {
+            log.warn("Redis circuit opened after {} consecutive failures", failures);
+        }
+    }
+
+    private Timers register(String operation) {
+        return new Timers(timer(operation, "success"), timer(operation, "failure"), timer(operation, "timeout"),
+                timer(operation, "error"), timer(operation, "rejected"));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder("redis.guard.calls")
+                .description("Redis calls made through the guard")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Timers of one operation by outcome
+     */
+    private record Timers(Timer success, Timer failure, Timer timeout, Timer error, Timer rejected) {
+    }
+
+    /**
+     * State of the circuit breaker and the time it was opened
+     */
+    private record Circuit(State state, long openedAtNanos) {
+        private static final Circuit CLOSED = new Circuit(State.CLOSED, 0);
+    }
+}
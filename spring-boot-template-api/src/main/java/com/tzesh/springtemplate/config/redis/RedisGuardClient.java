@@ -0,0 +1,90 @@
+package com.tzesh.springtemplate.config.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Redis clients of the calls made through the {@link RedisGuard}, one per operation.
+ * Each client connects to the same Redis as the application's connection factory, with the same client options, but
+ * with the command timeout of its operation ({@code redis.guard.timeouts.<operation>}, or
+ * {@code redis.guard.default-timeout}), so the latency budget of rate limiting and idempotency does not tighten the
+ * timeout of Spring Session or any other Redis user.
+ *
+ * @author tzesh
+ */
+@Component
+@Slf4j
+public class RedisGuardClient implements DisposableBean {
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisGuardProperties properties;
+    private final ConcurrentMap<String, LettuceConnectionFactory> factories = new ConcurrentHashMap<>();
+
+    public RedisGuardClient(LettuceConnectionFactory connectionFactory, RedisGuardProperties properties) {
+        this.connectionFactory = connectionFactory;
+        this.properties = properties;
+    }
+
+    /**
+     * Get a template whose commands time out after the timeout of the operation
+     * @param operation operation name, as passed to {@link RedisGuard#execute}
+     * @return template of the operation
+     */
+    public StringRedisTemplate template(String operation) {
+        StringRedisTemplate template = new StringRedisTemplate(factories.computeIfAbsent(operation, this::connect));
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Override
+    public void destroy() {
+        factories.values().forEach(LettuceConnectionFactory::destroy);
+    }
+
+    private LettuceConnectionFactory connect(String operation) {
+        Duration timeout = properties.getTimeouts().getOrDefault(operation, properties.getDefaultTimeout());
+        LettuceClientConfiguration clientConfiguration = withCommandTimeout(connectionFactory.getClientConfiguration(), timeout);
+        LettuceConnectionFactory factory;
+        if (connectionFactory.isClusterAware()) {
+            factory = new LettuceConnectionFactory(connectionFactory.getClusterConfiguration(), clientConfiguration);
+        } else if (connectionFactory.isRedisSentinelAware()) {
+            factory = new LettuceConnectionFactory(connectionFactory.getSentinelConfiguration(), clientConfiguration);
+        } else {
+            factory = new LettuceConnectionFactory(connectionFactory.getStandaloneConfiguration(), clientConfiguration);
+        }
+        factory.afterPropertiesSet();
+        factory.start();
+        log.info("Created Redis client for {} calls with a command timeout of {} ms", operation, timeout.toMillis());
+        return factory;
+    }
+
+    /**
+     * Copy of a client configuration with another command timeout
+     */
+    static LettuceClientConfiguration withCommandTimeout(LettuceClientConfiguration shared, Duration timeout) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder();
+        if (shared.isUseSsl()) {
+            LettuceClientConfiguration.LettuceSslClientConfigurationBuilder ssl = builder.useSsl().verifyPeer(shared.getVerifyMode());
+            if (shared.isStartTls()) {
+                ssl.startTls();
+            }
+        }
+        shared.getClientResources().ifPresent(builder::clientResources);
+        shared.getClientOptions().ifPresent(builder::clientOptions);
+        shared.getClientName().ifPresent(builder::clientName);
+        shared.getReadFrom().ifPresent(builder::readFrom);
+        shared.getRedisCredentialsProviderFactory().ifPresent(builder::redisCredentialsProviderFactory);
+        return builder
+                .commandTimeout(timeout)
+                .shutdownTimeout(shared.getShutdownTimeout())
+                .shutdownQuietPeriod(shared.getShutdownQuietPeriod())
+                .build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.tzesh.springtemplate.config.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration properties for the {@link RedisGuard}, calls are bounded by the command timeouts of the
+ * {@link RedisGuardClient}
+ * @author tzesh
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis.guard")
+public class RedisGuardProperties {
+    /**
+     * Command timeout of operations without an entry in {@link #timeouts}
+     */
+    private Duration defaultTimeout = Duration.ofMillis(200);
+
+    /**
+     * Command timeouts by operation, e.g. {@code ratelimit} or {@code idempotency}
+     */
+    private Map<String, Duration> timeouts = new HashMap<>();
+
+    /**
+     * Consecutive failures opening the circuit
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * Time the circuit stays open before a single trial call is let through
+     */
+    private Duration openDuration = Duration.ofSeconds(10);
+}
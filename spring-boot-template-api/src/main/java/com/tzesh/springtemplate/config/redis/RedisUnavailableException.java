@@ -0,0 +1,20 @@
+package com.tzesh.springtemplate.config.redis;
+
+import java.io.Serial;
+
+/**
+ * Thrown by the {@link RedisGuard} when a Redis operation failed, timed out or was rejected by the open circuit
+ * @author tzesh
+ */
+public class RedisUnavailableException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public RedisUnavailableException(String message) {
+        super(message);
+    }
+
+    public RedisUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -54,8 +54,11 @@ public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Excepti
                     "/swagger-ui/**",
                     "/webjars/**",
                     "/swagger-ui.html",
-                    "/actuator/**"
+                    "/actuator/health",
+                    "/actuator/health/**",
+                    "/actuator/info"
                 ).permitAll()
+                .requestMatchers("/actuator/**").hasAnyRole(ADMIN.name(), MANAGER.name())
                 .requestMatchers("/management/**").hasAnyRole(ADMIN.name(), MANAGER.name())
                 .requestMatchers(GET, "/management/**").hasAnyAuthority(ADMIN_READ.name(), MANAGER_READ.name())
                 .requestMatchers(POST, "/management/**").hasAnyAuthority(ADMIN_CREATE.name(), MANAGER_CREATE.name())
@@ -65,7 +65,7 @@ public ResponseEntity<BaseResponse<UserDTO>> createUser(@RequestBody @Valid Crea
     @GetMapping("/")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Get all users (ADMIN)", description = "Get all users and return the users")
-    @RateLimitCategory(RateLimitCategoryType.RELAXED)
+    @RateLimitCategory(value = RateLimitCategoryType.RELAXED, costExpression = "#pageable.pageSize / 10")
     public ResponseEntity<BaseResponse<Page<UserDTO>>> getAllUsers(@PageableDefault(size = 20) Pageable pageable) {
         // call the get all method in the user service
         Page<UserDTO> userDTOPage = userService.findAll(pageable);
@@ -5,6 +5,7 @@
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
@@ -24,6 +25,12 @@
  */
 @Service
 public class JwtService {
+    /**
+     * Claim holding the role of the user, e.g. {@code ADMIN}
+     */
+    public static final String ROLE_CLAIM = "role";
+    private static final String ROLE_AUTHORITY_PREFIX = "ROLE_";
+
     @Value("${security.jwt.secret-key}")
     private String secretKey;
     @Value("${security.jwt.expiration}")
@@ -43,6 +50,16 @@ public String extractUsername(final String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
+    /**
+     * Extract the role of the user, verifying the signature but without loading the user
+     *
+     * @param token JWT token
+     * @return role name, or null if the token has no role claim
+     */
+    public String extractRole(final String token) {
+        return extractClaim(token, claims -> claims.get(ROLE_CLAIM, String.class));
+    }
+
     /**
      * Extract claims from token
      *
@@ -63,7 +80,13 @@ public <T> T extractClaim(final String token, final Function<Claims, T> claimsRe
      * @return Key
      */
     public String generateToken(final UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+        final Map<String, Object> claims = new HashMap<>();
+        userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .filter(authority -> authority.startsWith(ROLE_AUTHORITY_PREFIX))
+                .findFirst()
+                .ifPresent(authority -> claims.put(ROLE_CLAIM, authority.substring(ROLE_AUTHORITY_PREFIX.length())));
+        return generateToken(claims, userDetails);
     }
 
     /**
@@ -0,0 +1,12 @@
+-- Look up a cached idempotent response and take the lock of its key in a single round trip.
+-- The lock and the response share the key, so completing a call swaps one for the other atomically.
+-- KEYS[1] idempotency key
+-- ARGV[1] lock value of the caller, "lock:<token>"
+-- ARGV[2] lock TTL in milliseconds
+-- Returns ARGV[1] if the caller holds the lock, otherwise the current value: a cached response or another lock
+local value = redis.call('GET', KEYS[1])
+if value then
+    return value
+end
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return ARGV[1]
@@ -0,0 +1,13 @@
+-- Replace the lock of an idempotency key by the response of the call, only if the caller still holds the lock.
+-- KEYS[1] idempotency key
+-- ARGV[1] lock value of the caller
+-- ARGV[2] response to cache
+-- ARGV[3] response TTL in milliseconds
+-- ARGV[4] channel notifying calls waiting for the key
+-- Returns 1 if the response was stored, 0 if the lock had expired or was taken by another call
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+redis.call('PUBLISH', ARGV[4], KEYS[1])
+return 1
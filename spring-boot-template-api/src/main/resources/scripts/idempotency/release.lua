@@ -0,0 +1,11 @@
+-- Release the lock of an idempotency key without caching a response, only if the caller still holds it.
+-- KEYS[1] idempotency key
+-- ARGV[1] lock value of the caller
+-- ARGV[2] channel notifying calls waiting for the key, one of them takes over
+-- Returns 1 if the lock was released, 0 if it had expired or was taken by another call
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('DEL', KEYS[1])
+redis.call('PUBLISH', ARGV[2], KEYS[1])
+return 1
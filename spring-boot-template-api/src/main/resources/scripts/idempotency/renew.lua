@@ -0,0 +1,10 @@
+-- Extend the lock of an idempotency key while the call holding it is still running.
+-- KEYS[1] idempotency key
+-- ARGV[1] lock value of the caller
+-- ARGV[2] lock TTL in milliseconds
+-- Returns 1 if the lock was extended, 0 if it had expired or was taken by another call
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('PEXPIRE', KEYS[1], ARGV[2])
+return 1
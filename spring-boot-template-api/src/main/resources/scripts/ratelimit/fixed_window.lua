@@ -0,0 +1,24 @@
+-- Fixed window counter evaluated atomically in a single round trip.
+-- KEYS[1] counter key
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] cost of the request, defaults to 1
+-- Returns {allowed, remaining, reset_ms, retry_after_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local cost = tonumber(ARGV[3]) or 1
+
+local count = redis.call('INCRBY', KEYS[1], cost)
+local ttl = redis.call('PTTL', KEYS[1])
+-- a missing TTL means a new window (or a key left behind without expiry), so (re)arm it
+if ttl < 0 then
+    redis.call('PEXPIRE', KEYS[1], window)
+    ttl = window
+end
+
+if count > limit then
+    -- refund the rejected cost, so an expensive request cannot use up the window for cheaper ones
+    redis.call('DECRBY', KEYS[1], cost)
+    return {0, math.max(0, limit - count + cost), ttl, ttl}
+end
+return {1, limit - count, ttl, 0}
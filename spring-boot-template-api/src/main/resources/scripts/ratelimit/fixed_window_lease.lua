@@ -0,0 +1,27 @@
+-- Lease a block of quota from a fixed window counter, shares the counter with fixed_window.lua.
+-- KEYS[1] counter key
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] requested block size
+-- Returns {granted, remaining, reset_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+local count = tonumber(redis.call('GET', KEYS[1])) or 0
+local granted = math.min(requested, limit - count)
+if granted <= 0 then
+    local ttl = redis.call('PTTL', KEYS[1])
+    if ttl < 0 then
+        ttl = window
+    end
+    return {0, 0, ttl}
+end
+
+count = redis.call('INCRBY', KEYS[1], granted)
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl < 0 then
+    redis.call('PEXPIRE', KEYS[1], window)
+    ttl = window
+end
+return {granted, limit - count, ttl}
@@ -0,0 +1,28 @@
+-- Generic cell rate algorithm: requests are spaced by window / limit while a burst of limit requests is tolerated.
+-- KEYS[1] theoretical arrival time (TAT) in milliseconds
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] cost of the request, it takes cost emission intervals; defaults to 1
+-- Returns {allowed, remaining, reset_ms, retry_after_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local cost = tonumber(ARGV[3]) or 1
+local interval = window / limit
+
+local time = redis.call('TIME')
+local now = time[1] * 1000 + math.floor(time[2] / 1000)
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+    tat = now
+end
+
+local new_tat = tat + interval * cost
+local allow_at = new_tat - window
+if allow_at > now then
+    return {0, 0, math.ceil(tat - now), math.ceil(allow_at - now)}
+end
+
+local reset = math.ceil(new_tat - now)
+redis.call('SET', KEYS[1], new_tat, 'PX', reset)
+return {1, math.floor((now - allow_at) / interval), reset, 0}
@@ -0,0 +1,30 @@
+-- Leaky bucket meter: reserves the next slot, spaced by window / limit, for a call willing to wait up to max_wait.
+-- KEYS[1] time the next slot starts (TAT) in milliseconds
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] maximum wait in milliseconds
+-- ARGV[4] cost of the call, it occupies cost consecutive slots; defaults to 1
+-- Returns {reserved, delay_ms, reset_ms, retry_after_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local max_wait = tonumber(ARGV[3])
+local cost = tonumber(ARGV[4]) or 1
+local interval = window / limit
+
+local time = redis.call('TIME')
+local now = time[1] * 1000 + math.floor(time[2] / 1000)
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+    tat = now
+end
+
+local delay = tat - now
+if delay > max_wait then
+    return {0, 0, math.ceil(delay), math.ceil(delay - max_wait)}
+end
+
+local new_tat = tat + interval * cost
+local reset = math.ceil(new_tat - now)
+redis.call('SET', KEYS[1], new_tat, 'PX', reset)
+return {1, math.ceil(delay), reset, 0}
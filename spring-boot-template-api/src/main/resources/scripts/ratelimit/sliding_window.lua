@@ -0,0 +1,46 @@
+-- Sliding window counter: the previous window is weighted by how much of it still overlaps the sliding window.
+-- KEYS[1] hash holding the window index (w), current count (c) and previous count (p)
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] cost of the request, defaults to 1
+-- Returns {allowed, remaining, reset_ms, retry_after_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local cost = tonumber(ARGV[3]) or 1
+
+local time = redis.call('TIME')
+local now = time[1] * 1000 + math.floor(time[2] / 1000)
+local index = math.floor(now / window)
+local elapsed = now - index * window
+local reset = window - elapsed
+
+local state = redis.call('HMGET', KEYS[1], 'w', 'c', 'p')
+local last = tonumber(state[1])
+local current = tonumber(state[2]) or 0
+local previous = tonumber(state[3]) or 0
+if last ~= index then
+    if last == index - 1 then
+        previous = current
+    else
+        previous = 0
+    end
+    current = 0
+end
+
+local estimated = previous * (reset / window) + current
+if estimated + cost > limit then
+    local retry = reset
+    -- if the current window still has room, wait only until enough of the previous window slides out
+    if previous > 0 and current + cost <= limit then
+        retry = math.ceil(window * (1 - (limit - current - cost) / previous)) - elapsed
+    end
+    if retry < 1 then
+        retry = 1
+    end
+    return {0, math.max(0, math.floor(limit - estimated)), reset, retry}
+end
+
+current = current + cost
+redis.call('HSET', KEYS[1], 'w', index, 'c', current, 'p', previous)
+redis.call('PEXPIRE', KEYS[1], window * 2)
+return {1, math.floor(limit - estimated - cost), reset, 0}
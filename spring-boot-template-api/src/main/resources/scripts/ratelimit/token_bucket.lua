@@ -0,0 +1,28 @@
+-- Token bucket: holds up to limit tokens and is refilled continuously at limit tokens per window.
+-- KEYS[1] hash holding the token count (t) and the last refill timestamp in milliseconds (ts)
+-- ARGV[1] limit
+-- ARGV[2] window length in milliseconds
+-- ARGV[3] cost of the request in tokens, defaults to 1
+-- Returns {allowed, remaining, reset_ms, retry_after_ms}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local cost = tonumber(ARGV[3]) or 1
+local rate = limit / window
+
+local time = redis.call('TIME')
+local now = time[1] * 1000 + math.floor(time[2] / 1000)
+
+local state = redis.call('HMGET', KEYS[1], 't', 'ts')
+local tokens = tonumber(state[1]) or limit
+local last = tonumber(state[2]) or now
+tokens = math.min(limit, tokens + (now - last) * rate)
+
+if tokens < cost then
+    return {0, math.floor(tokens), math.ceil((limit - tokens) / rate), math.ceil((cost - tokens) / rate)}
+end
+
+tokens = tokens - cost
+local reset = math.ceil((limit - tokens) / rate)
+redis.call('HSET', KEYS[1], 't', tokens, 'ts', now)
+redis.call('PEXPIRE', KEYS[1], reset)
+return {1, math.floor(tokens), reset, 0}
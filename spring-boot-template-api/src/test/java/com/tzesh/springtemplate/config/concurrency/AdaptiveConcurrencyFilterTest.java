@@ -0,0 +1,177 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class AdaptiveConcurrencyFilterTest {
+    private ConcurrencyLimitProperties properties;
+    private AdaptiveConcurrencyLimiter limiter;
+    private SimpleMeterRegistry meterRegistry;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ConcurrencyLimitProperties();
+        properties.setInitialLimit(1);
+        properties.setMinLimit(1);
+        properties.setQueueSize(0);
+        limiter = new AdaptiveConcurrencyLimiter(properties);
+        meterRegistry = new SimpleMeterRegistry();
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @DisplayName("Should process requests within the limit and release their slot")
+    void doFilter_withinLimit_proceeds() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(meterRegistry.get("concurrency.limit").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should reject requests over the limit with 503 in the response envelope")
+    void doFilter_overLimit_rejects() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        limiter.acquire();
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain);
+
+        verify(chain, never()).doFilter(any(), any());
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(response.getContentAsString()).contains("\"status\":\"SERVICE_UNAVAILABLE\"", "Service is overloaded");
+        assertThat(meterRegistry.get("concurrency.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should not limit excluded paths")
+    void doFilter_excludedPath_proceeds() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        limiter.acquire();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/actuator/health");
+        request.setContextPath("/api/v1");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should sample the latency of requests that ran their handler")
+    void doFilter_handlerRan_sampled() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        FilterChain chain = (request, response) -> {
+            request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, new Object());
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        };
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), chain);
+
+        assertThat(limiter.getLongRttMillis()).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Should not sample requests rejected before or short-circuited around their handler")
+    void doFilter_rejectedOrShortCircuited_notSampled() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        FilterChain rejected = (request, response) -> ((HttpServletResponse) response).setStatus(429);
+        FilterChain shortCircuited = (request, response) -> {
+            request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, new Object());
+            request.setAttribute(AdaptiveConcurrencyFilter.SHORT_CIRCUITED_ATTRIBUTE, Boolean.TRUE);
+        };
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), rejected);
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), shortCircuited);
+
+        assertThat(limiter.getLongRttMillis()).isZero();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should give up the slot of a parked request and acquire it again afterwards")
+    void park_releasesSlotWhileParked() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        AtomicBoolean resumed = new AtomicBoolean();
+        CompletableFuture<Integer> inFlightWhileParked = new CompletableFuture<>();
+        CompletableFuture<Integer> inFlightAfterParking = new CompletableFuture<>();
+        FilterChain chain = (request, response) -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes((MockHttpServletRequest) request));
+            CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS).execute(() -> inFlightWhileParked.complete(limiter.getInFlight()));
+            try {
+                resumed.set(AdaptiveConcurrencyFilter.park(100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlightAfterParking.complete(limiter.getInFlight());
+        };
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), chain);
+
+        assertThat(resumed).isTrue();
+        assertThat(inFlightWhileParked.get()).isZero();
+        assertThat(inFlightAfterParking.get()).isEqualTo(1);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not resume a parked request whose slot was taken meanwhile, nor release the slot twice")
+    void park_slotTaken_notResumed() throws Exception {
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties, limiter, meterRegistry, objectMapper);
+        AtomicBoolean resumed = new AtomicBoolean(true);
+        FilterChain chain = (request, response) -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes((MockHttpServletRequest) request));
+            CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS).execute(limiter::acquire);
+            try {
+                resumed.set(AdaptiveConcurrencyFilter.park(100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse(), chain);
+
+        assertThat(resumed).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+}
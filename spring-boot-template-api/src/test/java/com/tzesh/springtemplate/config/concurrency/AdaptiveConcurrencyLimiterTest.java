@@ -0,0 +1,146 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private ConcurrencyLimitProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ConcurrencyLimitProperties();
+        properties.setInitialLimit(4);
+        properties.setMinLimit(2);
+        properties.setMaxLimit(100);
+        properties.setQueueSize(0);
+    }
+
+    @Test
+    @DisplayName("Should raise the limit while latency is stable and the limit is used")
+    void release_stableLatency_raisesLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 50; i++) {
+            int inFlight = limiter.acquire();
+            limiter.release(RTT, Math.max(inFlight, limiter.getLimit()));
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(4);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not raise the limit while less than half of it is used")
+    void release_idle_keepsLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.release(RTT, limiter.acquire());
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should lower the limit when latency increases, but not below the minimum")
+    void release_increasedLatency_lowersLimit() {
+        properties.setInitialLimit(50);
+        properties.setMinLimit(10);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        for (int i = 0; i < 10; i++) {
+            limiter.release(RTT, limiter.acquire());
+        }
+
+        limiter.release(RTT * 10, limiter.acquire());
+        assertThat(limiter.getLimit()).isLessThan(50);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.release(RTT * 10, limiter.acquire());
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should reject requests over the limit when the queue is full")
+    void acquire_overLimitWithoutQueue_rejects() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        for (int i = 1; i <= 4; i++) {
+            assertThat(limiter.acquire()).isEqualTo(i);
+        }
+
+        assertThat(limiter.acquire()).isEqualTo(-1);
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should let a queued request through once a slot is released")
+    void acquire_queued_proceedsAfterRelease() throws Exception {
+        properties.setQueueSize(1);
+        properties.setMaxQueueWait(Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+
+        CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(limiter::acquire);
+        while (limiter.getQueueDepth() == 0) {
+            Thread.onSpinWait();
+        }
+        assertThat(limiter.acquire()).as("queue is full").isEqualTo(-1);
+
+        limiter.release(RTT, 4);
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isPositive();
+        assertThat(limiter.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reject a queued request after the maximum queue wait")
+    void acquire_queueWaitElapsed_rejects() {
+        properties.setQueueSize(1);
+        properties.setMaxQueueWait(Duration.ofMillis(20));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+
+        assertThat(limiter.acquire()).isEqualTo(-1);
+        assertThat(limiter.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should never let more requests in flight than the limit under concurrent use")
+    void acquire_concurrent_staysWithinLimit() throws Exception {
+        properties.setMaxLimit(4);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        AtomicInteger maxSeen = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        int inFlight = limiter.acquire();
+                        if (inFlight > 0) {
+                            maxSeen.accumulateAndGet(limiter.getInFlight(), Math::max);
+                            limiter.release(RTT, inFlight);
+                        }
+                    }
+                });
+            }
+        }
+
+        assertThat(maxSeen.get()).isLessThanOrEqualTo(4);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+}
@@ -0,0 +1,82 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadMonitorTest {
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private AtomicLong clock;
+    private double cpu;
+    private long poolWait;
+    private double inFlight;
+    private LoadMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        monitor = new LoadMonitor(new ConcurrencyLimitProperties.SheddingConfig(),
+                () -> cpu, () -> poolWait, () -> inFlight, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should shed one more priority class per sample while overloaded, but never critical requests")
+    void getShedLevel_overloaded_escalates() {
+        cpu = 0.95;
+
+        assertThat(monitor.getShedLevel()).isEqualTo(1);
+        assertThat(monitor.shouldShed(RequestPriority.LOW)).isTrue();
+        assertThat(monitor.shouldShed(RequestPriority.NORMAL)).isFalse();
+
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(INTERVAL);
+            monitor.getShedLevel();
+        }
+        assertThat(monitor.shouldShed(RequestPriority.HIGH)).isTrue();
+        assertThat(monitor.shouldShed(RequestPriority.CRITICAL)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should sample at most once per interval")
+    void getShedLevel_withinInterval_keepsLevel() {
+        inFlight = 0.9;
+        monitor.getShedLevel();
+        monitor.getShedLevel();
+
+        assertThat(monitor.getShedLevel()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should treat slow database connection acquisition as overload")
+    void getShedLevel_poolWait_escalates() {
+        poolWait = TimeUnit.MILLISECONDS.toNanos(80);
+
+        assertThat(monitor.getShedLevel()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should admit one more priority class per elapsed interval once the load is back to normal")
+    void getShedLevel_recovered_stepsDown() {
+        cpu = 0.95;
+        monitor.getShedLevel();
+        clock.addAndGet(INTERVAL);
+        assertThat(monitor.getShedLevel()).isEqualTo(2);
+
+        cpu = 0.5;
+        clock.addAndGet(INTERVAL);
+        assertThat(monitor.getShedLevel()).isEqualTo(1);
+
+        cpu = 0.95;
+        clock.addAndGet(INTERVAL);
+        monitor.getShedLevel();
+        cpu = 0.5;
+        clock.addAndGet(INTERVAL * 10);
+        assertThat(monitor.getShedLevel()).as("quiet period").isZero();
+    }
+}
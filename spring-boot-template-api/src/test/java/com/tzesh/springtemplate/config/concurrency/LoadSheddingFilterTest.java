@@ -0,0 +1,77 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LoadSheddingFilterTest {
+    private LoadMonitor loadMonitor;
+    private RequestPriorityResolver priorityResolver;
+    private SimpleMeterRegistry meterRegistry;
+    private LoadSheddingFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private FilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        loadMonitor = mock(LoadMonitor.class);
+        priorityResolver = mock(RequestPriorityResolver.class);
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        filter = new LoadSheddingFilter(new ConcurrencyLimitProperties(), loadMonitor, priorityResolver, meterRegistry, objectMapper);
+        request = new MockHttpServletRequest("GET", "/users");
+        response = new MockHttpServletResponse();
+        chain = mock(FilterChain.class);
+    }
+
+    @Test
+    @DisplayName("Should not resolve the priority while nothing is shed")
+    void doFilter_notOverloaded_proceeds() throws Exception {
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        verifyNoInteractions(priorityResolver);
+    }
+
+    @Test
+    @DisplayName("Should reject requests of a shed priority with 503")
+    void doFilter_shedPriority_rejects() throws Exception {
+        when(loadMonitor.getShedLevel()).thenReturn(1);
+        when(priorityResolver.resolve(request)).thenReturn(RequestPriority.LOW);
+        when(loadMonitor.shouldShed(RequestPriority.LOW)).thenReturn(true);
+
+        filter.doFilter(request, response, chain);
+
+        verify(chain, never()).doFilter(any(), any());
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(meterRegistry.get("load.shedding.rejected").tag("priority", "LOW").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should admit requests of a higher priority while lower ones are shed")
+    void doFilter_higherPriority_proceeds() throws Exception {
+        when(loadMonitor.getShedLevel()).thenReturn(1);
+        when(priorityResolver.resolve(request)).thenReturn(RequestPriority.CRITICAL);
+
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+    }
+}
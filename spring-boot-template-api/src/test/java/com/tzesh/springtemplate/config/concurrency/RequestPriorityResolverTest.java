@@ -0,0 +1,76 @@
+package com.tzesh.springtemplate.config.concurrency;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import com.tzesh.springtemplate.config.ratelimit.RateLimitDescriptor;
+import com.tzesh.springtemplate.config.ratelimit.RateLimitHandlerResolver;
+import com.tzesh.springtemplate.config.ratelimit.RateLimitPolicy;
+import com.tzesh.springtemplate.service.auth.JwtService;
+import io.jsonwebtoken.ExpiredJwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RequestPriorityResolverTest {
+    private RateLimitHandlerResolver handlerResolver;
+    private JwtService jwtService;
+    private RequestPriorityResolver resolver;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        handlerResolver = mock(RateLimitHandlerResolver.class);
+        jwtService = mock(JwtService.class);
+        resolver = new RequestPriorityResolver(new ConcurrencyLimitProperties(), handlerResolver, jwtService);
+        request = new MockHttpServletRequest("GET", "/users");
+    }
+
+    @Test
+    @DisplayName("Should use the category of the handler method")
+    void resolve_category_usesCategoryPriority() {
+        when(handlerResolver.resolve(request)).thenReturn(descriptor(RateLimitCategoryType.RELAXED));
+
+        assertThat(resolver.resolve(request)).isEqualTo(RequestPriority.LOW);
+    }
+
+    @Test
+    @DisplayName("Should use the default priority for handlers without category")
+    void resolve_noCategory_usesDefault() {
+        assertThat(resolver.resolve(request)).isEqualTo(RequestPriority.NORMAL);
+    }
+
+    @Test
+    @DisplayName("Should raise the priority for privileged roles in the access token")
+    void resolve_adminRole_raisesPriority() {
+        when(handlerResolver.resolve(request)).thenReturn(descriptor(RateLimitCategoryType.RELAXED));
+        when(jwtService.extractRole("token")).thenReturn("ADMIN");
+        request.addHeader("Authorization", "Bearer token");
+
+        assertThat(resolver.resolve(request)).isEqualTo(RequestPriority.CRITICAL);
+    }
+
+    @Test
+    @DisplayName("Should ignore the role of invalid tokens")
+    void resolve_invalidToken_ignoresRole() {
+        when(handlerResolver.resolve(request)).thenReturn(descriptor(RateLimitCategoryType.RELAXED));
+        when(jwtService.extractRole("expired")).thenThrow(new ExpiredJwtException(null, null, "expired"));
+        request.addHeader("Authorization", "Bearer expired");
+
+        assertThat(resolver.resolve(request)).isEqualTo(RequestPriority.LOW);
+    }
+
+    private static RateLimitDescriptor descriptor(RateLimitCategoryType category) {
+        return new RateLimitDescriptor("TestController.list", "RateLimitCategory(" + category + ")", category,
+                "rate_limit:TestController.list:",
+                new RateLimitPolicy(category.getLimit(), Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW),
+                RateLimitKeyStrategy.IP, "", null, 1, "");
+    }
+}
@@ -0,0 +1,69 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachedIdempotentResponseTest {
+
+    @Test
+    @DisplayName("Should round trip status, headers and body of a small response uncompressed")
+    void toBytes_small_plain() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", "/users/1");
+        headers.add(HttpHeaders.CONTENT_LENGTH, "8");
+        byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] record = new CachedIdempotentResponse(201, headers, body).toBytes(1024);
+        CachedIdempotentResponse cached = CachedIdempotentResponse.fromBytes(record);
+
+        assertThat(record[0]).isEqualTo(CachedIdempotentResponse.PLAIN);
+        assertThat(cached.statusCode()).isEqualTo(201);
+        assertThat(cached.headers().getFirst("Location")).isEqualTo("/users/1");
+        assertThat(cached.headers().containsHeader(HttpHeaders.CONTENT_LENGTH)).isFalse();
+        assertThat(cached.body()).isEqualTo(body);
+    }
+
+    @Test
+    @DisplayName("Should compress bodies above the threshold")
+    void toBytes_large_compressed() {
+        byte[] body = "{\"name\":\"user\"},".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+        byte[] record = new CachedIdempotentResponse(200, new HttpHeaders(), body).toBytes(1024);
+
+        assertThat(record[0]).isEqualTo(CachedIdempotentResponse.LZ4);
+        assertThat(record.length).isLessThan(body.length / 4);
+        assertThat(CachedIdempotentResponse.fromBytes(record).body()).isEqualTo(body);
+    }
+
+    @Test
+    @DisplayName("Should keep incompressible bodies uncompressed")
+    void toBytes_incompressible_plain() {
+        byte[] body = new byte[4096];
+        ThreadLocalRandom.current().nextBytes(body);
+
+        byte[] record = new CachedIdempotentResponse(200, new HttpHeaders(), body).toBytes(1024);
+
+        assertThat(record[0]).isEqualTo(CachedIdempotentResponse.PLAIN);
+        assertThat(CachedIdempotentResponse.fromBytes(record).body()).isEqualTo(body);
+    }
+
+    @Test
+    @DisplayName("Should reject malformed records")
+    void fromBytes_malformed_throws() {
+        byte[] body = "{\"name\":\"user\"},".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] record = new CachedIdempotentResponse(200, new HttpHeaders(), body).toBytes(1024);
+
+        assertThatThrownBy(() -> CachedIdempotentResponse.fromBytes(new byte[]{'{'}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CachedIdempotentResponse.fromBytes(Arrays.copyOf(record, record.length - 5)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
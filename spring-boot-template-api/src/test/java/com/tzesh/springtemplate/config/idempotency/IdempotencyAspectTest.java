@@ -3,18 +3,28 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tzesh.springtemplate.base.annotation.Idempotent;
 import com.tzesh.springtemplate.base.exception.IdempotencyException;
+import com.tzesh.springtemplate.base.exception.ServiceUnavailableException;
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -26,18 +36,24 @@
 
 class IdempotencyAspectTest {
     private IdempotencyAspect aspect;
-    private StringRedisTemplate redisTemplate;
-    private ValueOperations<String, String> valueOps;
+    private IdempotencyStore store;
+    private IdempotencyCompletions completions;
+    private IdempotencyLeases leases;
     private ObjectMapper objectMapper;
 
     @BeforeEach
-    @SuppressWarnings("unchecked")
     void setUp() {
-        redisTemplate = mock(StringRedisTemplate.class);
-        valueOps = mock(ValueOperations.class);
-        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        store = mock(IdempotencyStore.class);
+        completions = new IdempotencyCompletions(mock(RedisConnectionFactory.class));
+        leases = new IdempotencyLeases(store);
         objectMapper = new ObjectMapper();
-        aspect = new IdempotencyAspect(redisTemplate, objectMapper);
+        IdempotencyProperties properties = new IdempotencyProperties();
+        aspect = new IdempotencyAspect(store, completions, leases, new IdempotencyNearCache(properties), properties, objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        leases.destroy();
     }
 
     @Test
@@ -55,30 +71,29 @@ void handleIdempotent_missingKey_throwsException() {
 
     @Test
     @DisplayName("Should throw IdempotencyException when request is already in progress")
-    void handleIdempotent_inProgress_throwsException() {
+    void handleIdempotent_inProgress_throwsException() throws Throwable {
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Idempotency-Key", "test-key-123");
         RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
 
-        when(valueOps.get("idempotency:test-key-123")).thenReturn(null);
-        when(valueOps.setIfAbsent(eq("idempotency_lock:test-key-123"), eq("locked"), any(Duration.class))).thenReturn(false);
+        when(store.acquire("test-key-123")).thenReturn(new IdempotencyStore.Acquisition(null, null));
 
         ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
         Idempotent idempotent = createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key");
 
         assertThatThrownBy(() -> aspect.handleIdempotent(joinPoint, idempotent))
                 .isInstanceOf(IdempotencyException.class);
+        verify(joinPoint, never()).proceed();
     }
 
     @Test
-    @DisplayName("Should process request and cache response for new idempotency key")
-    void handleIdempotent_newKey_processesAndCaches() throws Throwable {
+    @DisplayName("Should process request and release the lock for new idempotency key")
+    void handleIdempotent_newKey_processesAndReleases() throws Throwable {
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Idempotency-Key", "new-key-456");
         RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
 
-        when(valueOps.get("idempotency:new-key-456")).thenReturn(null);
-        when(valueOps.setIfAbsent(eq("idempotency_lock:new-key-456"), eq("locked"), any(Duration.class))).thenReturn(true);
+        when(store.acquire("new-key-456")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
 
         ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
         when(joinPoint.proceed()).thenReturn("result");
@@ -88,15 +103,245 @@ void handleIdempotent_newKey_processesAndCaches() throws Throwable {
 
         assertThat(result).isEqualTo("result");
         verify(joinPoint).proceed();
-        verify(redisTemplate).delete("idempotency_lock:new-key-456");
+        verify(store).release("new-key-456", "lock:1");
+    }
+
+    @Test
+    @DisplayName("Should cache the response and release the lock in one call")
+    void handleIdempotent_responseEntity_completes() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "new-key-457");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("new-key-457")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
+        when(store.complete(eq("new-key-457"), eq("lock:1"), any(byte[].class), any(Duration.class))).thenReturn(true);
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn(ResponseEntity.status(201).header("Location", "/users/1").body(Map.of("id", 1)));
+
+        aspect.handleIdempotent(joinPoint, createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key"));
+
+        ArgumentCaptor<byte[]> value = ArgumentCaptor.forClass(byte[].class);
+        verify(store).complete(eq("new-key-457"), eq("lock:1"), value.capture(), eq(Duration.ofHours(24)));
+        CachedIdempotentResponse cached = CachedIdempotentResponse.fromBytes(value.getValue());
+        assertThat(cached.statusCode()).isEqualTo(201);
+        assertThat(cached.headers().getFirst("Location")).isEqualTo("/users/1");
+        assertThat(new String(cached.body(), StandardCharsets.UTF_8)).isEqualTo("{\"id\":1}");
+        verify(store, never()).release(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should replay retries of a response completed on this node without contacting Redis")
+    void handleIdempotent_completedLocally_replaysFromNearCache() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "local-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("local-key")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
+        when(store.complete(eq("local-key"), eq("lock:1"), any(byte[].class), any(Duration.class))).thenReturn(true);
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn(ResponseEntity.status(201).body(Map.of("id", 1)));
+        Idempotent idempotent = createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key");
+        aspect.handleIdempotent(joinPoint, idempotent);
+
+        Object result = aspect.handleIdempotent(joinPoint, idempotent);
+
+        assertThat(result).isInstanceOfSatisfying(ResponseEntity.class, response -> {
+            assertThat(response.getStatusCode().value()).isEqualTo(201);
+            assertThat(response.getBody()).isEqualTo(bytes("{\"id\":1}"));
+        });
+        verify(store).acquire("local-key");
+        verify(joinPoint).proceed();
+    }
+
+    @Test
+    @DisplayName("Should not cache a response locally when the lock was lost")
+    void handleIdempotent_lockLost_notCachedLocally() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "lost-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("lost-key")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn(ResponseEntity.ok("first"));
+        Idempotent idempotent = createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key");
+        aspect.handleIdempotent(joinPoint, idempotent);
+
+        aspect.handleIdempotent(joinPoint, idempotent);
+
+        verify(store, times(2)).acquire("lost-key");
+    }
+
+    @Test
+    @DisplayName("Should neither cache the response nor release the lock once the lease has lost it")
+    void handleIdempotent_leaseLost_skipsCompletion() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "expired-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        CountDownLatch renewed = new CountDownLatch(1);
+        when(store.acquire("expired-key")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
+        when(store.renew("expired-key", "lock:1")).thenReturn(false);
+        IdempotencyLeases renewingLeases = new IdempotencyLeases(store, Duration.ofMillis(1),
+                Executors.newSingleThreadScheduledExecutor(), renewal -> {
+                    renewal.run();
+                    renewed.countDown();
+                });
+        IdempotencyProperties properties = new IdempotencyProperties();
+        IdempotencyAspect renewingAspect = new IdempotencyAspect(store, completions, renewingLeases,
+                new IdempotencyNearCache(properties), properties, objectMapper);
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenAnswer(invocation -> {
+            assertThat(renewed.await(5, TimeUnit.SECONDS)).isTrue();
+            return ResponseEntity.ok("late");
+        });
+
+        try {
+            Object result = renewingAspect.handleIdempotent(joinPoint, createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key"));
+
+            assertThat(result).isInstanceOf(ResponseEntity.class);
+            verify(store, never()).complete(anyString(), anyString(), any(byte[].class), any(Duration.class));
+            verify(store, never()).release(anyString(), anyString());
+        } finally {
+            renewingLeases.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should replay the stored body bytes without processing the request")
+    void handleIdempotent_completed_replays() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "done-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", "/users/1");
+        byte[] body = bytes("{\"id\":1}");
+        when(store.acquire("done-key")).thenReturn(new IdempotencyStore.Acquisition(null,
+                new CachedIdempotentResponse(201, headers, body).toBytes(-1)));
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        Object result = aspect.handleIdempotent(joinPoint, createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key"));
+
+        assertThat(result).isInstanceOfSatisfying(ResponseEntity.class, response -> {
+            assertThat(response.getStatusCode().value()).isEqualTo(201);
+            assertThat(response.getHeaders().getFirst("Location")).isEqualTo("/users/1");
+            assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+            assertThat(response.getBody()).isEqualTo(body);
+        });
+        verify(joinPoint, never()).proceed();
+    }
+
+    @Test
+    @DisplayName("Should replay responses cached as JSON by earlier versions")
+    void handleIdempotent_legacyJson_replays() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "old-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("old-key")).thenReturn(new IdempotencyStore.Acquisition(null,
+                "{\"statusCode\":201,\"body\":\"{\\\"id\\\":1}\"}".getBytes(StandardCharsets.UTF_8)));
+
+        Object result = aspect.handleIdempotent(mock(ProceedingJoinPoint.class), createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key"));
+
+        assertThat(result).isInstanceOfSatisfying(ResponseEntity.class, response -> {
+            assertThat(response.getStatusCode().value()).isEqualTo(201);
+            assertThat(response.getBody()).isEqualTo(bytes("{\"id\":1}"));
+        });
+    }
+
+    @Test
+    @DisplayName("Should wait for the call in progress and replay its response")
+    void handleIdempotent_inProgressWithWait_replaysCompletedResponse() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "busy-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("busy-key"))
+                .thenAnswer(invocation -> {
+                    // the first call completes right after the lookup
+                    completions.completed("busy-key");
+                    return new IdempotencyStore.Acquisition(null, null);
+                })
+                .thenReturn(new IdempotencyStore.Acquisition(null,
+                        new CachedIdempotentResponse(200, new HttpHeaders(), bytes("\"done\"")).toBytes(-1)));
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        Object result = aspect.handleIdempotent(joinPoint, createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key", 10_000));
+
+        assertThat(result).isInstanceOfSatisfying(ResponseEntity.class, response -> assertThat(response.getBody()).isEqualTo(bytes("\"done\"")));
+        verify(store, times(2)).acquire("busy-key");
+        verify(joinPoint, never()).proceed();
+    }
+
+    @Test
+    @DisplayName("Should reject a waiting request once the maximum wait has passed")
+    void handleIdempotent_waitExceeded_throwsException() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "slow-key");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("slow-key")).thenReturn(new IdempotencyStore.Acquisition(null, null));
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        Idempotent idempotent = createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key", 50);
+
+        assertThatThrownBy(() -> aspect.handleIdempotent(joinPoint, idempotent))
+                .isInstanceOf(IdempotencyException.class);
+        verify(store, times(2)).acquire("slow-key");
+        verify(joinPoint, never()).proceed();
+    }
+
+    @Test
+    @DisplayName("Should reject the request with ServiceUnavailableException when Redis is unavailable")
+    void handleIdempotent_redisDown_failsClosed() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "key-789");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("key-789")).thenThrow(new RedisUnavailableException("Redis connection refused"));
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        Idempotent idempotent = createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key");
+
+        assertThatThrownBy(() -> aspect.handleIdempotent(joinPoint, idempotent))
+                .isInstanceOf(ServiceUnavailableException.class);
+        verify(joinPoint, never()).proceed();
+    }
+
+    @Test
+    @DisplayName("Should return the result when the lock cannot be released after processing")
+    void handleIdempotent_releaseFails_returnsResult() throws Throwable {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Idempotency-Key", "key-790");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        when(store.acquire("key-790")).thenReturn(new IdempotencyStore.Acquisition("lock:1", null));
+        when(store.release("key-790", "lock:1")).thenThrow(new RedisUnavailableException("Redis connection refused"));
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenReturn("result");
+
+        Object result = aspect.handleIdempotent(joinPoint, createIdempotent(24, TimeUnit.HOURS, "Idempotency-Key"));
+
+        assertThat(result).isEqualTo("result");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 
     private Idempotent createIdempotent(long ttl, TimeUnit timeUnit, String headerName) {
+        return createIdempotent(ttl, timeUnit, headerName, 0);
+    }
+
+    private Idempotent createIdempotent(long ttl, TimeUnit timeUnit, String headerName, long maxWaitMillis) {
         return new Idempotent() {
             @Override public Class<? extends Annotation> annotationType() { return Idempotent.class; }
             @Override public long ttl() { return ttl; }
             @Override public TimeUnit timeUnit() { return timeUnit; }
             @Override public String headerName() { return headerName; }
+            @Override public long maxWaitMillis() { return maxWaitMillis; }
         };
     }
 }
@@ -0,0 +1,47 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class IdempotencyCompletionsTest {
+    private final IdempotencyCompletions completions = new IdempotencyCompletions(mock(RedisConnectionFactory.class));
+
+    @Test
+    @DisplayName("Should wake up every waiter of a published key")
+    void onMessage_wakesUpWaitersOfKey() {
+        CompletableFuture<Void> first = completions.register("key");
+        CompletableFuture<Void> second = completions.register("key");
+        CompletableFuture<Void> other = completions.register("other");
+
+        completions.onMessage(new DefaultMessage(bytes(IdempotencyStore.COMPLETION_CHANNEL), bytes("idempotency:key")), null);
+
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        assertThat(other).isNotCompleted();
+    }
+
+    @Test
+    @DisplayName("Should not wake up waiters that have unregistered")
+    void unregister_removesWaiter() {
+        CompletableFuture<Void> gone = completions.register("key");
+        CompletableFuture<Void> waiting = completions.register("key");
+
+        completions.unregister("key", gone);
+        completions.completed("key");
+
+        assertThat(gone).isNotCompleted();
+        assertThat(waiting).isCompleted();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
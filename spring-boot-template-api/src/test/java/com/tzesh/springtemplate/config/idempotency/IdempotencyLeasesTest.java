@@ -0,0 +1,98 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import com.tzesh.springtemplate.config.redis.RedisUnavailableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class IdempotencyLeasesTest {
+    private IdempotencyStore store;
+    private ScheduledExecutorService watchdog;
+    private ScheduledFuture<?> renewal;
+    private IdempotencyLeases leases;
+
+    @BeforeEach
+    void setUp() {
+        store = mock(IdempotencyStore.class);
+        watchdog = mock(ScheduledExecutorService.class);
+        renewal = mock(ScheduledFuture.class);
+        doReturn(renewal).when(watchdog).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        // renewals run on the calling thread, each scheduled one is run by runScheduled
+        leases = new IdempotencyLeases(store, Duration.ofSeconds(10), watchdog, Runnable::run);
+    }
+
+    @Test
+    @DisplayName("Should schedule the next renewal only once the previous one has completed")
+    void start_running_renewsOneAfterAnother() {
+        when(store.renew("key", "lock:1")).thenReturn(true);
+
+        IdempotencyLeases.Lease lease = leases.start("key", "lock:1");
+        runScheduled(1);
+        runScheduled(2);
+
+        verify(store, times(2)).renew("key", "lock:1");
+        verify(watchdog, times(3)).schedule(any(Runnable.class), eq(10000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(lease.isLost()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should not renew a closed lease")
+    void close_cancelsRenewal() {
+        IdempotencyLeases.Lease lease = leases.start("key", "lock:1");
+
+        lease.close();
+        runScheduled(1);
+
+        verify(renewal).cancel(false);
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    @DisplayName("Should stop renewing a lock taken by another call")
+    void start_lockLost_stopsRenewing() {
+        when(store.renew("key", "lock:1")).thenReturn(false);
+
+        IdempotencyLeases.Lease lease = leases.start("key", "lock:1");
+        runScheduled(1);
+
+        verify(store, times(1)).renew("key", "lock:1");
+        verify(watchdog, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        verify(renewal).cancel(false);
+        assertThat(lease.isLost()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should keep renewing while Redis is unavailable")
+    void start_redisUnavailable_keepsRenewing() {
+        when(store.renew("key", "lock:1"))
+                .thenThrow(new RedisUnavailableException("idempotency", new RuntimeException("down")))
+                .thenReturn(true);
+
+        IdempotencyLeases.Lease lease = leases.start("key", "lock:1");
+        runScheduled(1);
+        runScheduled(2);
+
+        verify(store, times(2)).renew("key", "lock:1");
+        assertThat(lease.isLost()).isFalse();
+    }
+
+    /**
+     * Run the renewal scheduled last, after the given number of schedules
+     */
+    private void runScheduled(int schedules) {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(watchdog, times(schedules)).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyNearCacheTest {
+    private IdempotencyProperties.NearCacheConfig config;
+    private AtomicLong clock;
+    private IdempotencyNearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        config = new IdempotencyProperties.NearCacheConfig();
+        config.setMaxSize(DataSize.ofKilobytes(4));
+        config.setTtl(Duration.ofSeconds(30));
+        clock = new AtomicLong();
+        nearCache = new IdempotencyNearCache(config, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should return a cached record until its TTL expires")
+    void get_withinTtl_returnsRecord() {
+        byte[] record = {1, 2, 3};
+        nearCache.put("key", record, Duration.ofHours(24));
+
+        assertThat(nearCache.get("key")).isEqualTo(record);
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertThat(nearCache.get("key")).isNull();
+        assertThat(nearCache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not keep a record longer than it is cached in Redis")
+    void put_shorterRedisTtl_expiresWithRedis() {
+        nearCache.put("key", new byte[]{1}, Duration.ofSeconds(5));
+
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        assertThat(nearCache.get("key")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should evict the oldest records to stay within the maximum size")
+    void put_full_evictsOldest() {
+        for (int i = 0; i < 4; i++) {
+            nearCache.put("key-" + i, new byte[1000], Duration.ofHours(24));
+        }
+
+        assertThat(nearCache.get("key-0")).isNull();
+        assertThat(nearCache.get("key-1")).isNotNull();
+        assertThat(nearCache.get("key-3")).isNotNull();
+        assertThat(nearCache.size()).isLessThanOrEqualTo(config.getMaxSize().toBytes());
+    }
+
+    @Test
+    @DisplayName("Should count a replaced record once")
+    void put_sameKey_replaced() {
+        nearCache.put("key", new byte[100], Duration.ofHours(24));
+        long size = nearCache.size();
+
+        nearCache.put("key", new byte[100], Duration.ofHours(24));
+
+        assertThat(nearCache.size()).isEqualTo(size);
+    }
+
+    @Test
+    @DisplayName("Should skip records larger than the cache and cache nothing when disabled")
+    void put_oversizedOrDisabled_skipped() {
+        nearCache.put("large", new byte[5000], Duration.ofHours(24));
+        config.setEnabled(false);
+        nearCache.put("key", new byte[]{1}, Duration.ofHours(24));
+
+        assertThat(nearCache.get("large")).isNull();
+        config.setEnabled(true);
+        assertThat(nearCache.get("key")).isNull();
+        assertThat(nearCache.size()).isZero();
+    }
+}
@@ -0,0 +1,105 @@
+package com.tzesh.springtemplate.config.idempotency;
+
+import com.tzesh.springtemplate.config.redis.RedisGuard;
+import com.tzesh.springtemplate.config.redis.RedisGuardProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IdempotencyStoreTest {
+    private StringRedisTemplate redisTemplate;
+    private IdempotencyStore store;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        store = new IdempotencyStore(redisTemplate, new RedisGuard(new RedisGuardProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("Should hand out the lock when the script took it for the caller")
+    void acquire_unknownKey_locked() {
+        when(redisTemplate.execute(eq(IdempotencyStore.ACQUIRE_SCRIPT), anySerializer(), anySerializer(), eq(List.of("idempotency:key")), any(), eq(bytes("30000"))))
+                .thenAnswer(invocation -> invocation.getArgument(4));
+
+        IdempotencyStore.Acquisition acquisition = store.acquire("key");
+
+        assertThat(acquisition.acquired()).isTrue();
+        assertThat(acquisition.lock()).startsWith("lock:");
+        assertThat(acquisition.completed()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should report a key locked by another call as in progress")
+    void acquire_lockedByOther_inProgress() {
+        when(redisTemplate.execute(eq(IdempotencyStore.ACQUIRE_SCRIPT), anySerializer(), anySerializer(), anyList(), any(), any())).thenReturn(bytes("lock:other"));
+
+        IdempotencyStore.Acquisition acquisition = store.acquire("key");
+
+        assertThat(acquisition.acquired()).isFalse();
+        assertThat(acquisition.completed()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should return the cached response of a completed key")
+    void acquire_completed_returnsResponse() {
+        byte[] record = new CachedIdempotentResponse(200, new HttpHeaders(), bytes("{}")).toBytes(-1);
+        when(redisTemplate.execute(eq(IdempotencyStore.ACQUIRE_SCRIPT), anySerializer(), anySerializer(), anyList(), any(), any())).thenReturn(record);
+
+        IdempotencyStore.Acquisition acquisition = store.acquire("key");
+
+        assertThat(acquisition.acquired()).isFalse();
+        assertThat(acquisition.response()).isEqualTo(record);
+    }
+
+    @Test
+    @DisplayName("Should store the response with its TTL and notify waiters only while the lock is held")
+    void complete_passesLockAndTtl() {
+        byte[] response = {1, 2, 3};
+        when(redisTemplate.execute(eq(IdempotencyStore.COMPLETE_SCRIPT), anySerializer(), anySerializer(), eq(List.of("idempotency:key")),
+                eq(bytes("lock:1")), eq(response), eq(bytes("60000")), eq(bytes(IdempotencyStore.COMPLETION_CHANNEL))))
+                .thenReturn(1L);
+
+        assertThat(store.complete("key", "lock:1", response, Duration.ofMinutes(1))).isTrue();
+        assertThat(store.complete("key", "lock:2", response, Duration.ofMinutes(1))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should release the lock by comparing it with the stored value")
+    void release_comparesLock() {
+        when(redisTemplate.execute(eq(IdempotencyStore.RELEASE_SCRIPT), eq(List.of("idempotency:key")), any(), any())).thenReturn(1L);
+
+        assertThat(store.release("key", "lock:1")).isTrue();
+        verify(redisTemplate).execute(IdempotencyStore.RELEASE_SCRIPT, List.of("idempotency:key"), "lock:1", IdempotencyStore.COMPLETION_CHANNEL);
+    }
+
+    @Test
+    @DisplayName("Should renew the lock by comparing it with the stored value")
+    void renew_comparesLock() {
+        when(redisTemplate.execute(IdempotencyStore.RENEW_SCRIPT, List.of("idempotency:key"), "lock:1", "30000")).thenReturn(1L);
+
+        assertThat(store.renew("key", "lock:1")).isTrue();
+        assertThat(store.renew("key", "lock:2")).isFalse();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static <T> RedisSerializer<T> anySerializer() {
+        return any();
+    }
+}
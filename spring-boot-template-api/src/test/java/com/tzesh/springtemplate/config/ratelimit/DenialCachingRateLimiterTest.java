@@ -0,0 +1,129 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DenialCachingRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(10, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private RateLimiter delegate;
+    private RateLimitProperties.DenialCacheConfig config;
+    private AtomicLong clock;
+    private DenialCachingRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(RateLimiter.class);
+        config = new RateLimitProperties.DenialCacheConfig();
+        clock = new AtomicLong();
+        rateLimiter = new DenialCachingRateLimiter(delegate, config, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should reject a blocked key locally until its window resets")
+    void tryAcquire_blockedKey_rejectsWithoutDelegate() {
+        when(delegate.tryAcquire("key", POLICY, 1)).thenReturn(new RateLimitResult(false, 10, 0, 5000, 5000));
+
+        rateLimiter.tryAcquire("key", POLICY);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(2000));
+        RateLimitResult result = rateLimiter.tryAcquire("key", POLICY);
+
+        assertThat(result.allowed()).isFalse();
+        assertThat(result.retryAfterMillis()).isEqualTo(3000);
+        verify(delegate, times(1)).tryAcquire("key", POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest denial instead of keeping more than configured")
+    void tryAcquire_tooManyDenials_dropsOldest() {
+        config.setMaxEntries(2);
+        when(delegate.tryAcquire(anyString(), eq(POLICY), eq(1L))).thenReturn(new RateLimitResult(false, 10, 0, 5000, 5000));
+
+        for (String key : List.of("a", "b", "c", "a", "c")) {
+            rateLimiter.tryAcquire(key, POLICY);
+        }
+
+        verify(delegate, times(2)).tryAcquire("a", POLICY, 1);
+        verify(delegate, times(1)).tryAcquire("c", POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should pass requests cheaper than the denied one to the delegate")
+    void tryAcquire_cheaperThanDenied_delegates() {
+        when(delegate.tryAcquire("key", POLICY, 5)).thenReturn(new RateLimitResult(false, 10, 2, 5000, 5000));
+        when(delegate.tryAcquire("key", POLICY, 2)).thenReturn(new RateLimitResult(true, 10, 0, 5000, 0));
+
+        rateLimiter.tryAcquire("key", POLICY, 5);
+
+        assertThat(rateLimiter.tryAcquire("key", POLICY, 8).allowed()).isFalse();
+        assertThat(rateLimiter.tryAcquire("key", POLICY, 2).allowed()).isTrue();
+        verify(delegate, times(1)).tryAcquire("key", POLICY, 5);
+        verify(delegate, never()).tryAcquire("key", POLICY, 8);
+    }
+
+    @Test
+    @DisplayName("Should ask the delegate again once the block has expired")
+    void tryAcquire_blockExpired_delegates() {
+        when(delegate.tryAcquire("key", POLICY, 1))
+                .thenReturn(new RateLimitResult(false, 10, 0, 5000, 5000), new RateLimitResult(true, 10, 9, 60000, 0));
+
+        rateLimiter.tryAcquire("key", POLICY);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(5000));
+
+        assertThat(rateLimiter.tryAcquire("key", POLICY).allowed()).isTrue();
+        verify(delegate, times(2)).tryAcquire("key", POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should not cache allowed results")
+    void tryAcquire_allowed_notCached() {
+        when(delegate.tryAcquire("key", POLICY, 1)).thenReturn(new RateLimitResult(true, 10, 9, 60000, 0));
+
+        rateLimiter.tryAcquire("key", POLICY);
+        rateLimiter.tryAcquire("key", POLICY);
+
+        verify(delegate, times(2)).tryAcquire("key", POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should always delegate when disabled")
+    void tryAcquire_disabled_delegates() {
+        config.setEnabled(false);
+        when(delegate.tryAcquire("key", POLICY, 1)).thenReturn(new RateLimitResult(false, 10, 0, 5000, 5000));
+
+        rateLimiter.tryAcquire("key", POLICY);
+        rateLimiter.tryAcquire("key", POLICY);
+
+        verify(delegate, times(2)).tryAcquire("key", POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should forward only keys that are not blocked in a batch")
+    void tryAcquireAll_blockedKey_notForwarded() {
+        when(delegate.tryAcquire("blocked", POLICY, 1)).thenReturn(new RateLimitResult(false, 10, 0, 5000, 5000));
+        RateLimitResult open = new RateLimitResult(true, 10, 9, 60000, 0);
+        when(delegate.tryAcquireAll(List.of(new RateLimitCheck("open", POLICY)))).thenReturn(List.of(open));
+        rateLimiter.tryAcquire("blocked", POLICY);
+
+        List<RateLimitResult> results = rateLimiter.tryAcquireAll(List.of(
+                new RateLimitCheck("blocked", POLICY),
+                new RateLimitCheck("open", POLICY)
+        ));
+
+        assertThat(results.get(0).allowed()).isFalse();
+        assertThat(results.get(1)).isEqualTo(open);
+        verify(delegate).tryAcquireAll(List.of(new RateLimitCheck("open", POLICY)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class FallbackRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(10, Duration.ofMinutes(1), RateLimitAlgorithm.SLIDING_WINDOW);
+
+    private RateLimiter delegate;
+    private RateLimiter local;
+    private AtomicBoolean redisUp;
+    private FallbackRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(RateLimiter.class);
+        local = mock(RateLimiter.class);
+        redisUp = new AtomicBoolean(false);
+
+        RateLimitProperties.FallbackConfig config = new RateLimitProperties.FallbackConfig();
+        config.setFailureThreshold(2);
+        config.setEstimatedNodes(3);
+        config.setProbeInterval(Duration.ofHours(1));
+        rateLimiter = new FallbackRateLimiter(delegate, local, redisUp::get, config);
+
+        when(delegate.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong())).thenThrow(new RuntimeException("Redis connection refused"));
+        when(local.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong())).thenReturn(new RateLimitResult(true, 4, 3, 60000, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimiter.close();
+    }
+
+    @Test
+    @DisplayName("Should propagate failures below the threshold")
+    void tryAcquire_belowThreshold_throws() {
+        assertThatThrownBy(() -> rateLimiter.tryAcquire("key", POLICY)).isInstanceOf(RuntimeException.class);
+
+        assertThat(rateLimiter.isDegraded()).isFalse();
+        verifyNoInteractions(local);
+    }
+
+    @Test
+    @DisplayName("Should switch to local limits divided by the estimated node count at the threshold")
+    void tryAcquire_atThreshold_switchesToLocal() {
+        assertThatThrownBy(() -> rateLimiter.tryAcquire("key", POLICY)).isInstanceOf(RuntimeException.class);
+
+        RateLimitResult result = rateLimiter.tryAcquire("key", POLICY);
+        rateLimiter.tryAcquire("key", POLICY);
+
+        assertThat(result.allowed()).isTrue();
+        assertThat(rateLimiter.isDegraded()).isTrue();
+        verify(delegate, times(2)).tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong());
+        verify(local, times(2)).tryAcquire("key", new RateLimitPolicy(4, POLICY.window(), POLICY.algorithm()), 1);
+    }
+
+    @Test
+    @DisplayName("Should evaluate batches locally while degraded")
+    void tryAcquireAll_degraded_usesLocal() {
+        degrade();
+
+        List<RateLimitResult> results = rateLimiter.tryAcquireAll(List.of(
+                new RateLimitCheck("a", POLICY),
+                new RateLimitCheck("b", POLICY)
+        ));
+
+        assertThat(results).hasSize(2).allMatch(RateLimitResult::allowed);
+        verify(delegate, never()).tryAcquireAll(any());
+    }
+
+    @Test
+    @DisplayName("Should switch back to Redis once a probe succeeds")
+    void probe_redisBack_switchesBack() {
+        degrade();
+        rateLimiter.probeIfDegraded();
+        assertThat(rateLimiter.isDegraded()).isTrue();
+
+        redisUp.set(true);
+        rateLimiter.probeIfDegraded();
+
+        assertThat(rateLimiter.isDegraded()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should reset the failure count after a success")
+    void tryAcquire_success_resetsFailures() {
+        RateLimitResult allowed = new RateLimitResult(true, 10, 9, 60000, 0);
+        reset(delegate);
+        when(delegate.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenThrow(new RuntimeException("timeout"))
+                .thenReturn(allowed)
+                .thenThrow(new RuntimeException("timeout"));
+
+        assertThatThrownBy(() -> rateLimiter.tryAcquire("key", POLICY)).isInstanceOf(RuntimeException.class);
+        assertThat(rateLimiter.tryAcquire("key", POLICY)).isEqualTo(allowed);
+        assertThatThrownBy(() -> rateLimiter.tryAcquire("key", POLICY)).isInstanceOf(RuntimeException.class);
+
+        assertThat(rateLimiter.isDegraded()).isFalse();
+    }
+
+    private void degrade() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                rateLimiter.tryAcquire("key", POLICY);
+            } catch (RuntimeException ignored) {
+                // below the threshold
+            }
+        }
+        assertThat(rateLimiter.isDegraded()).isTrue();
+    }
+}
@@ -0,0 +1,125 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import com.tzesh.springtemplate.config.redis.RedisGuard;
+import com.tzesh.springtemplate.config.redis.RedisGuardProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares counting the global limit in the {@link IpCounterTable} against a {@code ConcurrentHashMap<String, AtomicLong>}
+ * keyed like the Redis keys and against the {@link RedisRateLimiter}, with four threads spread over 4096 addresses.
+ * The Redis benchmark needs a running Redis, by default on localhost:6379, e.g. {@code docker compose up -d redis};
+ * run it alone with {@code -Dbenchmark.redis.host=<host>} if Redis runs elsewhere, or exclude it with a regex.
+ * Run with
+ * {@code mvn install -DskipTests} followed by
+ * {@code mvn -pl spring-boot-template-api exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main GlobalRateLimitBenchmark -prof gc"}
+ *
+ * @author tzesh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class GlobalRateLimitBenchmark {
+    private static final int ADDRESSES = 4096;
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(1_000_000_000, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private final String[] addresses = new String[ADDRESSES];
+    private final IpCounterTable table = new IpCounterTable(ADDRESSES * 4, 32, POLICY);
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = i % 8 == 0
+                    ? "2001:db8::" + Integer.toHexString(i)
+                    : "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+        }
+    }
+
+    @Benchmark
+    public long localTable(Client client) {
+        return table.tryAcquire(addresses[client.next()], System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public long concurrentHashMap(Client client) {
+        String address = addresses[client.next()];
+        return counters.computeIfAbsent("rate_limit:global:" + address, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Benchmark
+    public RateLimitResult redis(Client client, RedisState redis) {
+        return redis.rateLimiter.tryAcquire("rate_limit:global:" + addresses[client.next()], POLICY);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GlobalRateLimitBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private int index;
+
+        @Setup
+        public void setUp() {
+            index = (int) (Thread.currentThread().threadId() * 7919);
+        }
+
+        int next() {
+            index = (index + 1) & (ADDRESSES - 1);
+            return index;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RedisState {
+        private LettuceConnectionFactory connectionFactory;
+        private RedisRateLimiter rateLimiter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            connectionFactory = new LettuceConnectionFactory(
+                    System.getProperty("benchmark.redis.host", "localhost"),
+                    Integer.getInteger("benchmark.redis.port", 6379));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            rateLimiter = new RedisRateLimiter(new StringRedisTemplate(connectionFactory),
+                    new RedisGuard(new RedisGuardProperties(), new SimpleMeterRegistry()));
+            rateLimiter.preloadScripts();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            connectionFactory.destroy();
+        }
+    }
+}
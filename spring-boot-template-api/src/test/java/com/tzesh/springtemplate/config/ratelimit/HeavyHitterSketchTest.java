@@ -0,0 +1,73 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHitterSketchTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    @DisplayName("Should find the heaviest keys among many light ones")
+    void record_skewedTraffic_findsHeavyHitters() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(3, 1024, 4, MINUTE, clock::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            sketch.record("light-" + i, 1);
+            if (i % 10 == 0) {
+                sketch.record("heavy", 1);
+            }
+            if (i % 20 == 0) {
+                sketch.record("medium", 1);
+            }
+        }
+
+        assertThat(sketch.top()).hasSize(3);
+        assertThat(sketch.top().get(0).key()).isEqualTo("heavy");
+        assertThat(sketch.top().get(0).count()).isGreaterThanOrEqualTo(1000);
+        assertThat(sketch.top().get(1).key()).isEqualTo("medium");
+    }
+
+    @Test
+    @DisplayName("Should weight keys and never underestimate them")
+    void record_weighted_neverUnderestimates() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(2, 64, 4, MINUTE, clock::get);
+
+        sketch.record("a", 5);
+        sketch.record("b", 2);
+        sketch.record("a", 5);
+
+        assertThat(sketch.top()).extracting(HeavyHitterSketch.HeavyHitter::key).containsExactly("a", "b");
+        assertThat(sketch.top().get(0).count()).isGreaterThanOrEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should tell apart keys with the same hash code")
+    void record_sameHashCode_countedSeparately() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(2, 64, 4, MINUTE, clock::get, 42);
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        sketch.record("Aa", 100);
+
+        assertThat(sketch.record("BB", 1)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should halve counts once per decay interval")
+    void record_afterDecayInterval_halvesCounts() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(2, 64, 4, MINUTE, clock::get);
+        sketch.record("a", 8);
+        sketch.record("b", 1);
+
+        clock.addAndGet(MINUTE);
+        sketch.record("c", 1);
+
+        assertThat(sketch.top()).containsExactly(new HeavyHitterSketch.HeavyHitter("a", 4), new HeavyHitterSketch.HeavyHitter("c", 1));
+    }
+}
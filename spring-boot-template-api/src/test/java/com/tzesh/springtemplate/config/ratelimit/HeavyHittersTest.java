@@ -0,0 +1,34 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHittersTest {
+
+    @Test
+    @DisplayName("Should publish the estimated count of every rank, highest first, without tagging the keys")
+    void registerGauges_publishesCountsByRank() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getHeavyHitters().setTopK(3);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HeavyHitters heavyHitters = new HeavyHitters(properties, meterRegistry);
+        heavyHitters.recordUser("alice", 5);
+        heavyHitters.recordUser("bob", 9);
+
+        assertThat(rank(meterRegistry, "user", 1)).isEqualTo(9);
+        assertThat(rank(meterRegistry, "user", 2)).isEqualTo(5);
+        assertThat(rank(meterRegistry, "user", 3)).isZero();
+        assertThat(rank(meterRegistry, "ip", 1)).isZero();
+        assertThat(meterRegistry.get("ratelimit.heavy.hitters").gauges()).hasSize(6);
+    }
+
+    private static double rank(SimpleMeterRegistry meterRegistry, String dimension, int rank) {
+        return meterRegistry.get("ratelimit.heavy.hitters")
+                .tag("dimension", dimension)
+                .tag("rank", String.valueOf(rank))
+                .gauge().value();
+    }
+}
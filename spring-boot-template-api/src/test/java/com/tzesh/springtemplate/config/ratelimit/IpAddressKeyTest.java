@@ -0,0 +1,39 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressKeyTest {
+
+    @Test
+    @DisplayName("Should pack IPv4 addresses as IPv4-mapped IPv6 addresses")
+    void ipv4_packedAsMapped() {
+        assertThat(IpAddressKey.high("10.0.0.1")).isZero();
+        assertThat(IpAddressKey.low("10.0.0.1")).isEqualTo(0xFFFF_0A00_0001L);
+        assertThat(IpAddressKey.low("::ffff:10.0.0.1")).isEqualTo(IpAddressKey.low("10.0.0.1"));
+        assertThat(IpAddressKey.high("::ffff:10.0.0.1")).isZero();
+    }
+
+    @Test
+    @DisplayName("Should split IPv6 addresses into their high and low 64 bits")
+    void ipv6_splitIntoHalves() {
+        assertThat(IpAddressKey.high("2001:db8::1")).isEqualTo(0x2001_0DB8_0000_0000L);
+        assertThat(IpAddressKey.low("2001:db8::1")).isEqualTo(1L);
+        assertThat(IpAddressKey.high("2001:db8:0:0:0:0:0:1")).isEqualTo(IpAddressKey.high("2001:db8::1"));
+        assertThat(IpAddressKey.low("fe80::1:2%eth0")).isEqualTo(0x0000_0000_0001_0002L);
+        assertThat(IpAddressKey.low("::1")).isEqualTo(1L);
+        assertThat(IpAddressKey.high("1::")).isEqualTo(0x0001_0000_0000_0000L);
+        assertThat(IpAddressKey.low("1:2:3:4:5:6:7:8")).isEqualTo(0x0005_0006_0007_0008L);
+    }
+
+    @Test
+    @DisplayName("Should key malformed addresses by their hash under the invalid prefix")
+    void malformed_keyedByHash() {
+        for (String address : new String[]{"unknown", "256.0.0.1", "1.2.3", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::", ":1::"}) {
+            assertThat(IpAddressKey.high(address)).as(address).isEqualTo(IpAddressKey.INVALID_HIGH);
+            assertThat(IpAddressKey.low(address)).as(address).isEqualTo(address.hashCode());
+        }
+    }
+}
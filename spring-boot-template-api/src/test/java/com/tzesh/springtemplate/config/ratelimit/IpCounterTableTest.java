@@ -0,0 +1,97 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpCounterTableTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(3, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    @DisplayName("Should count each address separately and reject over the limit")
+    void tryAcquire_countsPerAddress() {
+        IpCounterTable table = new IpCounterTable(16, 16, POLICY);
+
+        assertThat(table.tryAcquire(0, 1, NOW)).isEqualTo(2);
+        assertThat(table.tryAcquire(0, 1, NOW)).isEqualTo(1);
+        assertThat(table.tryAcquire(0, 1, NOW)).isEqualTo(0);
+        assertThat(table.tryAcquire(0, 1, NOW)).isEqualTo(IpCounterTable.REJECTED);
+        assertThat(table.tryAcquire(0, 2, NOW)).isEqualTo(2);
+        assertThat(table.tryAcquire(1, 1, NOW)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should count both notations of an IPv4 address under one key")
+    void tryAcquire_textualAddress_sharesMappedKey() {
+        IpCounterTable table = new IpCounterTable(16, 16, POLICY);
+
+        assertThat(table.tryAcquire("10.0.0.1", NOW)).isEqualTo(2);
+        assertThat(table.tryAcquire("::ffff:10.0.0.1", NOW)).isEqualTo(1);
+        assertThat(table.tryAcquire("2001:db8::1", NOW)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should start counting again once the window resets")
+    void tryAcquire_nextWindow_resets() {
+        IpCounterTable table = new IpCounterTable(16, 16, POLICY);
+        for (int i = 0; i < 3; i++) {
+            table.tryAcquire(0, 1, NOW);
+        }
+
+        long nextWindow = NOW + table.resetMillis(NOW);
+
+        assertThat(table.tryAcquire(0, 1, nextWindow - 1)).isEqualTo(IpCounterTable.REJECTED);
+        assertThat(table.tryAcquire(0, 1, nextWindow)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should reuse slots of previous windows and fail open when every slot is in use")
+    void tryAcquire_fullTable_reusesStaleSlotsOrFailsOpen() {
+        IpCounterTable table = new IpCounterTable(2, 2, POLICY);
+        table.tryAcquire(0, 1, NOW);
+        table.tryAcquire(0, 2, NOW);
+
+        assertThat(table.tryAcquire(0, 3, NOW)).isEqualTo(3);
+        assertThat(table.tryAcquire(0, 3, NOW + 60_000)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should not lose or double count requests of concurrent threads")
+    void tryAcquire_concurrent_countsExactly() throws InterruptedException {
+        IpCounterTable table = new IpCounterTable(64, 64,
+                new RateLimitPolicy(1001, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW));
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    if (table.tryAcquire(0, i % 4, NOW) != IpCounterTable.REJECTED) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(allowed.get()).isEqualTo(4000);
+        for (int key = 0; key < 4; key++) {
+            assertThat(table.tryAcquire(0, key, NOW)).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LeasingRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(100, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private RedisRateLimiter redisRateLimiter;
+    private RateLimitProperties.LeaseConfig config;
+    private AtomicLong clock;
+    private LeasingRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        redisRateLimiter = mock(RedisRateLimiter.class);
+        config = new RateLimitProperties.LeaseConfig();
+        config.setEnabled(true);
+        clock = new AtomicLong();
+        rateLimiter = new LeasingRateLimiter(redisRateLimiter, config, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should serve a leased block locally without further Redis calls")
+    void tryAcquire_servesLeaseLocally() {
+        when(redisRateLimiter.lease("key", POLICY, 10)).thenReturn(new RateLimitLease(10, 90, 60000));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.tryAcquire("key", POLICY).allowed()).isTrue();
+        }
+
+        verify(redisRateLimiter, times(1)).lease("key", POLICY, 10);
+        verify(redisRateLimiter, never()).tryAcquire(any(), any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should lease a new block once the current one is used up")
+    void tryAcquire_renewsExhaustedLease() {
+        when(redisRateLimiter.lease("key", POLICY, 10))
+                .thenReturn(new RateLimitLease(10, 90, 60000), new RateLimitLease(10, 80, 59000));
+
+        for (int i = 0; i < 11; i++) {
+            rateLimiter.tryAcquire("key", POLICY);
+        }
+
+        verify(redisRateLimiter, times(2)).lease("key", POLICY, 10);
+    }
+
+    @Test
+    @DisplayName("Should take the cost of a request from the lease and lease larger blocks for expensive requests")
+    void tryAcquire_withCost_takesCostFromLease() {
+        when(redisRateLimiter.lease("key", POLICY, 10)).thenReturn(new RateLimitLease(10, 90, 60000));
+        when(redisRateLimiter.lease("key", POLICY, 25)).thenReturn(new RateLimitLease(25, 65, 60000));
+
+        assertThat(rateLimiter.tryAcquire("key", POLICY, 4).remaining()).isEqualTo(96);
+        assertThat(rateLimiter.tryAcquire("key", POLICY, 6).remaining()).isEqualTo(90);
+        assertThat(rateLimiter.tryAcquire("key", POLICY, 25).remaining()).isEqualTo(65);
+
+        verify(redisRateLimiter, times(1)).lease("key", POLICY, 10);
+        verify(redisRateLimiter, times(1)).lease("key", POLICY, 25);
+    }
+
+    @Test
+    @DisplayName("Should reject when the distributed window has no quota left")
+    void tryAcquire_windowExhausted_rejects() {
+        when(redisRateLimiter.lease("key", POLICY, 10)).thenReturn(new RateLimitLease(0, 0, 15000));
+
+        RateLimitResult result = rateLimiter.tryAcquire("key", POLICY);
+
+        assertThat(result.allowed()).isFalse();
+        assertThat(result.retryAfterMillis()).isEqualTo(15000);
+    }
+
+    @Test
+    @DisplayName("Should drop the local lease when the window resets")
+    void tryAcquire_expiredLease_leasesAgain() {
+        when(redisRateLimiter.lease("key", POLICY, 10)).thenReturn(new RateLimitLease(10, 90, 1000));
+
+        rateLimiter.tryAcquire("key", POLICY);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+        rateLimiter.tryAcquire("key", POLICY);
+
+        verify(redisRateLimiter, times(2)).lease("key", POLICY, 10);
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest lease instead of keeping more than configured")
+    void tryAcquire_tooManyKeys_dropsOldest() {
+        config.setMaxKeys(2);
+        when(redisRateLimiter.lease(anyString(), eq(POLICY), eq(10L))).thenReturn(new RateLimitLease(10, 90, 60000));
+
+        for (String key : List.of("a", "b", "c", "a", "c")) {
+            rateLimiter.tryAcquire(key, POLICY);
+        }
+
+        verify(redisRateLimiter, times(2)).lease("a", POLICY, 10);
+        verify(redisRateLimiter, times(1)).lease("c", POLICY, 10);
+    }
+
+    @Test
+    @DisplayName("Should pass through keys that are not eligible for leasing")
+    void tryAcquire_ineligible_delegates() {
+        RateLimitPolicy small = new RateLimitPolicy(10, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+        RateLimitPolicy gcra = new RateLimitPolicy(100, Duration.ofMinutes(1), RateLimitAlgorithm.GCRA);
+        when(redisRateLimiter.tryAcquire(eq("key"), any(), anyLong())).thenReturn(new RateLimitResult(true, 10, 9, 60000, 0));
+
+        rateLimiter.tryAcquire("key", small);
+        rateLimiter.tryAcquire("key", gcra);
+
+        verify(redisRateLimiter, times(2)).tryAcquire(eq("key"), any(), anyLong());
+        verify(redisRateLimiter, never()).lease(any(), any(), anyLong());
+    }
+}
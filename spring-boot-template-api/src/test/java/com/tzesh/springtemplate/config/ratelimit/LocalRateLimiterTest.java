@@ -0,0 +1,61 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(2, Duration.ofSeconds(10), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private AtomicLong clock;
+    private LocalRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        rateLimiter = new LocalRateLimiter(2, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should reject requests over the limit until the window resets")
+    void tryAcquire_overLimit_rejectsUntilReset() {
+        assertThat(rateLimiter.tryAcquire("key", POLICY)).isEqualTo(new RateLimitResult(true, 2, 1, 10000, 0));
+        assertThat(rateLimiter.tryAcquire("key", POLICY).allowed()).isTrue();
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertThat(rateLimiter.tryAcquire("key", POLICY)).isEqualTo(new RateLimitResult(false, 2, 0, 6000, 6000));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertThat(rateLimiter.tryAcquire("key", POLICY).allowed()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should charge the cost of a request and refund it when rejected")
+    void tryAcquire_withCost_chargesCost() {
+        RateLimitPolicy policy = new RateLimitPolicy(10, POLICY.window(), POLICY.algorithm());
+
+        assertThat(rateLimiter.tryAcquire("key", policy, 6)).isEqualTo(new RateLimitResult(true, 10, 4, 10000, 0));
+        assertThat(rateLimiter.tryAcquire("key", policy, 5)).isEqualTo(new RateLimitResult(false, 10, 4, 10000, 10000));
+        assertThat(rateLimiter.tryAcquire("key", policy, 4)).isEqualTo(new RateLimitResult(true, 10, 0, 10000, 0));
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest key instead of tracking more keys than configured")
+    void tryAcquire_tooManyKeys_dropsOldest() {
+        rateLimiter.tryAcquire("a", POLICY);
+        rateLimiter.tryAcquire("a", POLICY);
+        rateLimiter.tryAcquire("b", POLICY);
+
+        rateLimiter.tryAcquire("c", POLICY);
+        rateLimiter.tryAcquire("c", POLICY);
+        assertThat(rateLimiter.tryAcquire("c", POLICY).allowed()).isFalse();
+        assertThat(rateLimiter.tryAcquire("a", POLICY).allowed()).isTrue();
+    }
+}
@@ -0,0 +1,86 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedIpCounterStoreTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(3, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+    private static final long NOW = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should keep counting where the previous store stopped")
+    void reopen_sameLayout_recoversCounters() throws IOException {
+        Path file = directory.resolve("counters.bin");
+        MappedIpCounterStore store = new MappedIpCounterStore(file, 16, 16, POLICY);
+        store.tryAcquire("10.0.0.1", NOW);
+        store.tryAcquire("10.0.0.1", NOW);
+        store.close();
+
+        try (MappedIpCounterStore reopened = new MappedIpCounterStore(file, 16, 16, POLICY)) {
+            assertThat(reopened.tryAcquire("10.0.0.1", NOW)).isEqualTo(0);
+            assertThat(reopened.tryAcquire("10.0.0.1", NOW)).isEqualTo(IpCounterStore.REJECTED);
+            assertThat(reopened.tryAcquire("10.0.0.2", NOW)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Should clear a counter file of another layout")
+    void reopen_otherWindow_clearsCounters() throws IOException {
+        Path file = directory.resolve("counters.bin");
+        MappedIpCounterStore store = new MappedIpCounterStore(file, 16, 16, POLICY);
+        store.tryAcquire("10.0.0.1", NOW);
+        store.close();
+
+        try (MappedIpCounterStore reopened = new MappedIpCounterStore(file, 16, 16,
+                new RateLimitPolicy(3, Duration.ofMinutes(5), RateLimitAlgorithm.FIXED_WINDOW))) {
+            assertThat(reopened.tryAcquire("10.0.0.1", NOW)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Should release slots left claimed by a crash")
+    void reopen_claimedSlot_released() throws IOException {
+        Path file = directory.resolve("counters.bin");
+        new MappedIpCounterStore(file, 2, 2, POLICY).close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer claimed = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder()).putLong(IpCounterStore.CLAIMED).flip();
+            // state word of the first slot, behind the 64 byte header
+            channel.write(claimed, 64 + 2 * Long.BYTES);
+        }
+
+        try (MappedIpCounterStore reopened = new MappedIpCounterStore(file, 2, 2, POLICY)) {
+            assertThat(reopened.tryAcquire("10.0.0.1", NOW)).isEqualTo(2);
+            assertThat(reopened.tryAcquire("10.0.0.2", NOW)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Should refuse a counter file that is already mapped")
+    void open_locked_fails() throws IOException {
+        Path file = directory.resolve("counters.bin");
+        MappedIpCounterStore store = new MappedIpCounterStore(file, 16, 16, POLICY);
+        try {
+            assertThatThrownBy(() -> new MappedIpCounterStore(file, 16, 16, POLICY))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("in use");
+        } finally {
+            store.close();
+        }
+    }
+}
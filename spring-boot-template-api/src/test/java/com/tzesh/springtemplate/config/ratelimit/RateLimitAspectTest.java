@@ -1,44 +1,54 @@
 package com.tzesh.springtemplate.config.ratelimit;
 
 import com.tzesh.springtemplate.base.annotation.RateLimit;
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
 import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import com.tzesh.springtemplate.base.annotation.RateLimitMode;
 import com.tzesh.springtemplate.base.exception.RateLimitExceededException;
+import com.tzesh.springtemplate.base.response.RateLimitHeaders;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.lang.annotation.Annotation;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class RateLimitAspectTest {
     private RateLimitAspect aspect;
-    private StringRedisTemplate redisTemplate;
-    private ValueOperations<String, String> valueOps;
+    private RateLimiter rateLimiter;
+    private RateLimitRegistry registry;
+    private HeavyHitters heavyHitters;
+    private MockHttpServletRequest request;
 
     @BeforeEach
-    @SuppressWarnings("unchecked")
     void setUp() {
-        redisTemplate = mock(StringRedisTemplate.class);
-        valueOps = mock(ValueOperations.class);
-        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        rateLimiter = mock(RateLimiter.class);
 
         RateLimitProperties properties = new RateLimitProperties();
-        aspect = new RateLimitAspect(redisTemplate, properties);
+        registry = new RateLimitRegistry(new DefaultListableBeanFactory(), properties);
+        heavyHitters = new HeavyHitters(properties.getHeavyHitters(), System::nanoTime);
+        aspect = new RateLimitAspect(rateLimiter, registry, heavyHitters);
 
-        MockHttpServletRequest request = new MockHttpServletRequest();
+        request = new MockHttpServletRequest();
         request.setRemoteAddr("127.0.0.1");
         RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
     }
@@ -46,13 +56,13 @@ void setUp() {
     @Test
     @DisplayName("Should allow request within rate limit")
     void handleRateLimit_withinLimit_proceeds() throws Throwable {
-        when(valueOps.increment(anyString())).thenReturn(1L);
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 10, 9, 60000, 0));
 
-        ProceedingJoinPoint joinPoint = mockJoinPoint();
+        ProceedingJoinPoint joinPoint = mockJoinPoint("testMethod");
         when(joinPoint.proceed()).thenReturn("success");
 
-        RateLimit rateLimit = createRateLimit(10, 1, TimeUnit.MINUTES, RateLimitKeyStrategy.IP, "");
-        Object result = aspect.handleRateLimit(joinPoint, rateLimit);
+        Object result = aspect.handleRateLimit(joinPoint);
 
         assertThat(result).isEqualTo("success");
         verify(joinPoint).proceed();
@@ -60,47 +70,254 @@ void handleRateLimit_withinLimit_proceeds() throws Throwable {
 
     @Test
     @DisplayName("Should block request exceeding rate limit")
-    void handleRateLimit_exceedsLimit_throwsException() {
-        when(valueOps.increment(anyString())).thenReturn(11L);
+    void handleRateLimit_exceedsLimit_throwsException() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(false, 10, 0, 30000, 30000));
 
-        ProceedingJoinPoint joinPoint = mockJoinPoint();
-        RateLimit rateLimit = createRateLimit(10, 1, TimeUnit.MINUTES, RateLimitKeyStrategy.IP, "");
+        ProceedingJoinPoint joinPoint = mockJoinPoint("testMethod");
 
-        assertThatThrownBy(() -> aspect.handleRateLimit(joinPoint, rateLimit))
+        assertThatThrownBy(() -> aspect.handleRateLimit(joinPoint))
                 .isInstanceOf(RateLimitExceededException.class);
+        verify(joinPoint, never()).proceed();
+    }
+
+    @Test
+    @DisplayName("Should reject with the state of the exceeded limit for the rate limit headers")
+    void handleRateLimit_exceedsLimit_carriesLimitState() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(false, 10, 0, 30000, 12000));
+
+        assertThatThrownBy(() -> aspect.handleRateLimit(mockJoinPoint("testMethod")))
+                .isInstanceOfSatisfying(RateLimitExceededException.class, e -> {
+                    assertThat(e.getLimit()).isEqualTo(10);
+                    assertThat(e.getResetMillis()).isEqualTo(30000);
+                    assertThat(e.getRetryAfterMillis()).isEqualTo(12000);
+                });
+    }
+
+    @Test
+    @DisplayName("Should send the rate limit headers of a more restrictive method limit")
+    void handleRateLimit_withinLimit_writesHeaders() throws Throwable {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setHeader(RateLimitHeaders.REMAINING, "50");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 10, 9, 60000, 0));
+
+        aspect.handleRateLimit(mockJoinPoint("testMethod"));
+
+        assertThat(response.getHeader(RateLimitHeaders.LIMIT)).isEqualTo("10");
+        assertThat(response.getHeader(RateLimitHeaders.REMAINING)).isEqualTo("9");
+        assertThat(response.getHeader(RateLimitHeaders.RESET)).isEqualTo("60");
+        assertThat(response.getHeader("Retry-After")).isNull();
     }
 
     @Test
     @DisplayName("Should fail open when Redis is unavailable")
     void handleRateLimit_redisDown_failsOpen() throws Throwable {
-        when(valueOps.increment(anyString())).thenThrow(new RuntimeException("Redis connection refused"));
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenThrow(new RuntimeException("Redis connection refused"));
+
+        ProceedingJoinPoint joinPoint = mockJoinPoint("testMethod");
+        when(joinPoint.proceed()).thenReturn("success");
+
+        Object result = aspect.handleRateLimit(joinPoint);
+
+        assertThat(result).isEqualTo("success");
+    }
+
+    @Test
+    @DisplayName("Should evaluate the limit with the algorithm declared on the annotation")
+    void handleRateLimit_usesDeclaredAlgorithm() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 10, 9, 6000, 0));
+
+        aspect.handleRateLimit(mockJoinPoint("gcraMethod"));
+
+        ArgumentCaptor<RateLimitPolicy> policy = ArgumentCaptor.forClass(RateLimitPolicy.class);
+        verify(rateLimiter).tryAcquire(eq("rate_limit:" + TestController.class.getName() + ".gcraMethod:gcra:127.0.0.1"), policy.capture(), eq(1L));
+        assertThat(policy.getValue().algorithm()).isEqualTo(RateLimitAlgorithm.GCRA);
+        assertThat(policy.getValue().limit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should key the limit by the evaluated expression for custom keys")
+    void handleRateLimit_customKey_usesExpression() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 5, 4, 60000, 0));
+
+        ProceedingJoinPoint joinPoint = mockJoinPoint("customKeyMethod", String.class);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{"acme"});
+        aspect.handleRateLimit(joinPoint);
+
+        verify(rateLimiter).tryAcquire(eq("rate_limit:" + TestController.class.getName() + ".customKeyMethod:fixed_window:acme"), any(RateLimitPolicy.class), eq(1L));
+    }
+
+    @Test
+    @DisplayName("Should charge the cost declared on the annotation")
+    void handleRateLimit_fixedCost_chargesCost() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 10, 7, 60000, 0));
+
+        aspect.handleRateLimit(mockJoinPoint("expensiveMethod"));
+
+        verify(rateLimiter).tryAcquire(anyString(), any(RateLimitPolicy.class), eq(3L));
+    }
+
+    @Test
+    @DisplayName("Should charge the evaluated cost expression, at least one unit")
+    void handleRateLimit_costExpression_chargesEvaluatedCost() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 100, 50, 60000, 0));
+
+        ProceedingJoinPoint large = mockJoinPoint("pagedMethod", int.class);
+        when(large.getArgs()).thenReturn(new Object[]{50});
+        aspect.handleRateLimit(large);
+        ProceedingJoinPoint empty = mockJoinPoint("pagedMethod", int.class);
+        when(empty.getArgs()).thenReturn(new Object[]{0});
+        aspect.handleRateLimit(empty);
 
-        ProceedingJoinPoint joinPoint = mockJoinPoint();
+        verify(rateLimiter).tryAcquire(anyString(), any(RateLimitPolicy.class), eq(50L));
+        verify(rateLimiter).tryAcquire(anyString(), any(RateLimitPolicy.class), eq(1L));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the fixed cost when the cost expression yields no value")
+    void handleRateLimit_nullCostExpression_chargesFixedCost() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 100, 98, 60000, 0));
+
+        ProceedingJoinPoint joinPoint = mockJoinPoint("pagedMethod", int.class);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{null});
+        aspect.handleRateLimit(joinPoint);
+
+        verify(rateLimiter).tryAcquire(anyString(), any(RateLimitPolicy.class), eq(2L));
+    }
+
+    @Test
+    @DisplayName("Should use the verdict evaluated by the filter instead of calling Redis again")
+    void handleRateLimit_preEvaluated_skipsRedis() throws Throwable {
+        ProceedingJoinPoint joinPoint = mockJoinPoint("testMethod");
+        RateLimitDescriptor descriptor = registry.getDescriptor(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), TestController.class);
+        request.setAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE,
+                new RateLimitingFilter.PreEvaluatedRateLimit(descriptor, new RateLimitResult(false, 10, 0, 30000, 30000)));
+
+        assertThatThrownBy(() -> aspect.handleRateLimit(joinPoint))
+                .isInstanceOf(RateLimitExceededException.class);
+        verifyNoInteractions(rateLimiter);
+        assertThat(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should park calls over a delayed limit until their reserved slot instead of rejecting them")
+    void handleRateLimit_delayMode_parksUntilSlot() throws Throwable {
+        when(rateLimiter.reserve(anyString(), any(RateLimitPolicy.class), anyLong(), any(Duration.class)))
+                .thenReturn(new RateLimitReservation(true, 50, 0));
+        ProceedingJoinPoint joinPoint = mockJoinPoint("delayedMethod");
         when(joinPoint.proceed()).thenReturn("success");
 
-        RateLimit rateLimit = createRateLimit(10, 1, TimeUnit.MINUTES, RateLimitKeyStrategy.IP, "");
-        Object result = aspect.handleRateLimit(joinPoint, rateLimit);
+        long start = System.nanoTime();
+        Object result = aspect.handleRateLimit(joinPoint);
 
         assertThat(result).isEqualTo("success");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+        assertThat(request.getAttribute(RateLimitAspect.DELAYED_MILLIS_ATTRIBUTE)).isEqualTo(50L);
+        verify(rateLimiter).reserve(eq("rate_limit:" + TestController.class.getName() + ".delayedMethod:leaky_bucket:127.0.0.1"),
+                any(RateLimitPolicy.class), eq(1L), eq(Duration.ofMillis(500)));
+        verify(rateLimiter, never()).tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong());
     }
 
-    private ProceedingJoinPoint mockJoinPoint() {
+    @Test
+    @DisplayName("Should reject delayed calls whose slot starts after the maximum wait")
+    void handleRateLimit_delayModeQueueFull_throwsException() throws Throwable {
+        when(rateLimiter.reserve(anyString(), any(RateLimitPolicy.class), anyLong(), any(Duration.class)))
+                .thenReturn(new RateLimitReservation(false, 0, 200));
+        ProceedingJoinPoint joinPoint = mockJoinPoint("delayedMethod");
+
+        assertThatThrownBy(() -> aspect.handleRateLimit(joinPoint))
+                .isInstanceOf(RateLimitExceededException.class);
+        verify(joinPoint, never()).proceed();
+        RateLimitDescriptor descriptor = registry.getDescriptor(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), TestController.class);
+        assertThat(descriptor.delay().getQueued()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reject delayed calls without reserving a slot while the queue of this node is full")
+    void handleRateLimit_delayModeLocalQueueFull_throwsException() throws Throwable {
+        ProceedingJoinPoint joinPoint = mockJoinPoint("delayedMethod");
+        RateLimitDelay delay = registry.getDescriptor(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), TestController.class).delay();
+        for (int i = 0; i < delay.getMaxQueued(); i++) {
+            delay.tryEnter();
+        }
+
+        assertThatThrownBy(() -> aspect.handleRateLimit(joinPoint))
+                .isInstanceOf(RateLimitExceededException.class);
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    @DisplayName("Should count users of limits keyed by user as heavy hitters, weighted by cost")
+    void handleRateLimit_userKeyed_recordsHeavyHitter() throws Throwable {
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 10, 9, 60000, 0));
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alice", null, List.of()));
+        try {
+            aspect.handleRateLimit(mockJoinPoint("userKeyedMethod"));
+            aspect.handleRateLimit(mockJoinPoint("testMethod"));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        assertThat(heavyHitters.topUsers()).containsExactly(new HeavyHitterSketch.HeavyHitter("alice", 4));
+    }
+
+    private ProceedingJoinPoint mockJoinPoint(String methodName, Class<?>... parameterTypes) {
         ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
         MethodSignature signature = mock(MethodSignature.class);
-        when(signature.getDeclaringTypeName()).thenReturn("TestController");
-        when(signature.getName()).thenReturn("testMethod");
+        when(signature.getMethod()).thenReturn(ReflectionUtils.findMethod(TestController.class, methodName, parameterTypes));
         when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getTarget()).thenReturn(new TestController());
         return joinPoint;
     }
 
-    private RateLimit createRateLimit(int limit, int duration, TimeUnit timeUnit, RateLimitKeyStrategy key, String keyExpression) {
-        return new RateLimit() {
-            @Override public Class<? extends Annotation> annotationType() { return RateLimit.class; }
-            @Override public int limit() { return limit; }
-            @Override public int duration() { return duration; }
-            @Override public TimeUnit timeUnit() { return timeUnit; }
-            @Override public RateLimitKeyStrategy key() { return key; }
-            @Override public String keyExpression() { return keyExpression; }
-        };
+    static class TestController {
+        @RateLimit(limit = 10)
+        public String testMethod() {
+            return "success";
+        }
+
+        @RateLimit(limit = 10, algorithm = RateLimitAlgorithm.GCRA)
+        public String gcraMethod() {
+            return "success";
+        }
+
+        @RateLimit(limit = 5, key = RateLimitKeyStrategy.CUSTOM, keyExpression = "#tenantId")
+        public String customKeyMethod(String tenantId) {
+            return "success";
+        }
+
+        @RateLimit(limit = 10, cost = 3)
+        public String expensiveMethod() {
+            return "success";
+        }
+
+        @RateLimit(limit = 100, cost = 2, costExpression = "#pageSize")
+        public String pagedMethod(int pageSize) {
+            return "success";
+        }
+
+        @RateLimit(limit = 10, cost = 4, key = RateLimitKeyStrategy.USER)
+        public String userKeyedMethod() {
+            return "success";
+        }
+
+        @RateLimit(limit = 10, mode = RateLimitMode.DELAY, maxWaitMillis = 500, maxQueued = 2)
+        public String delayedMethod() {
+            return "success";
+        }
     }
 }
@@ -0,0 +1,49 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitKeyEncodingTest {
+
+    @Test
+    @DisplayName("Should keep readable keys unchanged")
+    void readable_unchanged() {
+        assertThat(RateLimitKeyEncoding.READABLE.prefix("UserController.createUser", RateLimitKeyType.FIXED_WINDOW))
+                .isEqualTo("rate_limit:UserController.createUser:fixed_window:");
+        assertThat(RateLimitKeyEncoding.READABLE.client("10.0.0.1")).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    @DisplayName("Should derive a short prefix that is stable for a name and differs between names")
+    void compactPrefix_shortAndStable() {
+        String prefix = RateLimitKeyEncoding.COMPACT.prefix("UserController.createUser", RateLimitKeyType.FIXED_WINDOW);
+
+        assertThat(prefix).startsWith("rl:").endsWith(":f:").hasSize(14);
+        assertThat(RateLimitKeyEncoding.COMPACT.prefix("UserController.createUser", RateLimitKeyType.FIXED_WINDOW)).isSameAs(prefix);
+        assertThat(RateLimitKeyEncoding.COMPACT.prefix("UserController.deleteUser", RateLimitKeyType.FIXED_WINDOW)).isNotEqualTo(prefix);
+    }
+
+    @Test
+    @DisplayName("Should give every key type of a limit its own prefix")
+    void prefix_perKeyType() {
+        for (RateLimitKeyEncoding encoding : RateLimitKeyEncoding.values()) {
+            assertThat(Arrays.stream(RateLimitKeyType.values()).map(type -> encoding.prefix("global", type)).distinct())
+                    .hasSize(RateLimitKeyType.values().length);
+        }
+    }
+
+    @Test
+    @DisplayName("Should encode addresses in binary and hash anything else")
+    void compactClient_binaryAddressesAndHashes() {
+        assertThat(RateLimitKeyEncoding.COMPACT.client("10.0.0.1")).isEqualTo("CgAAAQ");
+        assertThat(RateLimitKeyEncoding.COMPACT.client("2001:db8::1")).hasSize(22)
+                .isEqualTo(RateLimitKeyEncoding.COMPACT.client("2001:0db8:0:0:0:0:0:1"));
+        assertThat(RateLimitKeyEncoding.COMPACT.client("alice")).hasSize(16)
+                .isEqualTo(RateLimitKeyEncoding.COMPACT.client("alice"))
+                .isNotEqualTo(RateLimitKeyEncoding.COMPACT.client("bob"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares CUSTOM rate limit key evaluation with a cached, compiled expression against parsing the expression
+ * and building a {@link MethodBasedEvaluationContext} on every call.
+ * Run with
+ * {@code mvn install -DskipTests} followed by
+ * {@code mvn -pl spring-boot-template-api exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main RateLimitKeyExpressionBenchmark -prof gc"}
+ *
+ * @author tzesh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitKeyExpressionBenchmark {
+    private static final String EXPRESSION = "#tenantId + ':' + #request.name";
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer discoverer = new DefaultParameterNameDiscoverer();
+    private final RateLimitKeyExpressionEvaluator evaluator = new RateLimitKeyExpressionEvaluator();
+
+    private TenantController target;
+    private Method method;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        target = new TenantController();
+        method = TenantController.class.getMethod("createTenant", String.class, TenantRequest.class);
+        args = new Object[]{"tenant-42", new TenantRequest("acme")};
+    }
+
+    @Benchmark
+    public String parsedPerCall() {
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(target, method, args, discoverer);
+        return parser.parseExpression(EXPRESSION).getValue(context, String.class);
+    }
+
+    @Benchmark
+    public String cachedCompiled() {
+        return evaluator.evaluate(EXPRESSION, method, TenantController.class, target, args);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RateLimitKeyExpressionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class TenantController {
+        public String createTenant(String tenantId, TenantRequest request) {
+            return tenantId + request.getName();
+        }
+    }
+
+    public static class TenantRequest {
+        private final String name;
+
+        public TenantRequest(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitKeyExpressionEvaluatorTest {
+    private final RateLimitKeyExpressionEvaluator evaluator = new RateLimitKeyExpressionEvaluator();
+
+    @Test
+    @DisplayName("Should resolve arguments by name and by index")
+    void evaluate_resolvesArguments() throws NoSuchMethodException {
+        Method method = TenantService.class.getMethod("create", String.class, int.class);
+        Object[] args = {"acme", 7};
+
+        assertThat(evaluate("#tenant + ':' + #size", method, args)).isEqualTo("acme:7");
+        assertThat(evaluate("#p0 + ':' + #a1", method, args)).isEqualTo("acme:7");
+    }
+
+    @Test
+    @DisplayName("Should keep returning correct keys once the expression is compiled")
+    void evaluate_compiledExpression_staysCorrect() throws NoSuchMethodException {
+        Method method = TenantService.class.getMethod("create", String.class, int.class);
+
+        for (int i = 0; i < 500; i++) {
+            assertThat(evaluate("#tenant", method, new Object[]{"tenant-" + i, i})).isEqualTo("tenant-" + i);
+        }
+    }
+
+    private String evaluate(String expression, Method method, Object[] args) {
+        return evaluator.evaluate(expression, method, TenantService.class, new TenantService(), args);
+    }
+
+    public static class TenantService {
+        public String create(String tenant, int size) {
+            return tenant + size;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimit;
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import com.tzesh.springtemplate.base.annotation.RateLimitCategory;
+import com.tzesh.springtemplate.base.annotation.RateLimitCategoryType;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import com.tzesh.springtemplate.base.annotation.RateLimitMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitRegistryTest {
+    private RateLimitRegistry registry;
+    private DefaultListableBeanFactory beanFactory;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getStrict().setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+
+        beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("categorizedController", new RootBeanDefinition(CategorizedController.class));
+        registry = new RateLimitRegistry(beanFactory, properties);
+    }
+
+    @Test
+    @DisplayName("Should register every rate limited method of the scanned beans at startup")
+    void afterSingletonsInstantiated_registersAnnotatedMethods() {
+        registry.afterSingletonsInstantiated();
+
+        assertThat(registry.getDescriptors())
+                .extracting(RateLimitDescriptor::methodKey)
+                .containsExactly(
+                        CategorizedController.class.getName() + ".categorized",
+                        CategorizedController.class.getName() + ".custom",
+                        CategorizedController.class.getName() + ".delayed",
+                        CategorizedController.class.getName() + ".relaxed"
+                );
+    }
+
+    @Test
+    @DisplayName("Should prefer RateLimit over a class level category")
+    void getDescriptor_rateLimit_overridesCategory() {
+        RateLimitDescriptor descriptor = registry.getDescriptor(method("custom"), CategorizedController.class);
+
+        assertThat(descriptor.source()).isEqualTo("RateLimit");
+        assertThat(descriptor.category()).as("category still applies as priority").isEqualTo(RateLimitCategoryType.STRICT);
+        assertThat(descriptor.policy()).isEqualTo(new RateLimitPolicy(5, Duration.ofSeconds(10), RateLimitAlgorithm.GCRA));
+        assertThat(descriptor.keyStrategy()).isEqualTo(RateLimitKeyStrategy.USER);
+    }
+
+    @Test
+    @DisplayName("Should prefer a method level category over a class level category")
+    void getDescriptor_methodCategory_overridesClassCategory() {
+        RateLimitDescriptor descriptor = registry.getDescriptor(method("relaxed"), CategorizedController.class);
+
+        assertThat(descriptor.source()).isEqualTo("RateLimitCategory(RELAXED)");
+        assertThat(descriptor.category()).isEqualTo(RateLimitCategoryType.RELAXED);
+        assertThat(descriptor.policy().limit()).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("Should resolve class level categories from the configured properties")
+    void getDescriptor_classCategory_usesProperties() {
+        RateLimitDescriptor descriptor = registry.getDescriptor(method("categorized"), CategorizedController.class);
+
+        assertThat(descriptor.source()).isEqualTo("RateLimitCategory(STRICT)");
+        assertThat(descriptor.policy()).isEqualTo(new RateLimitPolicy(10, Duration.ofMinutes(1), RateLimitAlgorithm.SLIDING_WINDOW));
+        assertThat(descriptor.keyStrategy()).isEqualTo(RateLimitKeyStrategy.IP_AND_USER);
+    }
+
+    @Test
+    @DisplayName("Should carry the bounds of delayed limits and none for rejecting ones")
+    void getDescriptor_delayMode_carriesBounds() {
+        RateLimitDescriptor delayed = registry.getDescriptor(method("delayed"), CategorizedController.class);
+
+        assertThat(delayed.delay().getMaxWait()).isEqualTo(Duration.ofMillis(250));
+        assertThat(delayed.delay().getMaxQueued()).isEqualTo(20);
+        assertThat(registry.getDescriptor(method("custom"), CategorizedController.class).delay()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should precompute an interned key prefix once per method")
+    void getDescriptor_cachesDescriptor() {
+        registry.afterSingletonsInstantiated();
+
+        RateLimitDescriptor first = registry.getDescriptor(method("custom"), CategorizedController.class);
+        RateLimitDescriptor second = registry.getDescriptor(method("custom"), CategorizedController.class);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.keyPrefix())
+                .isEqualTo("rate_limit:" + CategorizedController.class.getName() + ".custom:gcra:")
+                .isSameAs(first.keyPrefix().intern());
+    }
+
+    @Test
+    @DisplayName("Should return null for methods without rate limit annotations and not list them")
+    void getDescriptor_notAnnotated_returnsNull() {
+        Method method = ReflectionUtils.findMethod(PlainController.class, "plain");
+
+        assertThat(registry.getDescriptor(method, PlainController.class)).isNull();
+        assertThat(registry.getDescriptor(method, PlainController.class)).isNull();
+        assertThat(registry.getDescriptors()).isEmpty();
+    }
+
+    @RateLimitCategory(value = RateLimitCategoryType.STRICT, key = RateLimitKeyStrategy.IP_AND_USER)
+    static class CategorizedController {
+        public String categorized() {
+            return "success";
+        }
+
+        @RateLimitCategory(RateLimitCategoryType.RELAXED)
+        public String relaxed() {
+            return "success";
+        }
+
+        @RateLimit(limit = 5, duration = 10, timeUnit = TimeUnit.SECONDS, key = RateLimitKeyStrategy.USER, algorithm = RateLimitAlgorithm.GCRA)
+        public String custom() {
+            return "success";
+        }
+
+        @RateLimit(limit = 50, mode = RateLimitMode.DELAY, maxWaitMillis = 250, maxQueued = 20)
+        public String delayed() {
+            return "success";
+        }
+    }
+
+    static class PlainController {
+        public String plain() {
+            return "success";
+        }
+    }
+
+    private static Method method(String name) {
+        return ReflectionUtils.findMethod(CategorizedController.class, name);
+    }
+}
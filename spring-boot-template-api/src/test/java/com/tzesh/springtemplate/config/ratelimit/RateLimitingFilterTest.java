@@ -2,6 +2,9 @@
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tzesh.springtemplate.base.annotation.RateLimit;
+import com.tzesh.springtemplate.base.annotation.RateLimitKeyStrategy;
+import com.tzesh.springtemplate.base.annotation.RateLimitMode;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,25 +12,41 @@
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class RateLimitingFilterTest {
     private RateLimitingFilter filter;
-    private StringRedisTemplate redisTemplate;
-    private ValueOperations<String, String> valueOps;
+    private RateLimiter rateLimiter;
+    private RateLimitRegistry registry;
+    private HandlerMapping handlerMapping;
+    private HeavyHitters heavyHitters;
 
     @BeforeEach
-    @SuppressWarnings("unchecked")
     void setUp() {
-        redisTemplate = mock(StringRedisTemplate.class);
-        valueOps = mock(ValueOperations.class);
-        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        rateLimiter = mock(RateLimiter.class);
+        registry = new RateLimitRegistry(new DefaultListableBeanFactory(), new RateLimitProperties());
+        handlerMapping = mock(HandlerMapping.class);
+        heavyHitters = new HeavyHitters(new RateLimitProperties.HeavyHitterConfig(), System::nanoTime);
 
         RateLimitProperties properties = new RateLimitProperties();
         properties.setEnabled(true);
@@ -36,7 +55,7 @@ void setUp() {
 
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
-        filter = new RateLimitingFilter(redisTemplate, properties, objectMapper);
+        filter = new RateLimitingFilter(rateLimiter, new RateLimitHandlerResolver(registry, handlerMapping), heavyHitters, properties, objectMapper);
     }
 
     @Test
@@ -46,12 +65,14 @@ void allowsRequestsWithinLimit() throws IOException, ServletException {
         HttpServletResponse response = mock(HttpServletResponse.class);
         FilterChain chain = mock(FilterChain.class);
         when(request.getRemoteAddr()).thenReturn("127.0.0.1");
-        when(valueOps.increment(anyString())).thenReturn(1L, 2L);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:127.0.0.1"), any(RateLimitPolicy.class)))
+                .thenReturn(allowed(1), allowed(0));
 
         filter.doFilter(request, response, chain);
         filter.doFilter(request, response, chain);
 
         verify(chain, times(2)).doFilter(request, response);
+        assertThat(heavyHitters.topClientIps()).containsExactly(new HeavyHitterSketch.HeavyHitter("127.0.0.1", 2));
     }
 
     @Test
@@ -63,7 +84,8 @@ void blocksRequestsOverLimit() throws IOException, ServletException {
         PrintWriter writer = mock(PrintWriter.class);
         when(request.getRemoteAddr()).thenReturn("192.168.1.1");
         when(response.getWriter()).thenReturn(writer);
-        when(valueOps.increment(anyString())).thenReturn(1L, 2L, 3L);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:192.168.1.1"), any(RateLimitPolicy.class)))
+                .thenReturn(allowed(1), allowed(0), rejected());
 
         filter.doFilter(request, response, chain);
         filter.doFilter(request, response, chain);
@@ -71,6 +93,8 @@ void blocksRequestsOverLimit() throws IOException, ServletException {
 
         verify(chain, times(2)).doFilter(request, response);
         verify(response, times(1)).setStatus(429);
+        verify(response).setHeader("Retry-After", "60");
+        verify(response, times(3)).setHeader("RateLimit-Limit", "2");
         verify(response, times(1)).setContentType("application/json");
         verify(writer, times(1)).write(anyString());
     }
@@ -82,7 +106,7 @@ void passesThrough_whenDisabled() throws IOException, ServletException {
         properties.setEnabled(false);
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
-        RateLimitingFilter disabledFilter = new RateLimitingFilter(redisTemplate, properties, mapper);
+        RateLimitingFilter disabledFilter = new RateLimitingFilter(rateLimiter, new RateLimitHandlerResolver(registry, handlerMapping), heavyHitters, properties, mapper);
 
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
@@ -91,13 +115,14 @@ void passesThrough_whenDisabled() throws IOException, ServletException {
         disabledFilter.doFilter(request, response, chain);
 
         verify(chain).doFilter(request, response);
-        verifyNoInteractions(valueOps);
+        verifyNoInteractions(rateLimiter);
     }
 
     @Test
     @DisplayName("Should fail open when Redis is unavailable")
     void failsOpen_whenRedisUnavailable() throws IOException, ServletException {
-        when(valueOps.increment(anyString())).thenThrow(new RuntimeException("Redis connection refused"));
+        when(rateLimiter.tryAcquire(anyString(), any(RateLimitPolicy.class)))
+                .thenThrow(new RuntimeException("Redis connection refused"));
 
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
@@ -108,4 +133,253 @@ void failsOpen_whenRedisUnavailable() throws IOException, ServletException {
 
         verify(chain).doFilter(request, response);
     }
+
+    @Test
+    @DisplayName("Should evaluate the global and the handler method limit in a single call")
+    void evaluatesGlobalAndMethodLimitTogether() throws Exception {
+        MockHttpServletRequest request = requestTo("limited");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        RateLimitResult methodResult = new RateLimitResult(true, 5, 4, 60000, 0);
+        when(rateLimiter.tryAcquireAll(anyList())).thenReturn(List.of(allowed(1), methodResult));
+
+        filter.doFilter(request, response, chain);
+
+        ArgumentCaptor<List<RateLimitCheck>> checks = ArgumentCaptor.captor();
+        verify(rateLimiter).tryAcquireAll(checks.capture());
+        verify(rateLimiter, never()).tryAcquire(anyString(), any(RateLimitPolicy.class));
+        assertThat(checks.getValue()).extracting(RateLimitCheck::key).containsExactly(
+                "rate_limit:global:fixed_window:10.0.0.1",
+                "rate_limit:" + TestController.class.getName() + ".limited:fixed_window:10.0.0.1"
+        );
+        assertThat(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE))
+                .isEqualTo(new RateLimitingFilter.PreEvaluatedRateLimit(
+                        registry.getDescriptor(method("limited"), TestController.class), methodResult));
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should send the headers of the most restrictive limit evaluated in the same call")
+    void writesHeadersOfMostRestrictiveLimit() throws Exception {
+        MockHttpServletRequest request = requestTo("limited");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquireAll(anyList())).thenReturn(List.of(allowed(1), new RateLimitResult(true, 5, 0, 1500, 0)));
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getHeader("RateLimit-Limit")).isEqualTo("5");
+        assertThat(response.getHeader("RateLimit-Remaining")).isEqualTo("0");
+        assertThat(response.getHeader("RateLimit-Reset")).isEqualTo("2");
+        assertThat(response.getHeader("Retry-After")).isNull();
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should leave limits keyed by method arguments to the aspect")
+    void skipsCustomKeyedMethodLimit() throws Exception {
+        MockHttpServletRequest request = requestTo("customKeyed");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:10.0.0.1"), any(RateLimitPolicy.class))).thenReturn(allowed(1));
+
+        filter.doFilter(request, response, chain);
+
+        verify(rateLimiter, never()).tryAcquireAll(anyList());
+        assertThat(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE)).isNull();
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should leave delayed limits to the aspect")
+    void skipsDelayedMethodLimit() throws Exception {
+        MockHttpServletRequest request = requestTo("delayed");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:10.0.0.1"), any(RateLimitPolicy.class))).thenReturn(allowed(1));
+
+        filter.doFilter(request, response, chain);
+
+        verify(rateLimiter, never()).tryAcquireAll(anyList());
+        assertThat(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE)).isNull();
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should leave limits keyed by user to the aspect, users are unknown before authentication")
+    void skipsUserKeyedMethodLimit() throws Exception {
+        MockHttpServletRequest request = requestTo("userKeyed");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:10.0.0.1"), any(RateLimitPolicy.class))).thenReturn(allowed(1));
+
+        filter.doFilter(request, response, chain);
+
+        verify(rateLimiter, never()).tryAcquireAll(anyList());
+        assertThat(request.getAttribute(RateLimitingFilter.PRE_EVALUATED_ATTRIBUTE)).isNull();
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should reject requests over a route quota together with the global limit")
+    void rejectsRequestsOverRouteQuota() throws Exception {
+        RateLimitingFilter routeFilter = filterWithRoute("/reports/**", HttpMethod.GET);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/reports/daily");
+        request.setRemoteAddr("10.0.0.1");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(mock(PrintWriter.class));
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquireAll(anyList())).thenReturn(List.of(allowed(1), rejected()));
+
+        routeFilter.doFilter(request, response, chain);
+
+        ArgumentCaptor<List<RateLimitCheck>> checks = ArgumentCaptor.captor();
+        verify(rateLimiter).tryAcquireAll(checks.capture());
+        assertThat(checks.getValue()).extracting(RateLimitCheck::key).containsExactly(
+                "rate_limit:global:fixed_window:10.0.0.1",
+                "rate_limit:route:GET /reports/**:fixed_window:10.0.0.1"
+        );
+        verify(response).setStatus(429);
+        verify(chain, never()).doFilter(request, response);
+    }
+
+    @Test
+    @DisplayName("Should key the global limit and route quotas by the remote address, not a client supplied header")
+    void ignoresForwardedForHeaderOfClient() throws Exception {
+        RateLimitingFilter routeFilter = filterWithRoute("/reports/**", HttpMethod.GET);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/reports/daily");
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+        when(rateLimiter.tryAcquireAll(anyList())).thenReturn(List.of(allowed(1), allowed(0)));
+
+        routeFilter.doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+
+        ArgumentCaptor<List<RateLimitCheck>> checks = ArgumentCaptor.captor();
+        verify(rateLimiter).tryAcquireAll(checks.capture());
+        assertThat(checks.getValue()).extracting(RateLimitCheck::key).containsExactly(
+                "rate_limit:global:fixed_window:10.0.0.1",
+                "rate_limit:route:GET /reports/**:fixed_window:10.0.0.1"
+        );
+    }
+
+    @Test
+    @DisplayName("Should not evaluate route quotas of other paths or methods")
+    void skipsNonMatchingRoutes() throws Exception {
+        RateLimitingFilter routeFilter = filterWithRoute("/reports/**", HttpMethod.GET);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(rateLimiter.tryAcquire(eq("rate_limit:global:fixed_window:10.0.0.1"), any(RateLimitPolicy.class))).thenReturn(allowed(1));
+        MockHttpServletRequest post = new MockHttpServletRequest("POST", "/reports/daily");
+        post.setRemoteAddr("10.0.0.1");
+        MockHttpServletRequest other = new MockHttpServletRequest("GET", "/users/1");
+        other.setRemoteAddr("10.0.0.1");
+
+        routeFilter.doFilter(post, response, chain);
+        routeFilter.doFilter(other, response, chain);
+
+        verify(rateLimiter, never()).tryAcquireAll(anyList());
+        verify(chain).doFilter(post, response);
+        verify(chain).doFilter(other, response);
+    }
+
+    @Test
+    @DisplayName("Should count the global limit in the local table without calling Redis")
+    void localGlobalStore_countsWithoutRedis() throws Exception {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLimit(2);
+        properties.setGlobalStore(RateLimitProperties.GlobalStore.LOCAL);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        RateLimitingFilter localFilter = new RateLimitingFilter(rateLimiter, new RateLimitHandlerResolver(registry, handlerMapping), heavyHitters, properties, mapper);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.setRemoteAddr("10.0.0.1");
+        FilterChain chain = mock(FilterChain.class);
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        localFilter.doFilter(request, first, chain);
+        localFilter.doFilter(request, new MockHttpServletResponse(), chain);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        localFilter.doFilter(request, rejected, chain);
+
+        assertThat(first.getHeader("RateLimit-Remaining")).isEqualTo("1");
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isNotNull();
+        verify(chain, times(2)).doFilter(eq(request), any());
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    @DisplayName("Should key the global limit compactly when configured")
+    void compactKeyEncoding_shortensGlobalKey() throws Exception {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLimit(2);
+        properties.setKeyEncoding(RateLimitKeyEncoding.COMPACT);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        RateLimitingFilter compactFilter = new RateLimitingFilter(rateLimiter, new RateLimitHandlerResolver(registry, handlerMapping), heavyHitters, properties, mapper);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        request.setRemoteAddr("10.0.0.1");
+        String key = RateLimitKeyEncoding.COMPACT.prefix("global", RateLimitKeyType.FIXED_WINDOW) + "CgAAAQ";
+        when(rateLimiter.tryAcquire(eq(key), any(RateLimitPolicy.class))).thenReturn(allowed(1));
+
+        compactFilter.doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+
+        verify(rateLimiter).tryAcquire(eq(key), any(RateLimitPolicy.class));
+        assertThat(key).hasSize(20);
+    }
+
+    private RateLimitingFilter filterWithRoute(String pattern, HttpMethod method) {
+        RateLimitProperties.RouteConfig route = new RateLimitProperties.RouteConfig();
+        route.setPattern(pattern);
+        route.getMethods().add(method);
+        route.setLimit(1);
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLimit(2);
+        properties.getRoutes().add(route);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        return new RateLimitingFilter(rateLimiter, new RateLimitHandlerResolver(registry, handlerMapping), heavyHitters, properties, mapper);
+    }
+
+    private MockHttpServletRequest requestTo(String methodName) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/" + methodName);
+        request.setRemoteAddr("10.0.0.1");
+        HandlerMethod handlerMethod = new HandlerMethod(new TestController(), method(methodName));
+        when(handlerMapping.getHandler(request)).thenReturn(new HandlerExecutionChain(handlerMethod));
+        return request;
+    }
+
+    private static Method method(String name) {
+        return ReflectionUtils.findMethod(TestController.class, name, (Class<?>[]) null);
+    }
+
+    static class TestController {
+        @RateLimit(limit = 5)
+        public String limited() {
+            return "success";
+        }
+
+        @RateLimit(limit = 5, key = RateLimitKeyStrategy.CUSTOM, keyExpression = "#tenantId")
+        public String customKeyed(String tenantId) {
+            return "success";
+        }
+
+        @RateLimit(limit = 5, key = RateLimitKeyStrategy.USER)
+        public String userKeyed() {
+            return "success";
+        }
+
+        @RateLimit(limit = 5, mode = RateLimitMode.DELAY)
+        public String delayed() {
+            return "success";
+        }
+    }
+
+    private static RateLimitResult allowed(long remaining) {
+        return new RateLimitResult(true, 2, remaining, 60000, 0);
+    }
+
+    private static RateLimitResult rejected() {
+        return new RateLimitResult(false, 2, 0, 60000, 60000);
+    }
 }
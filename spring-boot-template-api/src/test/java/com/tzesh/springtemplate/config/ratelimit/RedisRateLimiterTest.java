@@ -0,0 +1,151 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import com.tzesh.springtemplate.config.redis.RedisGuard;
+import com.tzesh.springtemplate.config.redis.RedisGuardProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RedisRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(10, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private RedisRateLimiter rateLimiter;
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        rateLimiter = new RedisRateLimiter(redisTemplate, new RedisGuard(new RedisGuardProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("Should evaluate counter, TTL and verdict in a single script call")
+    @SuppressWarnings("unchecked")
+    void tryAcquire_singleScriptCall() {
+        when(redisTemplate.execute(eq(RedisRateLimiter.SCRIPTS.get(RateLimitAlgorithm.FIXED_WINDOW)),
+                eq(List.of("rate_limit:test")), eq("10"), eq("60000"), eq("1")))
+                .thenReturn(List.of(1L, 9L, 60000L, 0L));
+
+        RateLimitResult result = rateLimiter.tryAcquire("rate_limit:test", POLICY);
+
+        assertThat(result).isEqualTo(new RateLimitResult(true, 10, 9, 60000, 0));
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any());
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    @DisplayName("Should evaluate each algorithm with its own script")
+    @SuppressWarnings("unchecked")
+    void tryAcquire_selectsScriptByAlgorithm(RateLimitAlgorithm algorithm) {
+        RedisScript<List<Long>> script = RedisRateLimiter.SCRIPTS.get(algorithm);
+        when(redisTemplate.execute(eq(script), anyList(), any(), any(), any())).thenReturn(List.of(1L, 4L, 1000L, 0L));
+
+        RateLimitResult result = rateLimiter.tryAcquire("rate_limit:test", new RateLimitPolicy(5, Duration.ofSeconds(1), algorithm));
+
+        assertThat(result).isEqualTo(new RateLimitResult(true, 5, 4, 1000, 0));
+        assertThat(script.getScriptAsString()).contains("KEYS[1]");
+    }
+
+    @Test
+    @DisplayName("Should reserve a paced slot with the leaky bucket script")
+    @SuppressWarnings("unchecked")
+    void reserve_usesLeakyBucketScript() {
+        when(redisTemplate.execute(eq(RedisRateLimiter.LEAKY_BUCKET_SCRIPT),
+                eq(List.of("rate_limit:test")), eq("10"), eq("60000"), eq("500"), eq("1")))
+                .thenReturn(List.of(1L, 120L, 6120L, 0L));
+
+        RateLimitReservation reservation = rateLimiter.reserve("rate_limit:test", POLICY, 1, Duration.ofMillis(500));
+
+        assertThat(reservation).isEqualTo(new RateLimitReservation(true, 120, 0));
+    }
+
+    @Test
+    @DisplayName("Should report retry after when the limit is exceeded")
+    @SuppressWarnings("unchecked")
+    void tryAcquire_exceeded_reportsRetryAfter() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(0L, 0L, 12000L, 12000L));
+
+        RateLimitResult result = rateLimiter.tryAcquire("rate_limit:test", POLICY);
+
+        assertThat(result.allowed()).isFalse();
+        assertThat(result.retryAfterMillis()).isEqualTo(12000L);
+    }
+
+    @Test
+    @DisplayName("Should propagate Redis failures to the caller")
+    @SuppressWarnings("unchecked")
+    void tryAcquire_redisDown_throws() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenThrow(new RuntimeException("Redis connection refused"));
+
+        assertThatThrownBy(() -> rateLimiter.tryAcquire("rate_limit:test", POLICY))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    @DisplayName("Should not fail startup when scripts cannot be preloaded")
+    @SuppressWarnings("unchecked")
+    void preloadScripts_redisDown_doesNotThrow() {
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new RuntimeException("Redis connection refused"));
+
+        assertThatCode(() -> rateLimiter.preloadScripts()).doesNotThrowAnyException();
+    }
+
+    @Test
+    @DisplayName("Should evaluate several keys in one pipelined round trip")
+    @SuppressWarnings("unchecked")
+    void tryAcquireAll_pipelinesChecks() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of(List.of(1L, 99L, 60000L, 0L), List.of(0L, 0L, 5000L, 5000L)));
+
+        List<RateLimitResult> results = rateLimiter.tryAcquireAll(List.of(
+                new RateLimitCheck("rate_limit:global:127.0.0.1", new RateLimitPolicy(100, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW)),
+                new RateLimitCheck("rate_limit:test", POLICY)
+        ));
+
+        assertThat(results).containsExactly(
+                new RateLimitResult(true, 100, 99, 60000, 0),
+                new RateLimitResult(false, 10, 0, 5000, 5000)
+        );
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("Should evaluate keys one by one if the pipeline fails")
+    @SuppressWarnings("unchecked")
+    void tryAcquireAll_pipelineFails_fallsBack() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenThrow(new RedisPipelineException(new RuntimeException("NOSCRIPT")));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(1L, 9L, 60000L, 0L));
+
+        List<RateLimitResult> results = rateLimiter.tryAcquireAll(List.of(
+                new RateLimitCheck("rate_limit:a", POLICY),
+                new RateLimitCheck("rate_limit:b", POLICY)
+        ));
+
+        assertThat(results).hasSize(2).allMatch(RateLimitResult::allowed);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+}
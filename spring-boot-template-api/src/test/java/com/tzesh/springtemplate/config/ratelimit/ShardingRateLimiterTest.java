@@ -0,0 +1,107 @@
+package com.tzesh.springtemplate.config.ratelimit;
+
+import com.tzesh.springtemplate.base.annotation.RateLimitAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ShardingRateLimiterTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(100, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+    private static final RateLimitPolicy SHARD_POLICY = new RateLimitPolicy(50, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+    private RateLimiter delegate;
+    private RateLimitProperties.ShardingConfig config;
+    private AtomicLong clock;
+    private ShardingRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(RateLimiter.class);
+        when(delegate.tryAcquire(anyString(), any(RateLimitPolicy.class), anyLong()))
+                .thenReturn(new RateLimitResult(true, 50, 40, 60000, 0));
+        config = new RateLimitProperties.ShardingConfig();
+        config.setEnabled(true);
+        config.setHotKeyThreshold(5);
+        clock = new AtomicLong();
+        rateLimiter = new ShardingRateLimiter(delegate, config, clock::get, bound -> bound - 1);
+    }
+
+    @Test
+    @DisplayName("Should pass keys below the threshold through unchanged")
+    void tryAcquire_belowThreshold_unchanged() {
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire("key", POLICY);
+        }
+
+        verify(delegate, times(4)).tryAcquire("key", POLICY, 1);
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    @DisplayName("Should split a hot key into sub-keys sharing its limit")
+    void tryAcquire_hotKey_splitIntoSubKeys() {
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire("key", POLICY);
+        }
+
+        RateLimitResult result = rateLimiter.tryAcquire("key", POLICY, 3);
+
+        verify(delegate).tryAcquire("key#1", SHARD_POLICY, 3);
+        assertThat(result.limit()).isEqualTo(100);
+        assertThat(result.remaining()).isEqualTo(80);
+    }
+
+    @Test
+    @DisplayName("Should not split keys whose sub-keys would fall below the minimum limit")
+    void tryAcquire_smallLimit_notSplit() {
+        RateLimitPolicy small = new RateLimitPolicy(15, Duration.ofMinutes(1), RateLimitAlgorithm.FIXED_WINDOW);
+
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.tryAcquire("key", small);
+        }
+
+        verify(delegate, times(10)).tryAcquire("key", small, 1);
+    }
+
+    @Test
+    @DisplayName("Should merge a key back once it has cooled down")
+    void tryAcquire_cooledDown_merged() {
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.tryAcquire("key", POLICY);
+        }
+        clock.addAndGet(config.getCooldown().toNanos());
+
+        rateLimiter.tryAcquire("key", POLICY);
+
+        verify(delegate, times(5)).tryAcquire("key", POLICY, 1);
+        verify(delegate).tryAcquire("key#1", SHARD_POLICY, 1);
+    }
+
+    @Test
+    @DisplayName("Should split hot keys of a batch and keep the order of the results")
+    void tryAcquireAll_hotKey_split() {
+        when(delegate.tryAcquireAll(anyList())).thenAnswer(invocation -> {
+            List<RateLimitCheck> checks = invocation.getArgument(0);
+            return checks.stream().map(check -> new RateLimitResult(true, check.policy().limit(), 10, 60000, 0)).toList();
+        });
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire("hot", POLICY);
+        }
+
+        List<RateLimitResult> results = rateLimiter.tryAcquireAll(
+                List.of(new RateLimitCheck("cold", POLICY), new RateLimitCheck("hot", POLICY)));
+
+        verify(delegate).tryAcquireAll(List.of(new RateLimitCheck("cold", POLICY), new RateLimitCheck("hot#1", SHARD_POLICY)));
+        assertThat(results).extracting(RateLimitResult::remaining).containsExactly(10L, 20L);
+    }
+}
@@ -0,0 +1,34 @@
+package com.tzesh.springtemplate.config.redis;
+
+import io.lettuce.core.SslVerifyMode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisGuardClientTest {
+
+    @Test
+    @DisplayName("Should copy the shared client configuration with the command timeout of the operation")
+    void withCommandTimeout_keepsClientOptions() {
+        LettuceClientConfiguration shared = LettuceClientConfiguration.builder()
+                .useSsl().verifyPeer(SslVerifyMode.CA).startTls().and()
+                .clientName("template")
+                .commandTimeout(Duration.ofSeconds(60))
+                .shutdownTimeout(Duration.ofMillis(50))
+                .build();
+
+        LettuceClientConfiguration guarded = RedisGuardClient.withCommandTimeout(shared, Duration.ofMillis(100));
+
+        assertThat(guarded.getCommandTimeout()).isEqualTo(Duration.ofMillis(100));
+        assertThat(guarded.isUseSsl()).isTrue();
+        assertThat(guarded.getVerifyMode()).isEqualTo(SslVerifyMode.CA);
+        assertThat(guarded.isStartTls()).isTrue();
+        assertThat(guarded.getClientName()).contains("template");
+        assertThat(guarded.getShutdownTimeout()).isEqualTo(Duration.ofMillis(50));
+        assertThat(shared.getCommandTimeout()).isEqualTo(Duration.ofSeconds(60));
+    }
+}
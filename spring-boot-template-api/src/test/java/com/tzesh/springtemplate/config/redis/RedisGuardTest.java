@@ -0,0 +1,137 @@
+package com.tzesh.springtemplate.config.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RedisGuardTest {
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong clock;
+    private RedisGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        RedisGuardProperties properties = new RedisGuardProperties();
+        properties.setFailureThreshold(2);
+        properties.setOpenDuration(Duration.ofSeconds(10));
+
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new AtomicLong();
+        guard = new RedisGuard(properties, meterRegistry, clock::get);
+    }
+
+    @Test
+    @DisplayName("Should return the result of a successful call and record it")
+    void execute_success_returnsResult() {
+        assertThat(guard.execute("test", () -> "PONG")).isEqualTo("PONG");
+
+        assertThat(meterRegistry.get("redis.guard.calls").tag("operation", "test").tag("outcome", "success").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should report a call exceeding the command timeout as timed out")
+    void execute_commandTimeout_timesOut() {
+        assertThatThrownBy(() -> guard.execute("test", () -> {
+            throw new QueryTimeoutException("Redis command timed out");
+        })).isInstanceOf(RedisUnavailableException.class).hasMessageContaining("timed out");
+
+        assertThat(meterRegistry.get("redis.guard.calls").tag("operation", "test").tag("outcome", "timeout").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should register the timers of an operation once")
+    void execute_repeatedCalls_sameTimer() {
+        guard.execute("test", () -> "PONG");
+        guard.execute("test", () -> "PONG");
+
+        assertThat(meterRegistry.get("redis.guard.calls").tag("operation", "test").tag("outcome", "success").timers())
+                .singleElement()
+                .satisfies(timer -> assertThat(timer.count()).isEqualTo(2));
+    }
+
+    @Test
+    @DisplayName("Should open the circuit after consecutive failures and reject calls without running them")
+    void execute_consecutiveFailures_opensCircuit() {
+        failTimes(2);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> guard.execute("test", calls::incrementAndGet))
+                .isInstanceOf(RedisUnavailableException.class).hasMessageContaining("circuit is open");
+        assertThat(calls).hasValue(0);
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.OPEN);
+        assertThat(meterRegistry.get("redis.guard.circuit.state").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should throw errors answered by Redis without counting them towards the circuit")
+    void execute_answeredErrors_keepCircuitClosed() {
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> guard.execute("test", () -> {
+                throw new RedisSystemException("WRONGTYPE Operation against a key holding the wrong kind of value", null);
+            })).isInstanceOf(RedisUnavailableException.class).hasMessageContaining("WRONGTYPE");
+        }
+
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.CLOSED);
+        assertThat(meterRegistry.get("redis.guard.calls").tag("outcome", "error").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should close the circuit when the trial call after the open duration succeeds")
+    void execute_trialSucceeds_closesCircuit() {
+        failTimes(2);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertThat(guard.execute("test", () -> "PONG")).isEqualTo("PONG");
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("Should reopen the circuit when the trial call fails")
+    void execute_trialFails_reopensCircuit() {
+        failTimes(2);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        failTimes(1);
+
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.OPEN);
+        assertThatThrownBy(() -> guard.execute("test", () -> "PONG")).hasMessageContaining("circuit is open");
+    }
+
+    @Test
+    @DisplayName("Should reopen the circuit when the trial call ends with an error")
+    void execute_trialErrors_reopensCircuit() {
+        failTimes(2);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertThatThrownBy(() -> guard.execute("test", () -> {
+            throw new StackOverflowError();
+        })).isInstanceOf(StackOverflowError.class);
+
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.OPEN);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(guard.execute("test", () -> "PONG")).isEqualTo("PONG");
+        assertThat(guard.getState()).isEqualTo(RedisGuard.State.CLOSED);
+    }
+
+    private void failTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThatThrownBy(() -> guard.execute("test", () -> {
+                throw new RedisConnectionFailureException("Redis connection refused");
+            })).isInstanceOf(RedisUnavailableException.class).hasRootCauseMessage("Redis connection refused");
+        }
+    }
+}
@@ -21,4 +21,10 @@
     TimeUnit timeUnit() default TimeUnit.HOURS;
 
     String headerName() default "Idempotency-Key";
+
+    /**
+     * Longest time a request arriving while the same key is processed waits for the response of the first call,
+     * in milliseconds; 0 rejects it immediately
+     */
+    long maxWaitMillis() default 0;
 }
@@ -24,4 +24,32 @@
     RateLimitKeyStrategy key() default RateLimitKeyStrategy.IP;
 
     String keyExpression() default "";
+
+    RateLimitAlgorithm algorithm() default RateLimitAlgorithm.FIXED_WINDOW;
+
+    /**
+     * Handling of calls over the limit; {@link RateLimitMode#DELAY} paces calls with a leaky bucket
+     * and ignores the algorithm
+     */
+    RateLimitMode mode() default RateLimitMode.REJECT;
+
+    /**
+     * Longest time a call is delayed in {@link RateLimitMode#DELAY} mode, in milliseconds
+     */
+    long maxWaitMillis() default 1000;
+
+    /**
+     * Calls delayed at the same time on one node in {@link RateLimitMode#DELAY} mode, further calls are rejected
+     */
+    int maxQueued() default 100;
+
+    /**
+     * Units charged against the limit per call, so expensive endpoints use up the limit faster
+     */
+    int cost() default 1;
+
+    /**
+     * SpEL expression evaluating to the cost of a call, e.g. {@code #pageable.pageSize}; overrides {@link #cost()}
+     */
+    String costExpression() default "";
 }
@@ -0,0 +1,24 @@
+package com.tzesh.springtemplate.base.annotation;
+
+/**
+ * Algorithm used to evaluate a rate limit
+ * @author tzesh
+ */
+public enum RateLimitAlgorithm {
+    /**
+     * Counter reset at the end of every window, allows up to twice the limit across a window boundary
+     */
+    FIXED_WINDOW,
+    /**
+     * Weighted sum of the current and previous window counters, smooths the window boundary
+     */
+    SLIDING_WINDOW,
+    /**
+     * Generic cell rate algorithm, spaces requests evenly while allowing a burst of the full limit
+     */
+    GCRA,
+    /**
+     * Bucket of limit tokens refilled continuously over the window
+     */
+    TOKEN_BUCKET
+}
@@ -18,4 +18,14 @@
     RateLimitCategoryType value();
 
     RateLimitKeyStrategy key() default RateLimitKeyStrategy.IP;
+
+    /**
+     * Units charged against the category limit per call, so expensive endpoints use up the limit faster
+     */
+    int cost() default 1;
+
+    /**
+     * SpEL expression evaluating to the cost of a call, e.g. {@code #pageable.pageSize}; overrides {@link #cost()}
+     */
+    String costExpression() default "";
 }
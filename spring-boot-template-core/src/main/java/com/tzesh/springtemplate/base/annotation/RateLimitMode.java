@@ -0,0 +1,17 @@
+package com.tzesh.springtemplate.base.annotation;
+
+/**
+ * Handling of calls over a {@link RateLimit}
+ * @author tzesh
+ */
+public enum RateLimitMode {
+    /**
+     * Reject calls over the limit with 429
+     */
+    REJECT,
+    /**
+     * Delay calls over the limit and release them evenly at the allowed rate (leaky bucket); calls are only rejected
+     * if they would wait longer than the maximum wait or too many calls are already waiting
+     */
+    DELAY
+}
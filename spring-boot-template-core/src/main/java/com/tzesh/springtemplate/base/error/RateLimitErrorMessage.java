@@ -12,7 +12,9 @@
 public enum RateLimitErrorMessage implements BaseErrorMessage {
     RATE_LIMIT_EXCEEDED("Rate limit exceeded. Please try again later."),
     IDEMPOTENCY_KEY_MISSING("Idempotency-Key header is required for this request."),
-    IDEMPOTENCY_KEY_IN_PROGRESS("A request with this idempotency key is already being processed.");
+    IDEMPOTENCY_KEY_IN_PROGRESS("A request with this idempotency key is already being processed."),
+    IDEMPOTENCY_UNAVAILABLE("Idempotency checks are temporarily unavailable. Please try again later."),
+    SERVICE_OVERLOADED("Service is overloaded. Please try again later.");
 
     private final String message;
 }
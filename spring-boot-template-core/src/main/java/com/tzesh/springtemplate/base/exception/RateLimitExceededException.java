@@ -1,17 +1,44 @@
 package com.tzesh.springtemplate.base.exception;
 
 import com.tzesh.springtemplate.base.error.BaseErrorMessage;
+import lombok.Getter;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
  * Exception thrown when a rate limit is exceeded.
- * Returns HTTP 429 (Too Many Requests).
+ * Returns HTTP 429 (Too Many Requests), with rate limit headers if the state of the limit is known.
  * @author tzesh
  */
+@Getter
 @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
 public class RateLimitExceededException extends BaseException {
+    /**
+     * Limit of the exceeded window, 0 if unknown
+     */
+    private final long limit;
+    private final long remaining;
+    private final long resetMillis;
+    private final long retryAfterMillis;
+
     public RateLimitExceededException(final BaseErrorMessage errorMessage) {
+        this(errorMessage, 0, 0, 0, 0);
+    }
+
+    public RateLimitExceededException(final BaseErrorMessage errorMessage, final long limit, final long remaining,
+                                      final long resetMillis, final long retryAfterMillis) {
         super(errorMessage);
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetMillis = resetMillis;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Whether the state of the exceeded limit is known
+     * @return true if rate limit headers can be sent
+     */
+    public boolean hasLimitState() {
+        return limit > 0;
     }
 }
@@ -0,0 +1,22 @@
+package com.tzesh.springtemplate.base.exception;
+
+import com.tzesh.springtemplate.base.error.BaseErrorMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown when a request cannot be served safely because a dependency is unavailable.
+ * Returns HTTP 503 (Service Unavailable).
+ * @author tzesh
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends BaseException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException(final BaseErrorMessage errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -6,7 +6,9 @@
 import com.tzesh.springtemplate.base.exception.NotFoundException;
 import com.tzesh.springtemplate.base.exception.OperationFailedException;
 import com.tzesh.springtemplate.base.exception.RateLimitExceededException;
+import com.tzesh.springtemplate.base.exception.ServiceUnavailableException;
 import com.tzesh.springtemplate.base.response.BaseResponse;
+import com.tzesh.springtemplate.base.response.RateLimitHeaders;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
@@ -82,7 +84,8 @@ public final ResponseEntity<BaseResponse<GenericErrorMessage>> handleSaveFailedE
     }
 
     /**
-     * handleRateLimitExceededException is a method to handle rate limit exceeded exception
+     * handleRateLimitExceededException is a method to handle rate limit exceeded exception,
+     * sending the rate limit headers and Retry-After if the state of the exceeded limit is known
      * @param e exception
      * @param webRequest web request
      * @return ResponseEntity
@@ -92,7 +95,11 @@ public final ResponseEntity<BaseResponse<GenericErrorMessage>> handleRateLimitEx
         final GenericErrorMessage genericErrorMessage = new GenericErrorMessage(e, webRequest);
         log.error("Rate limit exceeded: {}", genericErrorMessage);
 
-        return BaseResponse.error(genericErrorMessage, HttpStatus.TOO_MANY_REQUESTS).build();
+        BaseResponse<GenericErrorMessage> response = BaseResponse.error(genericErrorMessage, HttpStatus.TOO_MANY_REQUESTS);
+        if (!e.hasLimitState()) {
+            return response.build();
+        }
+        return response.build(RateLimitHeaders.of(e.getLimit(), e.getRemaining(), e.getResetMillis(), e.getRetryAfterMillis()));
     }
 
     /**
@@ -109,6 +116,20 @@ public final ResponseEntity<BaseResponse<GenericErrorMessage>> handleIdempotency
         return BaseResponse.error(genericErrorMessage, HttpStatus.CONFLICT).build();
     }
 
+    /**
+     * handleServiceUnavailableException is a method to handle service unavailable exception
+     * @param e exception
+     * @param webRequest web request
+     * @return ResponseEntity
+     */
+    @ExceptionHandler
+    public final ResponseEntity<BaseResponse<GenericErrorMessage>> handleServiceUnavailableException(ServiceUnavailableException e, WebRequest webRequest) {
+        final GenericErrorMessage genericErrorMessage = new GenericErrorMessage(e, webRequest);
+        log.error("Service unavailable: {}", genericErrorMessage);
+
+        return BaseResponse.error(genericErrorMessage, HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
     /**
      * handleMethodArgumentNotValid is a method to handle method argument not valid exception
      * @param ex exception
@@ -4,6 +4,7 @@
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -123,6 +124,16 @@ public static <T> BaseResponse<T> conflict(T data) {
         return new BaseResponse<>(data, HttpStatus.CONFLICT, false);
     }
 
+    /**
+     * Response for service unavailable (503)
+     * @param data data to be stored
+     * @return BaseResponse<T>
+     * @param <T> data type
+     */
+    public static <T> BaseResponse<T> serviceUnavailable(T data) {
+        return new BaseResponse<>(data, HttpStatus.SERVICE_UNAVAILABLE, false);
+    }
+
     /**
      * Response with data and error status
      * @param data message to be stored
@@ -150,4 +161,13 @@ public BaseResponse<T> message(String message) {
     public ResponseEntity<BaseResponse<T>> build() {
         return new ResponseEntity<>(this, this.status);
     }
+
+    /**
+     * Build response to ResponseEntity with headers
+     * @param headers headers to be sent
+     * @return ResponseEntity
+     */
+    public ResponseEntity<BaseResponse<T>> build(HttpHeaders headers) {
+        return new ResponseEntity<>(this, headers, this.status);
+    }
 }
@@ -0,0 +1,40 @@
+package com.tzesh.springtemplate.base.response;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Rate limit response headers following the IETF RateLimit header fields draft.
+ * {@code RateLimit-Reset} and {@code Retry-After} are in seconds, rounded up so clients never retry too early.
+ * @author tzesh
+ */
+public final class RateLimitHeaders {
+    public static final String LIMIT = "RateLimit-Limit";
+    public static final String REMAINING = "RateLimit-Remaining";
+    public static final String RESET = "RateLimit-Reset";
+
+    private RateLimitHeaders() {
+    }
+
+    /**
+     * Build the headers of a rate limit evaluation
+     * @param limit limit of the window
+     * @param remaining units left in the window
+     * @param resetMillis milliseconds until the window resets
+     * @param retryAfterMillis milliseconds until a rejected request may be retried, 0 if it was allowed
+     * @return headers, including {@code Retry-After} only if the request was rejected
+     */
+    public static HttpHeaders of(long limit, long remaining, long resetMillis, long retryAfterMillis) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(LIMIT, String.valueOf(limit));
+        headers.set(REMAINING, String.valueOf(Math.max(0, remaining)));
+        headers.set(RESET, String.valueOf(toSeconds(resetMillis)));
+        if (retryAfterMillis > 0) {
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, toSeconds(retryAfterMillis))));
+        }
+        return headers;
+    }
+
+    private static long toSeconds(long millis) {
+        return (Math.max(0, millis) + 999) / 1000;
+    }
+}
@@ -14,5 +14,16 @@ void rateLimitExceededException_instantiatesWithErrorMessage() {
         assertThat(ex).isNotNull();
         assertThat(ex.getErrorMessage()).isEqualTo(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED);
         assertThat(ex.getErrorMessage().getMessage()).isEqualTo("Rate limit exceeded. Please try again later.");
+        assertThat(ex.hasLimitState()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should carry the state of the exceeded limit")
+    void rateLimitExceededException_withLimitState_keepsState() {
+        RateLimitExceededException ex = new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED, 10, 0, 30000, 1500);
+        assertThat(ex.hasLimitState()).isTrue();
+        assertThat(ex.getLimit()).isEqualTo(10);
+        assertThat(ex.getResetMillis()).isEqualTo(30000);
+        assertThat(ex.getRetryAfterMillis()).isEqualTo(1500);
     }
 }
@@ -0,0 +1,18 @@
+package com.tzesh.springtemplate.base.exception;
+
+import com.tzesh.springtemplate.base.error.RateLimitErrorMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceUnavailableExceptionTest {
+    @Test
+    @DisplayName("Should instantiate ServiceUnavailableException with IDEMPOTENCY_UNAVAILABLE message")
+    void serviceUnavailableException_instantiatesWithIdempotencyUnavailable() {
+        ServiceUnavailableException ex = new ServiceUnavailableException(RateLimitErrorMessage.IDEMPOTENCY_UNAVAILABLE);
+        assertThat(ex).isNotNull();
+        assertThat(ex.getErrorMessage()).isEqualTo(RateLimitErrorMessage.IDEMPOTENCY_UNAVAILABLE);
+        assertThat(ex.getErrorMessage().getMessage()).isEqualTo("Idempotency checks are temporarily unavailable. Please try again later.");
+    }
+}
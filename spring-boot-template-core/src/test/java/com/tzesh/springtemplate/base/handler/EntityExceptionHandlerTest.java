@@ -2,11 +2,14 @@
 
 import com.tzesh.springtemplate.base.error.GenericErrorMessage;
 import com.tzesh.springtemplate.base.exception.BaseException;
+import com.tzesh.springtemplate.base.error.RateLimitErrorMessage;
 import com.tzesh.springtemplate.base.exception.NotFoundException;
+import com.tzesh.springtemplate.base.exception.RateLimitExceededException;
 import com.tzesh.springtemplate.base.response.BaseResponse;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.WebRequest;
@@ -36,4 +39,32 @@ void handleBaseException_returnsErrorResponse() {
         assertThat(response.getBody().getData().getDetails()).isEqualTo("details");
         assertThat(response.getBody().getData().getPath()).isEqualTo("/base");
     }
+
+    @Test
+    @DisplayName("Should return 429 with rate limit headers and Retry-After rounded up to seconds")
+    void handleRateLimitExceededException_withLimitState_setsHeaders() {
+        EntityExceptionHandler handler = new EntityExceptionHandler();
+        RateLimitExceededException ex = new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED, 10, 0, 30000, 1500);
+        WebRequest request = Mockito.mock(WebRequest.class);
+
+        ResponseEntity<BaseResponse<GenericErrorMessage>> response = handler.handleRateLimitExceededException(ex, request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(response.getHeaders().getFirst("RateLimit-Limit")).isEqualTo("10");
+        assertThat(response.getHeaders().getFirst("RateLimit-Remaining")).isEqualTo("0");
+        assertThat(response.getHeaders().getFirst("RateLimit-Reset")).isEqualTo("30");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+    }
+
+    @Test
+    @DisplayName("Should return 429 without rate limit headers when the limit state is unknown")
+    void handleRateLimitExceededException_withoutLimitState_noHeaders() {
+        EntityExceptionHandler handler = new EntityExceptionHandler();
+        RateLimitExceededException ex = new RateLimitExceededException(RateLimitErrorMessage.RATE_LIMIT_EXCEEDED);
+
+        ResponseEntity<BaseResponse<GenericErrorMessage>> response = handler.handleRateLimitExceededException(ex, Mockito.mock(WebRequest.class));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNull();
+    }
 }